@@ -0,0 +1,77 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the membership and capacity checks LobbyService runs on every
+ * join/leave/update: the old CSV column parse, a boxed copy of
+ * getPlayerIds(), and the primitive hasPlayer/getPlayerCount path.
+ *
+ * Run with: ./gradlew jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LobbyMembershipBenchmark {
+
+    @Param({"2", "8", "10"})
+    private int players;
+
+    private Lobby lobby;
+    private String csv;
+    private long lastPlayer;
+    private long stranger;
+
+    @Setup
+    public void setup() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            ids.add(1000L + i * 7L);
+        }
+        lobby = new Lobby();
+        lobby.setPlayerIds(ids);
+        csv = ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+        lastPlayer = ids.get(ids.size() - 1);
+        stranger = 999_999L;
+    }
+
+    // getPlayerIds() before LOBBY_PLAYERS: split and parse the column on every call
+    @Benchmark
+    public boolean csvColumnContains() {
+        List<Long> ids = Arrays.stream(csv.split(","))
+                .map(Long::parseLong)
+                .collect(Collectors.toList());
+        return ids.contains(lastPlayer) || ids.contains(stranger);
+    }
+
+    // getPlayerIds() as a fresh ArrayList with boxed lookups
+    @Benchmark
+    public boolean boxedListContains() {
+        List<Long> ids = new ArrayList<>(lobby.getPlayerIds());
+        return ids.contains(lastPlayer) || ids.contains(stranger);
+    }
+
+    @Benchmark
+    public boolean primitiveHasPlayer() {
+        return lobby.hasPlayer(lastPlayer) || lobby.hasPlayer(stranger);
+    }
+
+    @Benchmark
+    public int csvColumnSize() {
+        return csv.isEmpty() ? 0 : csv.split(",").length;
+    }
+
+    @Benchmark
+    public int primitivePlayerCount() {
+        return lobby.getPlayerCount();
+    }
+}
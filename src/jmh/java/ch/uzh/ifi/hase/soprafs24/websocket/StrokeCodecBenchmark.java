@@ -0,0 +1,103 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the stroke frame encodings: the JSON clients send today (one
+ * object per point, colour as hex string) through Jackson against StrokeCodec.
+ * The frame sizes of both are printed at setup.
+ *
+ * Run with: ./gradlew jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokeCodecBenchmark {
+
+    @Param({"8", "64"})
+    private int points;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Stroke stroke;
+    private JsonStroke jsonStroke;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setup() throws IOException {
+        // a hand-drawn curve: small, irregular steps with varying pressure
+        Random random = new Random(7);
+        int[] xs = new int[points];
+        int[] ys = new int[points];
+        float[] pressures = new float[points];
+        int x = 400;
+        int y = 300;
+        jsonStroke = new JsonStroke();
+        jsonStroke.strokeId = 123456L;
+        jsonStroke.color = "#ef130b";
+        jsonStroke.width = 4.5f;
+        jsonStroke.points = new ArrayList<>();
+        for (int i = 0; i < points; i++) {
+            x += random.nextInt(9) - 2;
+            y += random.nextInt(9) - 4;
+            xs[i] = x;
+            ys[i] = y;
+            pressures[i] = 0.3f + random.nextFloat() * 0.6f;
+            JsonPoint point = new JsonPoint();
+            point.x = x;
+            point.y = y;
+            point.pressure = pressures[i];
+            jsonStroke.points.add(point);
+        }
+        stroke = new Stroke(123456L, 0xEF130B, 4.5f, false, xs, ys, pressures);
+        json = objectMapper.writeValueAsBytes(jsonStroke);
+        binary = StrokeCodec.encode(stroke);
+        System.out.printf("%n%d points: JSON %d bytes, StrokeCodec %d bytes%n", points, json.length, binary.length);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() throws IOException {
+        return objectMapper.writeValueAsBytes(jsonStroke);
+    }
+
+    @Benchmark
+    public JsonStroke jsonDecode() throws IOException {
+        return objectMapper.readValue(json, JsonStroke.class);
+    }
+
+    @Benchmark
+    public byte[] codecEncode() {
+        return StrokeCodec.encode(stroke);
+    }
+
+    @Benchmark
+    public Stroke codecDecode() {
+        return StrokeCodec.decode(ByteBuffer.wrap(binary));
+    }
+
+    // the JSON shape of a stroke frame before StrokeCodec
+    public static class JsonStroke {
+        public long strokeId;
+        public String color;
+        public float width;
+        public boolean last;
+        public List<JsonPoint> points;
+    }
+
+    public static class JsonPoint {
+        public int x;
+        public int y;
+        public float pressure;
+    }
+}
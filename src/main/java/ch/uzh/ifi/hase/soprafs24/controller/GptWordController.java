@@ -2,8 +2,10 @@ package ch.uzh.ifi.hase.soprafs24.controller;
 
 import ch.uzh.ifi.hase.soprafs24.service.ChatGPTService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
 import javax.servlet.http.HttpSession;
 import java.util.List;
@@ -15,8 +17,12 @@ public class GptWordController {
     @Autowired
     private ChatGPTService chatGPTService;
 
+    // a session can never be served more words than one corpus holds
+    @Value("${words.corpus.max-size:2000}")
+    private int maxCount;
+
     @GetMapping
-    public ResponseEntity<List<String>> getWords(
+    public Mono<ResponseEntity<List<String>>> getWords(
             HttpSession session,
             @RequestParam String lang,
             @RequestParam String type,
@@ -24,7 +30,8 @@ public class GptWordController {
     ) {
         // use the container-managed session ID
         String sessionId = session.getId();
-        List<String> words = chatGPTService.nextWords(sessionId, lang, type, count);
-        return ResponseEntity.ok(words);
+        // served asynchronously: a request waiting for a refill does not hold a servlet thread
+        return chatGPTService.nextWordsAsync(sessionId, lang, type, Math.min(count, maxCount))
+                .map(ResponseEntity::ok);
     }
 }
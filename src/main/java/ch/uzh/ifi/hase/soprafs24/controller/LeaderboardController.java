@@ -0,0 +1,47 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.rest.dto.LeaderboardEntryDTO;
+import ch.uzh.ifi.hase.soprafs24.service.ScoreService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+public class LeaderboardController {
+
+    private final ScoreService scoreService;
+
+    public LeaderboardController(ScoreService scoreService) {
+        this.scoreService = scoreService;
+    }
+
+    // The best players over all games, best first
+    @GetMapping("/leaderboard")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<LeaderboardEntryDTO> getLeaderboard(@RequestParam(value = "limit", defaultValue = "10") int limit) {
+        List<LeaderboardEntryDTO> entryDTOs = new ArrayList<>();
+        for (ScoreService.Standing standing : scoreService.getTopPlayers(limit)) {
+            entryDTOs.add(toDTO(standing));
+        }
+        return entryDTOs;
+    }
+
+    @GetMapping("/leaderboard/{userId}")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public LeaderboardEntryDTO getStanding(@PathVariable("userId") Long userId) {
+        return toDTO(scoreService.getStanding(userId));
+    }
+
+    private static LeaderboardEntryDTO toDTO(ScoreService.Standing standing) {
+        LeaderboardEntryDTO entryDTO = new LeaderboardEntryDTO();
+        entryDTO.setUserId(standing.getUserId());
+        entryDTO.setUsername(standing.getUsername());
+        entryDTO.setScore(standing.getScore());
+        entryDTO.setRank(standing.getRank());
+        return entryDTO;
+    }
+}
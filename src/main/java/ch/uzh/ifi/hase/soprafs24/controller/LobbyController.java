@@ -1,39 +1,79 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.GuessPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.GuessResultDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.LobbyGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.LobbyPageDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.LobbyPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.LobbyPutDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.LobbyDTOMapper;
+import ch.uzh.ifi.hase.soprafs24.service.LobbyBrowserSnapshot;
 import ch.uzh.ifi.hase.soprafs24.service.LobbyService;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import reactor.core.publisher.Flux;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 public class LobbyController {
 
     private final LobbyService lobbyService;
+    private final UserService userService;
 
-    public LobbyController(LobbyService lobbyService) {
+    public LobbyController(LobbyService lobbyService, UserService userService) {
         this.lobbyService = lobbyService;
+        this.userService = userService;
     }
 
+    // Served from the in-memory snapshot; polls with a matching If-None-Match get 304 without a body
     @GetMapping("/lobbies")
+    public ResponseEntity<byte[]> getAllLobbies(WebRequest request) {
+        LobbyBrowserSnapshot.View snapshot = lobbyService.getLobbyBrowserSnapshot();
+        if (request.checkNotModified(snapshot.getEtag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(snapshot.getEtag())
+                .body(snapshot.getBody());
+    }
+
+    // Lobby browser: one page per request instead of every lobby
+    @GetMapping("/lobbies/page")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public List<LobbyGetDTO> getAllLobbies() {
-        // Fetch all lobbies
-        List<Lobby> lobbies = lobbyService.getLobbies();
-        List<LobbyGetDTO> lobbyGetDTOs = new ArrayList<>();
-
-        // Convert each entity to a DTO
+    public LobbyPageDTO getLobbyPage(@RequestParam(required = false) Long cursor,
+                                     @RequestParam(defaultValue = "20") int limit,
+                                     @RequestParam(required = false) Integer status,
+                                     @RequestParam(required = false) String language,
+                                     @RequestParam(required = false) String type,
+                                     @RequestParam(defaultValue = "false") boolean hasFreeSlots) {
+        List<Lobby> lobbies = lobbyService.getLobbyPage(cursor, limit, status, language, type, hasFreeSlots);
+        // The painter tokens of the whole page come from one query
+        List<Long> painterIds = new ArrayList<>();
         for (Lobby lobby : lobbies) {
-            lobbyGetDTOs.add(LobbyDTOMapper.INSTANCE.convertEntityToLobbyGetDTO(lobby));
+            painterIds.addAll(lobby.getPainterHistoryPlayerIds());
         }
-        return lobbyGetDTOs;
+        Map<Long, String> tokensById = userService.getTokensByIds(painterIds);
+        List<LobbyGetDTO> lobbyGetDTOs = new ArrayList<>(lobbies.size());
+        for (Lobby lobby : lobbies) {
+            lobbyGetDTOs.add(LobbyDTOMapper.INSTANCE.convertEntityToLobbyGetDTO(lobby, tokensById));
+        }
+
+        LobbyPageDTO page = new LobbyPageDTO();
+        page.setLobbies(lobbyGetDTOs);
+        // A full page may have more after it; a short page is the last one
+        page.setNextCursor(lobbies.size() == limit ? lobbies.get(lobbies.size() - 1).getId() : null);
+        return page;
     }
 
     @PostMapping("/lobbies")
@@ -47,7 +87,7 @@ public class LobbyController {
         Lobby createdLobby = lobbyService.createLobby(lobbyInput);
 
         // Convert entity to API output
-        return LobbyDTOMapper.INSTANCE.convertEntityToLobbyGetDTO(createdLobby);
+        return toLobbyGetDTO(createdLobby);
     }
 
     @GetMapping("/lobbies/{lobbyId}")
@@ -55,7 +95,13 @@ public class LobbyController {
     @ResponseBody
     public LobbyGetDTO getLobby(@PathVariable("lobbyId") Long lobbyId) {
         Lobby lobby = lobbyService.getLobbyById(lobbyId);
-        return LobbyDTOMapper.INSTANCE.convertEntityToLobbyGetDTO(lobby);
+        return toLobbyGetDTO(lobby);
+    }
+
+    // Pushes the lobby and its changes as server-sent events instead of polling GET /lobbies/{lobbyId}
+    @GetMapping(value = "/lobbies/{lobbyId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> streamLobby(@PathVariable("lobbyId") Long lobbyId) {
+        return lobbyService.streamLobby(lobbyId);
     }
 
     @PutMapping("/lobbies/{lobbyId}")
@@ -71,7 +117,7 @@ public class LobbyController {
     @ResponseBody
     public LobbyGetDTO joinLobby(@PathVariable("lobbyId") Long lobbyId, @RequestParam Long playerId) {
         Lobby updatedLobby = lobbyService.addPlayerToLobby(lobbyId, playerId);
-        return LobbyDTOMapper.INSTANCE.convertEntityToLobbyGetDTO(updatedLobby);
+        return toLobbyGetDTO(updatedLobby);
     }
 
     @PutMapping("/lobbies/{lobbyId}/leave")
@@ -82,17 +128,19 @@ public class LobbyController {
         
         // If the lobby is empty (no more players), it will be deleted
         // We can still return the DTO for the client to know the state before deletion
-        return LobbyDTOMapper.INSTANCE.convertEntityToLobbyGetDTO(updatedLobby);
+        return toLobbyGetDTO(updatedLobby);
     }
 
     @PostMapping("/lobbies/{lobbyId}/nextPainter")
     @ResponseStatus(HttpStatus.OK) // OK because we return the updated state
     @ResponseBody
-    public LobbyGetDTO selectNextPainter(@PathVariable("lobbyId") Long lobbyId) {
-        Lobby updatedLobby = lobbyService.selectNextPainter(lobbyId);
+    public LobbyGetDTO selectNextPainter(@PathVariable("lobbyId") Long lobbyId,
+                                         @RequestParam(required = false) String currentPainterToken) {
+        // Only ends the given painter's turn; a no-op if the server already moved on
+        Lobby updatedLobby = lobbyService.selectNextPainter(lobbyId, currentPainterToken);
 
         // Convert the updated entity to DTO and return it
-        return LobbyDTOMapper.INSTANCE.convertEntityToLobbyGetDTO(updatedLobby);
+        return toLobbyGetDTO(updatedLobby);
     }
 
 
@@ -101,10 +149,19 @@ public class LobbyController {
     @ResponseBody
     public LobbyGetDTO setLobbyWord(@PathVariable("lobbyId") Long lobbyId, @RequestBody String word) {
         Lobby updatedLobby = lobbyService.setLobbyWord(lobbyId, word);
-        return LobbyDTOMapper.INSTANCE.convertEntityToLobbyGetDTO(updatedLobby);
+        return toLobbyGetDTO(updatedLobby);
         
     }
 
+    @PostMapping("/lobbies/{lobbyId}/guess")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public GuessResultDTO guess(@PathVariable("lobbyId") Long lobbyId, @RequestBody GuessPostDTO guessPostDTO) {
+        GuessResultDTO resultDTO = new GuessResultDTO();
+        resultDTO.setResult(lobbyService.evaluateGuess(lobbyId, guessPostDTO.getPlayerId(), guessPostDTO.getGuess()).name());
+        return resultDTO;
+    }
+
     @GetMapping("/lobbies/{lobbyId}/word")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
@@ -113,4 +170,9 @@ public class LobbyController {
         String currentWord = lobby.getCurrentWord();
         return currentWord;
     }
-}
\ No newline at end of file
+
+    private LobbyGetDTO toLobbyGetDTO(Lobby lobby) {
+        Map<Long, String> tokensById = userService.getTokensByIds(lobby.getPainterHistoryPlayerIds());
+        return LobbyDTOMapper.INSTANCE.convertEntityToLobbyGetDTO(lobby, tokensById);
+    }
+}
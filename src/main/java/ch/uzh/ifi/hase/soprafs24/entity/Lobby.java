@@ -1,26 +1,61 @@
 package ch.uzh.ifi.hase.soprafs24.entity;
 
+import ch.uzh.ifi.hase.soprafs24.util.LongOrderedSet;
+import org.hibernate.annotations.BatchSize;
+
 import java.util.*;
-import java.util.stream.Collectors;
 
 import javax.persistence.*;
 import java.io.Serializable;
 
 @Entity
-@Table(name = "LOBBY")
+// Indexes back the filters of the paged lobby browser (LobbyRepository.findPage)
+@Table(name = "LOBBY", indexes = {
+    @Index(name = "idx_lobby_status_id", columnList = "status, id"),
+    @Index(name = "idx_lobby_language_type_status_id", columnList = "language, type, status, id")
+})
 public class Lobby implements Serializable {
 
   private static final long serialVersionUID = 1L;
 
+  // One bit of painterHistoryMask per member position
+  public static final int MAX_TRACKED_PLAYERS = Long.SIZE;
+
+  // status values: waiting in the lobby, game running, all rounds played
+  public static final int STATUS_WAITING = 0;
+  public static final int STATUS_PLAYING = 1;
+  public static final int STATUS_FINISHED = 2;
+
   @Id
   @Column(nullable = false)
   private Long id;
 
+  // Optimistic lock: bumped on every write, so a write based on a stale copy fails instead of overwriting
+  @Version
+  private Long version;
+
   @Column(nullable = false)
   private Long numOfMaxPlayers;
 
+  // Lobby members in join order, stored in their own table (one row per member)
+  @ElementCollection(fetch = FetchType.EAGER)
+  @CollectionTable(name = "LOBBY_PLAYERS", joinColumns = @JoinColumn(name = "lobby_id"))
+  @OrderColumn(name = "position")
+  @Column(name = "player_id", nullable = false)
+  @BatchSize(size = 50)
+  private List<Long> playerIds = new ArrayList<>();
+
+  // Copy of playerIds.size() so "has free slots" can be filtered in the database
   @Column(nullable = false)
-  private String playerIds = "";  // Store as comma-separated values
+  private int playerCount = 0;
+
+  // Legacy comma-separated member list; only read to migrate old rows (see LobbyPlayerMigration)
+  @Column(name = "player_ids", nullable = false)
+  private String legacyPlayerIds = "";
+
+  // Unboxed copy of playerIds for membership/capacity checks, rebuilt lazily after loading
+  @Transient
+  private transient LongOrderedSet members;
   
   @Column(nullable = false)
   private Long lobbyOwner;  // New field to store the lobby owner's ID
@@ -40,8 +75,22 @@ public class Lobby implements Serializable {
   @Column(nullable = true)
   private String currentPainterToken;
 
-  @Column(nullable = false, length = 1000)
-  private String painterHistoryTokens = "";
+  // Painter rotation over member positions: bit i is set once the player at playerIds[i] painted this cycle
+  @Column(nullable = false)
+  private long painterHistoryMask = 0L;
+
+  // Position in playerIds of the most recent painter, -1 before the first pick of a cycle
+  @Column(nullable = false)
+  private int lastPainterIndex = -1;
+
+  // Full painter rotations completed in the running game; the game ends after numOfRounds of them
+  @Column(nullable = false)
+  private int roundsPlayed = 0;
+
+  // Guessers of the running turn over member positions: bit i is set once the player at playerIds[i]
+  // scored; kept in the row so every instance sees it, and cleared by a new word or deadline
+  @Column(nullable = false)
+  private long guessedMask = 0L;
 
   @Column(nullable = false)
   private String CurrentWord = "default_word";
@@ -49,11 +98,20 @@ public class Lobby implements Serializable {
   @Column(nullable = false)
   private int status = 0;
 
-  // Constructor with random ID generation
+  // End of the current turn (epoch ms), set by LobbyService while the game is running; RoundTimer fires at it
+  @Column(nullable = true)
+  private Long roundEndsAt;
+
+  // Points per member in the current game, one row per player who scored; cleared when a game starts
+  @ElementCollection(fetch = FetchType.EAGER)
+  @CollectionTable(name = "LOBBY_SCORES", joinColumns = @JoinColumn(name = "lobby_id"))
+  @MapKeyColumn(name = "player_id")
+  @Column(name = "score", nullable = false)
+  @BatchSize(size = 50)
+  private Map<Long, Long> scores = new HashMap<>();
+
+  // The 6-digit id (join code) is assigned by LobbyIdAllocator when the lobby is created
   public Lobby() {
-    // Generate a random 6-digit ID (100000-999999)
-    Random random = new Random();
-    this.id = 100000L + random.nextInt(900000);
   }
 
   public String getCurrentWord() {
@@ -61,6 +119,9 @@ public class Lobby implements Serializable {
 }
 
   public void setCurrentWord(String word) {
+    if (!Objects.equals(word, CurrentWord)) {
+      guessedMask = 0L;
+    }
     this.CurrentWord = word;
   }
 
@@ -73,68 +134,197 @@ public class Lobby implements Serializable {
     this.id = id;
   }
 
-  // Convert string to list when getting
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
+
+  // Read-only view of the members, no copy is made
   public List<Long> getPlayerIds() {
-    if (playerIds == null || playerIds.isEmpty()) {
-      return new ArrayList<>();
-    }
-    return Arrays.stream(playerIds.split(","))
-           .map(Long::parseLong)
-           .collect(Collectors.toList());
+    return Collections.unmodifiableList(playerIds);
   }
 
-  // Convert list to string when setting
+  // Duplicates are dropped, the first occurrence keeps its position.
+  // Positions change, so the painter rotation starts over.
   public void setPlayerIds(List<Long> playerIdList) {
-    this.playerIds = playerIdList.stream()
-                    .map(String::valueOf)
-                    .collect(Collectors.joining(","));
+    this.playerIds.clear();
+    this.painterHistoryMask = 0L;
+    this.lastPainterIndex = -1;
+    this.guessedMask = 0L;
+    this.members = new LongOrderedSet(playerIdList == null ? 8 : playerIdList.size());
+    if (playerIdList != null) {
+      for (Long playerId : playerIdList) {
+        if (members.add(playerId)) {
+          this.playerIds.add(playerId);
+        }
+      }
+    }
+    this.playerCount = playerIds.size();
   }
-  
+
   public void addPlayerId(Long playerId) {
-    List<Long> currentIds = getPlayerIds();
-    currentIds.add(playerId);
-    setPlayerIds(currentIds);
+    if (members().contains(playerId)) {
+      return;
+    }
+    if (members.size() >= MAX_TRACKED_PLAYERS) {
+      throw new IllegalStateException("A lobby cannot hold more than " + MAX_TRACKED_PLAYERS + " players.");
+    }
+    members.add(playerId);
+    playerIds.add(playerId);
+    playerCount = playerIds.size();
   }
-  
+
   public void removePlayerId(Long playerId) {
-    List<Long> currentIds = getPlayerIds();
-    currentIds.remove(playerId);
-    setPlayerIds(currentIds);
+    int index = members().indexOf(playerId);
+    if (index >= 0) {
+      members.remove(playerId);
+      playerIds.remove(index);
+      playerCount = playerIds.size();
+      dropPainterPosition(index);
+      guessedMask = dropPosition(guessedMask, index);
+      scores.remove(playerId);
+    }
   }
 
+  // Read-only view of the game's points by player id, no copy is made
+  public Map<Long, Long> getScores() {
+    return Collections.unmodifiableMap(scores);
+  }
 
-    // Use a Set internally for easier checking, but store as comma-separated string
-    public Set<String> getPainterHistoryTokens() {
-        if (painterHistoryTokens == null || painterHistoryTokens.isEmpty()) {
-            return new HashSet<>(); // Return an empty Set
-        }
-        // Split the string and collect into a Set
-        return new HashSet<>(Arrays.asList(painterHistoryTokens.split(",")));
+  public long addScore(Long playerId, long points) {
+    return scores.merge(playerId, points, Long::sum);
+  }
+
+  public void clearScores() {
+    scores.clear();
+  }
+
+  public boolean hasPlayer(long playerId) {
+    return members().contains(playerId);
+  }
+
+  public int getPlayerCount() {
+    return members().size();
+  }
+
+  private LongOrderedSet members() {
+    if (members == null) {
+      members = new LongOrderedSet(playerIds.size());
+      for (Long playerId : playerIds) {
+        members.add(playerId);
+      }
     }
+    return members;
+  }
 
-    // Accept a Set and convert to string for storage
-    public void setPainterHistoryTokens(Set<String> painterHistoryTokenSet) {
-        if (painterHistoryTokenSet == null || painterHistoryTokenSet.isEmpty()) {
-            this.painterHistoryTokens = "";
-        } else {
-            this.painterHistoryTokens = String.join(",", painterHistoryTokenSet);
+  // Rows written before LOBBY_PLAYERS existed still carry their members in the old CSV column.
+  // Moves them into the collection and clears the column; returns false if there was nothing to do.
+  public boolean migrateLegacyPlayerIds() {
+    if (legacyPlayerIds == null || legacyPlayerIds.isBlank()) {
+      return false;
+    }
+    if (playerIds.isEmpty()) {
+      for (String id : legacyPlayerIds.split(",")) {
+        if (!id.isBlank()) {
+          addPlayerId(Long.parseLong(id.trim()));
         }
+      }
     }
+    legacyPlayerIds = "";
+    return true;
+  }
 
 
-    // Method to add a token to the history
-    public void addTokenToPainterHistory(String playerToken) {
-        // Get the Set of current history tokens
-        Set<String> currentTokens = getPainterHistoryTokens(); // Variable is 'currentTokens' (plural)
-        if (currentTokens.add(playerToken)) { // Check if adding the token modified the set
-            setPainterHistoryTokens(currentTokens); // Update the stored string using the modified set
-        }
+  public long getPainterHistoryMask() {
+    return painterHistoryMask;
+  }
+
+  public void setPainterHistoryMask(long painterHistoryMask) {
+    this.painterHistoryMask = painterHistoryMask;
+  }
+
+  public int getLastPainterIndex() {
+    return lastPainterIndex;
+  }
+
+  public void setLastPainterIndex(int lastPainterIndex) {
+    this.lastPainterIndex = lastPainterIndex;
+  }
+
+  public boolean hasPainted(int position) {
+    return (painterHistoryMask & (1L << position)) != 0;
+  }
+
+  // Records the member at this position as the current painter of the cycle
+  public void markPainter(int position) {
+    painterHistoryMask |= 1L << position;
+    lastPainterIndex = position;
+  }
+
+  // Start of a new cycle, nobody has painted yet
+  public void clearPainterHistory() {
+    painterHistoryMask = 0L;
+  }
+
+  public int getRoundsPlayed() {
+    return roundsPlayed;
+  }
+
+  // Every active member painted once: one more round of the game is over; returns the rounds played
+  public int completeRound() {
+    return ++roundsPlayed;
+  }
+
+  // A new game: no rounds played and nobody has painted yet
+  public void resetRounds() {
+    roundsPlayed = 0;
+    painterHistoryMask = 0L;
+    lastPainterIndex = -1;
+  }
+
+  // Members that already painted this cycle, in join order
+  public List<Long> getPainterHistoryPlayerIds() {
+    List<Long> painted = new ArrayList<>(Long.bitCount(painterHistoryMask));
+    for (long mask = painterHistoryMask; mask != 0; mask &= mask - 1) {
+      int position = Long.numberOfTrailingZeros(mask);
+      if (position < playerIds.size()) {
+        painted.add(playerIds.get(position));
+      }
+    }
+    return painted;
+  }
+
+  // A member left: close the gap in the mask so later positions still line up with playerIds
+  private void dropPainterPosition(int position) {
+    painterHistoryMask = dropPosition(painterHistoryMask, position);
+    if (lastPainterIndex >= position) {
+      // the next search then starts with whoever moved into the freed position
+      lastPainterIndex--;
     }
+  }
+
+  // The mask without the bit at position, later bits move down by one
+  private static long dropPosition(long mask, int position) {
+    long below = mask & ((1L << position) - 1);
+    long above = position < Long.SIZE - 1 ? (mask >>> (position + 1)) << position : 0L;
+    return below | above;
+  }
 
-    // Method to clear the history (start of new cycle)
-    public void clearPainterHistory() {
-        setPainterHistoryTokens(Collections.emptySet()); // Use helper method
+  // Whether the member already guessed the word of the running turn
+  public boolean hasGuessed(long playerId) {
+    int position = members().indexOf(playerId);
+    return position >= 0 && (guessedMask & (1L << position)) != 0;
+  }
+
+  public void markGuessed(long playerId) {
+    int position = members().indexOf(playerId);
+    if (position >= 0) {
+      guessedMask |= 1L << position;
     }
+  }
 
   // Getter and setter for the lobby owner
   public Long getLobbyOwner() {
@@ -202,4 +392,42 @@ public class Lobby implements Serializable {
   this.status = status;
  }
 
+  public Long getRoundEndsAt() {
+    return roundEndsAt;
+  }
+
+  public void setRoundEndsAt(Long roundEndsAt) {
+    if (!Objects.equals(roundEndsAt, this.roundEndsAt)) {
+      guessedMask = 0L;
+    }
+    this.roundEndsAt = roundEndsAt;
+  }
+
+  // Detached copy with its own collections, for readers outside the lobby's mailbox lane;
+  // later changes to this lobby do not show up in it
+  public Lobby copy() {
+    Lobby copy = new Lobby();
+    copy.id = id;
+    copy.version = version;
+    copy.numOfMaxPlayers = numOfMaxPlayers;
+    copy.playerIds = new ArrayList<>(playerIds);
+    copy.playerCount = playerCount;
+    copy.legacyPlayerIds = legacyPlayerIds;
+    copy.lobbyOwner = lobbyOwner;
+    copy.language = language;
+    copy.numOfRounds = numOfRounds;
+    copy.drawTime = drawTime;
+    copy.type = type;
+    copy.currentPainterToken = currentPainterToken;
+    copy.painterHistoryMask = painterHistoryMask;
+    copy.lastPainterIndex = lastPainterIndex;
+    copy.roundsPlayed = roundsPlayed;
+    copy.guessedMask = guessedMask;
+    copy.CurrentWord = CurrentWord;
+    copy.status = status;
+    copy.roundEndsAt = roundEndsAt;
+    copy.scores = new HashMap<>(scores);
+    return copy;
+  }
+
 }
@@ -49,6 +49,10 @@ public class User implements Serializable {
   @Column(name = "Avatar_URL")
   private String avatarUrl;  
 
+  // Points from all games; only ever changed through UserRepository.addToTotalScore
+  @Column(name = "total_score", nullable = false)
+  private long totalScore = 0L;
+
 
   public String getAvatarUrl() {
     return avatarUrl;
@@ -123,5 +127,13 @@ public class User implements Serializable {
     this.password = password; 
   }
 
+  public long getTotalScore() {
+    return totalScore;
+  }
+
+  public void setTotalScore(long totalScore) {
+    this.totalScore = totalScore;
+  }
+
 
 }
@@ -2,9 +2,23 @@ package ch.uzh.ifi.hase.soprafs24.repository;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository("lobbyRepository")
-public interface LobbyRepository extends JpaRepository<Lobby, Long> {
+public interface LobbyRepository extends JpaRepository<Lobby, Long>, LobbyRepositoryCustom {
     // custom methods to be implemented
-}
\ No newline at end of file
+
+    // Lobbies that still keep their members in the old comma-separated column
+    List<Lobby> findByLegacyPlayerIdsNot(String legacyPlayerIds);
+
+    // Ids only, used to seed the LobbyIdAllocator at startup
+    @Query("SELECT l.id FROM Lobby l")
+    List<Long> findAllIds();
+
+    // Versions and turn deadlines of all lobbies, polled by instances sharing the table
+    @Query("SELECT l.id AS id, l.version AS version, l.status AS status, l.roundEndsAt AS roundEndsAt FROM Lobby l")
+    List<LobbyVersionView> findAllVersions();
+}
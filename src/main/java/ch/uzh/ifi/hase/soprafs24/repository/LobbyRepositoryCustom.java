@@ -0,0 +1,16 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/**
+ * Lobby queries built in code instead of JPQL, implemented by
+ * LobbyRepositoryCustomImpl and mixed into LobbyRepository.
+ */
+public interface LobbyRepositoryCustom {
+
+    // One page of the lobby browser: lobbies after the cursor id in id order; null filters match everything
+    List<Lobby> findPage(long cursor, Integer status, String language, String type, boolean freeSlotsOnly, Pageable pageable);
+}
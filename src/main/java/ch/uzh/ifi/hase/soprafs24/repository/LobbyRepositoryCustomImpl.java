@@ -0,0 +1,68 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import org.springframework.data.domain.Pageable;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lobby browser query gets a condition only for the filters that are set:
+ * "(:x IS NULL OR l.x = :x)" catch-alls would keep the database from using
+ * the (language, type, status, id) index.
+ */
+public class LobbyRepositoryCustomImpl implements LobbyRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Lobby> findPage(long cursor, Integer status, String language, String type, boolean freeSlotsOnly, Pageable pageable) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Lobby> query = builder.createQuery(Lobby.class);
+        Root<Lobby> lobby = query.from(Lobby.class);
+
+        // bound as parameters, so every page and filter value shares the statement of its filter set
+        Map<ParameterExpression<?>, Object> values = new HashMap<>();
+        List<Predicate> conditions = new ArrayList<>();
+        conditions.add(builder.greaterThan(lobby.get("id"), bind(builder, values, Long.class, cursor)));
+        if (status != null) {
+            conditions.add(builder.equal(lobby.get("status"), bind(builder, values, Integer.class, status)));
+        }
+        if (language != null) {
+            conditions.add(builder.equal(lobby.get("language"), bind(builder, values, String.class, language)));
+        }
+        if (type != null) {
+            conditions.add(builder.equal(lobby.get("type"), bind(builder, values, String.class, type)));
+        }
+        if (freeSlotsOnly) {
+            conditions.add(builder.lt(lobby.<Integer>get("playerCount"), lobby.<Long>get("numOfMaxPlayers")));
+        }
+        query.select(lobby).where(conditions.toArray(new Predicate[0])).orderBy(builder.asc(lobby.get("id")));
+
+        TypedQuery<Lobby> page = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize());
+        for (Map.Entry<ParameterExpression<?>, Object> value : values.entrySet()) {
+            page.setParameter(value.getKey().getName(), value.getValue());
+        }
+        return page.getResultList();
+    }
+
+    private static <T> ParameterExpression<T> bind(CriteriaBuilder builder, Map<ParameterExpression<?>, Object> values,
+                                                   Class<T> type, T value) {
+        ParameterExpression<T> parameter = builder.parameter(type, "p" + values.size());
+        values.put(parameter, value);
+        return parameter;
+    }
+}
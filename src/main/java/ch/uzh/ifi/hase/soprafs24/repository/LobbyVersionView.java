@@ -0,0 +1,13 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+/**
+ * Projection with the id and version of a lobby plus its turn deadline, so
+ * instances sharing the lobby table can tell which lobbies changed and which
+ * turns are overdue without loading whole Lobby entities.
+ */
+public interface LobbyVersionView {
+  Long getId();
+  Long getVersion();
+  int getStatus();
+  Long getRoundEndsAt();
+}
@@ -1,9 +1,16 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 
 
 
@@ -13,4 +20,20 @@ public interface UserRepository extends JpaRepository<User, Long> {
   //Remember that this automatically handles the method definition finByName is not implemented by us.
   User findByUsername(String username);
   User findByToken(String token);
+
+  // id/token pairs of all given users in a single query; unknown ids are left out
+  @Query("SELECT u.id AS id, u.token AS token FROM User u WHERE u.id IN :ids")
+  List<UserTokenView> findTokensByIdIn(@Param("ids") Collection<Long> ids);
+
+  // Adds points in the database without loading the user; returns the number of updated rows
+  @Modifying
+  @Query("UPDATE User u SET u.totalScore = u.totalScore + :points WHERE u.id = :id")
+  int addToTotalScore(@Param("id") Long id, @Param("points") long points);
+
+  @Query("SELECT u.totalScore FROM User u WHERE u.id = :id")
+  Long findTotalScoreById(@Param("id") Long id);
+
+  // One page of id/score pairs in id order, for loading the leaderboard without loading whole users
+  @Query("SELECT u.id AS id, u.totalScore AS totalScore FROM User u WHERE u.id > :after ORDER BY u.id")
+  List<UserScoreView> findScoresAfter(@Param("after") Long after, Pageable page);
 }
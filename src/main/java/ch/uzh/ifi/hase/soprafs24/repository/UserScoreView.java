@@ -0,0 +1,10 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+/**
+ * Projection with just the id and total score of a user, used to build the
+ * leaderboard at startup.
+ */
+public interface UserScoreView {
+  Long getId();
+  long getTotalScore();
+}
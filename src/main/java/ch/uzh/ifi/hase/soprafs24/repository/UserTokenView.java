@@ -0,0 +1,10 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+/**
+ * Projection with just the id and token of a user, so lobby members can be
+ * resolved without loading whole User entities.
+ */
+public interface UserTokenView {
+  Long getId();
+  String getToken();
+}
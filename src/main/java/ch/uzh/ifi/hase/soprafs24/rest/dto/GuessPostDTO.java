@@ -0,0 +1,9 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import lombok.Data;
+
+@Data
+public class GuessPostDTO {
+    private Long playerId;
+    private String guess;
+}
@@ -0,0 +1,8 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import lombok.Data;
+
+@Data
+public class GuessResultDTO {
+    private String result; // CORRECT, CLOSE or WRONG
+}
@@ -0,0 +1,11 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import lombok.Data;
+
+@Data
+public class LeaderboardEntryDTO {
+    private Long userId;
+    private String username;
+    private long score; // total points over all games
+    private long rank;  // 1-based, players with equal scores share a rank
+}
@@ -2,6 +2,7 @@ package ch.uzh.ifi.hase.soprafs24.rest.dto;
 
 import lombok.Data;
 import java.util.List;
+import java.util.Map;
 
 @Data
 public class LobbyGetDTO {
@@ -14,7 +15,10 @@ public class LobbyGetDTO {
     private int drawTime;
     private String type;
     private String currentPainterToken;
-    private List<String> painterHistoryTokens;
+    private List<Long> painterHistoryPlayerIds;
+    private List<String> painterHistoryTokens; // the same painters as user tokens, for clients still reading them
     private String currentWord; 
     private int status;
+    private Long roundEndsAt; // end of the current turn, epoch ms; null when no turn is running
+    private Map<Long, Long> scores; // points per player in the current game
 }
@@ -0,0 +1,10 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class LobbyPageDTO {
+    private List<LobbyGetDTO> lobbies;
+    private Long nextCursor; // pass as cursor to get the next page, null on the last page
+}
@@ -13,4 +13,5 @@ public class UserGetDTO {
     private LocalDateTime createdAt;
     private String dateOfBirth;  // Date of Birth as a string
     private String avatarUrl;
+    private long totalScore;
 }
@@ -27,6 +27,7 @@ public interface DTOMapper {
   @Mapping(target = "token", ignore = true) 
   @Mapping(target = "status", ignore = true) 
   @Mapping(target = "createdAt", ignore = true)
+  @Mapping(target = "totalScore", ignore = true)
   @Mapping(source = "dateOfBirth", target = "dateOfBirth") 
   User convertUserPostDTOtoEntity(UserPostDTO userPostDTO);
 
@@ -37,5 +38,6 @@ public interface DTOMapper {
   @Mapping(source = "createdAt", target = "createdAt")
   @Mapping(source = "dateOfBirth", target = "dateOfBirth")
   @Mapping(source = "avatarUrl", target = "avatarUrl")
+  @Mapping(source = "totalScore", target = "totalScore")
   UserGetDTO convertEntityToUserGetDTO(User user);
 }
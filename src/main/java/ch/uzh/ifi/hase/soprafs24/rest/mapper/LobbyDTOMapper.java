@@ -7,6 +7,10 @@ import ch.uzh.ifi.hase.soprafs24.rest.dto.LobbyPutDTO;
 import org.mapstruct.*;
 import org.mapstruct.factory.Mappers;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 @Mapper
 public interface LobbyDTOMapper {
 
@@ -21,8 +25,14 @@ public interface LobbyDTOMapper {
     @Mapping(target = "id", ignore = true)
     @Mapping(source = "type", target = "type")
     @Mapping(target = "currentPainterToken", ignore = true)
-    @Mapping(target = "painterHistoryTokens", ignore = true)
+    @Mapping(target = "painterHistoryMask", ignore = true)
+    @Mapping(target = "lastPainterIndex", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "roundEndsAt", ignore = true)
+    @Mapping(target = "scores", ignore = true)
     @Mapping(target = "currentWord", ignore = true) // Ignore CurrentWord
+    @Mapping(target = "painterHistoryPlayerIds", ignore = true) // derived from painterHistoryMask
+    @Mapping(target = "status", ignore = true) // a new lobby always starts waiting
     Lobby convertLobbyPostDTOtoEntity(LobbyPostDTO lobbyPostDTO);
 
     @Mapping(source = "id", target = "id")
@@ -34,10 +44,26 @@ public interface LobbyDTOMapper {
     @Mapping(source = "drawTime", target = "drawTime")
     @Mapping(source = "type", target = "type")
     @Mapping(source = "currentPainterToken", target = "currentPainterToken")
-    @Mapping(source = "painterHistoryTokens", target = "painterHistoryTokens")
+    @Mapping(source = "painterHistoryPlayerIds", target = "painterHistoryPlayerIds")
     @Mapping(source = "currentWord", target = "currentWord")
+    @Mapping(target = "painterHistoryTokens", ignore = true) // needs the users, see below
     LobbyGetDTO convertEntityToLobbyGetDTO(Lobby lobby);
 
+    // Also fills painterHistoryTokens from the given tokens (UserService.getTokensByIds);
+    // painters without a token are left out
+    default LobbyGetDTO convertEntityToLobbyGetDTO(Lobby lobby, Map<Long, String> tokensById) {
+        LobbyGetDTO lobbyGetDTO = convertEntityToLobbyGetDTO(lobby);
+        List<String> painterHistoryTokens = new ArrayList<>();
+        for (Long playerId : lobbyGetDTO.getPainterHistoryPlayerIds()) {
+            String token = tokensById.get(playerId);
+            if (token != null) {
+                painterHistoryTokens.add(token);
+            }
+        }
+        lobbyGetDTO.setPainterHistoryTokens(painterHistoryTokens);
+        return lobbyGetDTO;
+    }
+
     @Mapping(source = "id", target = "id")
     @Mapping(source = "lobbyOwner", target = "lobbyOwner")
     @Mapping(source = "numOfMaxPlayers", target = "numOfMaxPlayers")
@@ -47,8 +73,13 @@ public interface LobbyDTOMapper {
     @Mapping(source = "drawTime", target = "drawTime")
     @Mapping(source = "type", target = "type")
     @Mapping(target = "currentPainterToken", ignore = true)
-    @Mapping(target = "painterHistoryTokens", ignore = true)
+    @Mapping(target = "painterHistoryMask", ignore = true)
+    @Mapping(target = "lastPainterIndex", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "roundEndsAt", ignore = true)
+    @Mapping(target = "scores", ignore = true)
     @Mapping(target = "currentWord", ignore = true) // Ignore CurrentWord
     @Mapping(source = "status", target = "status")
+    @Mapping(target = "painterHistoryPlayerIds", ignore = true) // derived from painterHistoryMask
     Lobby convertLobbyPutDTOtoEntity(LobbyPutDTO lobbyPutDTO);
 }
\ No newline at end of file
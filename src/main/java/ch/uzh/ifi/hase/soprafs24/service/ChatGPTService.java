@@ -1,121 +1,368 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
-import java.util.ArrayDeque;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Deque;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
 
+/**
+ * Serves drawable words from a shared corpus per (lang, type), filled by OpenAI.
+ *
+ * All sessions asking for the same language and category draw from one corpus
+ * that grows with every refill (up to words.corpus.max-size unique words), so
+ * OpenAI is called per category rather than per session. A session only keeps
+ * a cursor: a bit per corpus word it has already been served, and it draws
+ * random unseen words. Once a session has seen all words of a full corpus it
+ * starts over.
+ *
+ * Refills run in the background: once a session has fewer than the low-water
+ * mark (words.pool.low-water, at least the requested count) unseen words left,
+ * a refill of words.pool.refill-size words is requested through OpenAiClient,
+ * and the caller keeps drawing from what is left. Refills of different
+ * categories that start together share one completion (WordRequestCoalescer). A corpus has at most one
+ * refill in flight, so concurrent callers share it. Only a caller that cannot
+ * be served waits for the running refill, at most words.pool.cold-wait-ms.
+ * nextWordsAsync waits without holding a thread: the request resumes when the
+ * refill lands or the wait times out.
+ *
+ * While OpenAI is down (its circuit breaker is open, see OpenAiClient) no
+ * refill is started and nobody waits: what the corpus cannot serve is topped
+ * up right away from the bundled OfflineWordBank, as is anything a refill did
+ * not deliver in time.
+ *
+ * Every word a refill adds is also saved to the WordStore, and at startup the
+ * corpora are filled from it, so a restarted or new instance serves the
+ * categories fetched before without calling OpenAI.
+ *
+ * Both kinds of state are bounded caches. Session cursors are dropped when the
+ * HTTP session is destroyed, after words.sessions.idle-minutes without a
+ * request, or least recently used beyond words.sessions.max-size sessions.
+ * Corpora are capped at words.corpus.max-count categories (the type is free
+ * text). Hits, misses and evictions of both are published as the Micrometer
+ * cache metrics cache.gets / cache.evictions / cache.size with
+ * cache=words.sessions and cache=words.corpora.
+ */
 @Service
-public class ChatGPTService {
+public class ChatGPTService implements HttpSessionListener {
 
-    private final WebClient webClient;
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final String apiKey;
-    private final String apiUrl = "https://api.openai.com/v1/chat/completions";
+    private final Logger log = LoggerFactory.getLogger(ChatGPTService.class);
+    private final OpenAiClient openAiClient;
+    private final WordRequestCoalescer wordRequests;
+    private final OfflineWordBank offlineWords;
+    private final WordStore wordStore;
+    private final int lowWater;
+    private final int refillSize;
+    private final long coldWaitMs;
+    private final int maxCorpusSize;
 
-    // Map to hold per-(session, lang, type) pools of remaining words
-    private final Map<String, Deque<String>> pools = new ConcurrentHashMap<>();
+    // Shared words by corpusKey(lang, type)
+    private final Cache<String, WordCorpus> corpora;
+    // By session id: the session's cursor per corpusKey
+    private final Cache<String, ConcurrentMap<String, SessionCursor>> sessions;
 
     public ChatGPTService() {
-        this.apiKey = System.getenv("OPENAI_API_KEY");
-        if (this.apiKey == null || this.apiKey.isEmpty()) {
-            throw new IllegalStateException("OpenAI API Key not set");
-        }
-        this.webClient = WebClient.builder()
-                .baseUrl(apiUrl)
-                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        this(new OpenAiClient());
+    }
+
+    public ChatGPTService(OpenAiClient openAiClient) {
+        this(openAiClient, new WordRequestCoalescer(openAiClient, 50L, 5), new OfflineWordBank(), new WordStore("", 30), 20, 50, 10_000L, 2000, 256, 10_000, 30L, new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public ChatGPTService(OpenAiClient openAiClient,
+                          WordRequestCoalescer wordRequests,
+                          OfflineWordBank offlineWords,
+                          WordStore wordStore,
+                          @Value("${words.pool.low-water:20}") int lowWater,
+                          @Value("${words.pool.refill-size:50}") int refillSize,
+                          @Value("${words.pool.cold-wait-ms:10000}") long coldWaitMs,
+                          @Value("${words.corpus.max-size:2000}") int maxCorpusSize,
+                          @Value("${words.corpus.max-count:256}") int maxCorpora,
+                          @Value("${words.sessions.max-size:10000}") int maxSessions,
+                          @Value("${words.sessions.idle-minutes:30}") long sessionIdleMinutes,
+                          MeterRegistry meterRegistry) {
+        this.openAiClient = openAiClient;
+        this.wordRequests = wordRequests;
+        this.offlineWords = offlineWords;
+        this.wordStore = wordStore;
+        this.lowWater = lowWater;
+        this.refillSize = refillSize;
+        this.coldWaitMs = coldWaitMs;
+        this.maxCorpusSize = maxCorpusSize;
+        this.corpora = Caffeine.newBuilder()
+                .maximumSize(maxCorpora)
+                .recordStats()
+                .build();
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterAccess(sessionIdleMinutes, TimeUnit.MINUTES)
+                .scheduler(Scheduler.systemScheduler()) // expire idle sessions without waiting for traffic
+                .recordStats()
                 .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, corpora, "words.corpora");
+        CaffeineCacheMetrics.monitor(meterRegistry, sessions, "words.sessions");
     }
 
-    private List<String> fetchWordPool(String lang, String type, int count) {
-        String langLabel = switch (lang) {
-            case "de" -> "German (no pronouns (der/die/das))";
-            case "ch" -> "Swiss German (echtes Züridütsch) (no pronouns (der/die/das))";
-            case "en" -> "English";
-            default -> "English";
-        };
-
-        String prompt = String.format(
-                "Give me %d random, drawable, (high-school to college difficulty) nouns in the category '%s' in %s. " +
-                        "Only return a raw JSON array like [\"word1\", \"word2\", \"word3\"], with no additional wrapping object.",
-                count, type, langLabel
-        );
-
-        Map<String, Object> body = new HashMap<>();
-        body.put("model", "gpt-3.5-turbo");
-        body.put("messages", List.of(Map.of("role", "user", "content", prompt)));
-        body.put("temperature", 0.8);
-
-        for (int attempt = 0; attempt < 3; attempt++) {
-            try {
-                String rawResponse = webClient.post()
-                        .bodyValue(body)
-                        .retrieve()
-                        .bodyToMono(String.class)
-                        .block();
-
-                JsonNode root = objectMapper.readTree(rawResponse);
-                String content = root.path("choices").get(0)
-                        .path("message").path("content")
-                        .asText();
-
-                // parse, remove any duplicates, shuffle, then return
-                List<String> wordsRaw = objectMapper.readValue(content, new TypeReference<List<String>>() {});
-                List<String> unique = new ArrayList<>(new LinkedHashSet<>(wordsRaw));
-                Collections.shuffle(unique);
-                return unique;
-            } catch (Exception e) {
-                e.printStackTrace();
+    // Fills the corpora with the stored words, so categories fetched before need no OpenAI call
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Map<String, List<WordStore.Entry>> byCorpus = new LinkedHashMap<>();
+        for (WordStore.Entry entry : wordStore.load()) {
+            byCorpus.computeIfAbsent(corpusKey(entry.getLang(), entry.getCategory()), key -> new ArrayList<>()).add(entry);
+        }
+        for (Map.Entry<String, List<WordStore.Entry>> stored : byCorpus.entrySet()) {
+            WordStore.Entry first = stored.getValue().get(0);
+            WordCorpus corpus = corpora.get(stored.getKey(),
+                    key -> new WordCorpus(first.getLang(), first.getCategory(), maxCorpusSize));
+            List<String> words = new ArrayList<>(stored.getValue().size());
+            for (WordStore.Entry entry : stored.getValue()) {
+                words.add(entry.getWord());
             }
+            corpus.addAll(words);
         }
-        // Fallback after all retries
-        return List.of("apple", "dog", "house");
+        log.info("Warmed {} word corpora from the word store.", byCorpus.size());
+    }
+
+    // Registered with the servlet container by Spring Boot: a destroyed session's cursors go with it
+    @Override
+    public void sessionDestroyed(HttpSessionEvent event) {
+        forgetSession(event.getSession().getId());
+    }
+
+    public void forgetSession(String sessionId) {
+        sessions.invalidate(sessionId);
+    }
+
+    // Fresh words for (lang, type); an empty list if OpenAI cannot deliver them
+    Mono<List<String>> fetchWords(String lang, String type, int count) {
+        return wordRequests.fetch(lang, type, count)
+                .onErrorResume(e -> {
+                    log.warn("Fetching {} words ({}, {}) failed: {}", count, lang, type, e.getMessage());
+                    // Nothing is added to the corpus; callers top up from the offline word bank
+                    return Mono.just(List.of());
+                });
     }
 
     /**
-     * Draws `count` words from the pool for (sessionId, lang, type).
-     * Refills by calling fetchWordPool(..., 50) when needed.
+     * Draws `count` words for (sessionId, lang, type) that this session has not
+     * been served yet, blocking until they are there. Request handlers use
+     * nextWordsAsync instead.
      */
     public List<String> nextWords(String sessionId, String lang, String type, int count) {
+        return nextWordsAsync(sessionId, lang, type, count).block();
+    }
+
+    /**
+     * Draws `count` words for (sessionId, lang, type) that this session has not
+     * been served yet. Refills the shared corpus in the background below the
+     * low-water mark; only waits for a refill when the request cannot be served,
+     * and then without blocking the calling thread.
+     */
+    public Mono<List<String>> nextWordsAsync(String sessionId, String lang, String type, int count) {
         if (sessionId == null || sessionId.isEmpty()) {
             throw new IllegalArgumentException("sessionId must be provided");
         }
+        if (count <= 0) {
+            return Mono.just(new ArrayList<>());
+        }
 
-        // Composite key so changing lang/type creates a fresh pool
-        String poolKey = sessionId + "|" + lang + "|" + type;
+        String corpusKey = corpusKey(lang, type);
+        WordCorpus corpus = corpora.get(corpusKey, key -> new WordCorpus(normalize(lang), type, maxCorpusSize));
+        // One cursor per corpus, so changing lang/type gives the session a fresh one;
+        // a cursor into a corpus that was evicted and fetched again starts over
+        ConcurrentMap<String, SessionCursor> sessionCursors = sessions.get(sessionId, id -> new ConcurrentHashMap<>());
+        SessionCursor cursor = sessionCursors.compute(corpusKey,
+                (key, existing) -> existing != null && existing.corpus == corpus ? existing : new SessionCursor(corpus));
 
-        Deque<String> pool = pools.computeIfAbsent(poolKey,
-                id -> new ArrayDeque<>(fetchWordPool(lang, type, 50))
-        );
+        List<String> out = cursor.draw(corpus.words, count);
+        if (out.size() < count && corpus.isFull()) {
+            cursor.reset(); // seen everything there will ever be: start over
+            out.addAll(cursor.draw(corpus.words, count - out.size()));
+        }
+        if (out.size() == count || !openAiClient.isAvailable()) {
+            return Mono.just(finishDraw(corpus, cursor, out, count));
+        }
+        // copy: a caller giving up must not cancel the refill the others wait for
+        return Mono.fromFuture(refill(corpus).copy())
+                .timeout(Duration.ofMillis(coldWaitMs))
+                .onErrorResume(e -> {
+                    log.warn("No words for ({}, {}) after waiting {} ms for a refill.", corpus.lang, corpus.type, coldWaitMs);
+                    return Mono.empty();
+                })
+                .then(Mono.fromSupplier(() -> {
+                    out.addAll(cursor.draw(corpus.words, count - out.size()));
+                    return finishDraw(corpus, cursor, out, count);
+                }));
+    }
 
-        if (pool.isEmpty()) {
-            pool.addAll(fetchWordPool(lang, type, 50));
+    private List<String> finishDraw(WordCorpus corpus, SessionCursor cursor, List<String> out, int count) {
+        if (!corpus.isFull() && cursor.unseen(corpus.words.size()) < Math.max(lowWater, count)) {
+            refill(corpus);
         }
+        if (out.size() < count) {
+            // OpenAI is down or the refill did not deliver in time
+            out.addAll(offlineWords.draw(corpus.lang, corpus.type, count - out.size(), out));
+        }
+        return out;
+    }
+
+    // Number of shared corpora, one per (lang, type) asked for
+    public long getCorpusCount() {
+        corpora.cleanUp();
+        return corpora.estimatedSize();
+    }
+
+    // Number of sessions with cursors
+    public long getSessionCount() {
+        sessions.cleanUp();
+        return sessions.estimatedSize();
+    }
+
+    static String corpusKey(String lang, String type) {
+        return normalize(lang) + "|" + normalize(type);
+    }
 
-        List<String> out = new ArrayList<>();
-        for (int i = 0; i < count && !pool.isEmpty(); i++) {
-            out.add(pool.pollFirst());
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Starts a refill of the corpus unless one is already running; returns the running one
+    CompletableFuture<Void> refill(WordCorpus corpus) {
+        if (!openAiClient.isAvailable()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        while (true) {
+            CompletableFuture<Void> running = corpus.refill.get();
+            if (running != null) {
+                return running;
+            }
+            CompletableFuture<Void> started = new CompletableFuture<>();
+            if (corpus.refill.compareAndSet(null, started)) {
+                fetchWords(corpus.lang, corpus.type, refillSize)
+                        .doFinally(signal -> {
+                            corpus.refill.set(null);
+                            started.complete(null);
+                        })
+                        .subscribe(words -> {
+                            List<String> added = corpus.addAll(words);
+                            wordStore.save(corpus.lang, corpus.type, added);
+                            log.debug("Corpus ({}, {}) grew by {} to {} words.", corpus.lang, corpus.type, added.size(), corpus.words.size());
+                        }, e -> log.warn("Refill for ({}, {}) failed: {}", corpus.lang, corpus.type, e.getMessage()));
+                return started;
+            }
         }
+    }
 
-        if (pool.size() < count) {
-            pool.addAll(fetchWordPool(lang, type, 50));
+    /**
+     * The words fetched so far for one (lang, type), shared by all sessions.
+     * Append-only, so a word keeps its index and session cursors stay valid.
+     */
+    static final class WordCorpus {
+        private final String lang;
+        private final String type;
+        private final int maxSize;
+        // read without locking; only grows, once per refill
+        private final List<String> words = new CopyOnWriteArrayList<>();
+        private final Set<String> known = new HashSet<>(); // folded words, guarded by this
+        private final AtomicReference<CompletableFuture<Void>> refill = new AtomicReference<>();
+
+        WordCorpus(String lang, String type, int maxSize) {
+            this.lang = lang;
+            this.type = type;
+            this.maxSize = maxSize;
         }
 
-        return out;
+        int size() {
+            return words.size();
+        }
+
+        boolean isFull() {
+            return words.size() >= maxSize;
+        }
+
+        // Appends the words not in the corpus yet, up to maxSize; returns the ones added
+        synchronized List<String> addAll(Collection<String> fetched) {
+            List<String> fresh = new ArrayList<>();
+            for (String word : fetched) {
+                if (words.size() + fresh.size() >= maxSize) {
+                    break;
+                }
+                if (word != null && !word.isBlank() && known.add(normalize(word))) {
+                    fresh.add(word.trim());
+                }
+            }
+            words.addAll(fresh);
+            return fresh;
+        }
+    }
+
+    /**
+     * What one session has been served of a corpus: a bit per corpus index.
+     */
+    static final class SessionCursor {
+        private final WordCorpus corpus;
+        private final BitSet seen = new BitSet();
+        private int seenCount;
+
+        SessionCursor(WordCorpus corpus) {
+            this.corpus = corpus;
+        }
+
+        // Random words of the corpus this session has not seen yet, at most count
+        synchronized List<String> draw(List<String> words, int count) {
+            int size = words.size();
+            List<String> drawn = new ArrayList<>(Math.max(0, Math.min(count, size - seenCount)));
+            while (drawn.size() < count && seenCount < size) {
+                int index = seen.nextClearBit(ThreadLocalRandom.current().nextInt(size));
+                if (index >= size) {
+                    index = seen.nextClearBit(0);
+                }
+                seen.set(index);
+                seenCount++;
+                drawn.add(words.get(index));
+            }
+            return drawn;
+        }
+
+        synchronized int unseen(int corpusSize) {
+            return corpusSize - seenCount;
+        }
+
+        synchronized void reset() {
+            seen.clear();
+            seenCount = 0;
+        }
     }
-}
\ No newline at end of file
+}
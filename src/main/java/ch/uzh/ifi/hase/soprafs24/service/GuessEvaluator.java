@@ -0,0 +1,263 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Guess Evaluator
+ * Decides whether a chat guess hits the lobby's current word.
+ *
+ * Words and guesses are folded the same way: lower case, accents stripped
+ * (é -> e, ä -> a), ß -> ss, and everything that is not a letter or digit
+ * dropped, so "Ice-Cream" matches "icecream". For German and Swiss German
+ * lobbies the umlauts may also be written out (ä -> ae), on either side.
+ *
+ * The folded forms of the word are computed once per word (prepare, called by
+ * LobbyService.setLobbyWord). A guess is folded into a per-thread buffer and
+ * compared with a banded edit distance, so checking a guess allocates nothing
+ * and costs O(word length * tolerance). A guess one edit away (two for words of
+ * 8+ letters, none below 4) is reported as CLOSE.
+ */
+@Component
+public class GuessEvaluator {
+
+    public enum Result {
+        CORRECT, CLOSE, WRONG
+    }
+
+    // longer guesses cannot be the word and are not folded at all
+    static final int MAX_GUESS_LENGTH = 64;
+    private static final int MAX_TOLERANCE = 2;
+    private static final Set<String> UMLAUT_LANGUAGES = Set.of("de", "ch", "german", "deutsch", "swissgerman");
+
+    // folded form of every char up to U+017F (Latin-1 and Latin Extended-A); 0 = dropped
+    private static final char[] FOLD = new char[0x180];
+
+    static {
+        for (char c = 0; c < FOLD.length; c++) {
+            String base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD)
+                    .replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+            char folded = base.length() == 1 ? base.charAt(0) : 0;
+            FOLD[c] = Character.isLetterOrDigit(folded) ? folded : 0;
+        }
+        FOLD['ø'] = 'o';
+        FOLD['Ø'] = 'o';
+        FOLD['đ'] = 'd';
+        FOLD['Đ'] = 'd';
+        FOLD['ł'] = 'l';
+        FOLD['Ł'] = 'l';
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final Map<Long, WordForms> words = new ConcurrentHashMap<>();
+
+    // Precomputes the accepted forms of the lobby's new word
+    public void prepare(Long lobbyId, String word, String language) {
+        words.put(lobbyId, new WordForms(word, language));
+    }
+
+    public void forget(Long lobbyId) {
+        words.remove(lobbyId);
+    }
+
+    public Result evaluate(Long lobbyId, String word, String language, String guess) {
+        if (word == null || guess == null) {
+            return Result.WRONG;
+        }
+        WordForms forms = words.get(lobbyId);
+        if (forms == null || !forms.matches(word, language)) {
+            // word set before a restart or language changed since: fold it now
+            forms = new WordForms(word, language);
+            words.put(lobbyId, forms);
+        }
+        return forms.evaluate(guess);
+    }
+
+    static boolean isUmlautLanguage(String language) {
+        return language != null
+                && UMLAUT_LANGUAGES.contains(language.toLowerCase(Locale.ROOT).replaceAll("[^a-z]", ""));
+    }
+
+    /**
+     * Folds text into out, returns the folded length or -1 if it does not fit.
+     * With expandUmlauts, ä/ö/ü become ae/oe/ue instead of a/o/u.
+     */
+    static int fold(CharSequence text, boolean expandUmlauts, char[] out) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char second = 0;
+            char folded;
+            if (c == 'ß') {
+                folded = 's';
+                second = 's';
+            }
+            else if (c == 'æ' || c == 'Æ') {
+                folded = 'a';
+                second = 'e';
+            }
+            else if (c == 'œ' || c == 'Œ') {
+                folded = 'o';
+                second = 'e';
+            }
+            else if (expandUmlauts && isUmlaut(c)) {
+                folded = FOLD[c];
+                second = 'e';
+            }
+            else if (c < FOLD.length) {
+                folded = FOLD[c];
+            }
+            else {
+                folded = Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : 0;
+            }
+            if (folded == 0) {
+                continue;
+            }
+            if (length + (second == 0 ? 1 : 2) > out.length) {
+                return -1;
+            }
+            out[length++] = folded;
+            if (second != 0) {
+                out[length++] = second;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isUmlaut(char c) {
+        return c == 'ä' || c == 'ö' || c == 'ü' || c == 'Ä' || c == 'Ö' || c == 'Ü';
+    }
+
+    private static boolean containsUmlaut(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (isUmlaut(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Levenshtein distance of a[0, aLength) and b[0, bLength) if it is at most
+     * maxDistance, otherwise maxDistance + 1. Only the diagonal band of width
+     * 2 * maxDistance + 1 is computed, using the given rows (length > bLength).
+     */
+    static int boundedDistance(char[] a, int aLength, char[] b, int bLength, int maxDistance, int[] previous, int[] current) {
+        if (Math.abs(aLength - bLength) > maxDistance) {
+            return maxDistance + 1;
+        }
+        int outside = maxDistance + 1;
+        for (int j = 0; j <= bLength; j++) {
+            previous[j] = j <= maxDistance ? j : outside;
+        }
+        for (int i = 1; i <= aLength; i++) {
+            int from = Math.max(1, i - maxDistance);
+            int to = Math.min(bLength, i + maxDistance);
+            current[0] = i <= maxDistance ? i : outside;
+            if (from > 1) {
+                current[from - 1] = outside;
+            }
+            int rowMin = current[0];
+            for (int j = from; j <= to; j++) {
+                int cost = a[i - 1] == b[j - 1] ? 0 : 1;
+                int value = Math.min(previous[j - 1] + cost, Math.min(previous[j], current[j - 1]) + 1);
+                current[j] = Math.min(value, outside);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (to < bLength) {
+                current[to + 1] = outside;
+            }
+            if (rowMin > maxDistance) {
+                return outside;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[bLength];
+    }
+
+    // Accepted folded spellings of one word, in one language
+    private static final class WordForms {
+        private final String word;
+        private final String language;
+        private final boolean umlauts;
+        private final char[][] forms;
+        private final int tolerance;
+
+        private WordForms(String word, String language) {
+            this.word = word;
+            this.language = language;
+            this.umlauts = isUmlautLanguage(language);
+            List<char[]> accepted = new ArrayList<>();
+            accepted.add(foldWord(word, false));
+            if (umlauts) {
+                char[] expanded = foldWord(word, true);
+                if (!Arrays.equals(expanded, accepted.get(0))) {
+                    accepted.add(expanded);
+                }
+            }
+            this.forms = accepted.toArray(new char[0][]);
+            int length = forms[0].length;
+            this.tolerance = length < 4 ? 0 : length < 8 ? 1 : MAX_TOLERANCE;
+        }
+
+        private static char[] foldWord(String word, boolean expandUmlauts) {
+            char[] buffer = new char[word.length() * 2];
+            return Arrays.copyOf(buffer, fold(word, expandUmlauts, buffer));
+        }
+
+        private boolean matches(String word, String language) {
+            return this.word.equals(word) && (this.language == null ? language == null : this.language.equals(language));
+        }
+
+        private Result evaluate(String guess) {
+            if (guess.length() > MAX_GUESS_LENGTH) {
+                return Result.WRONG;
+            }
+            Scratch scratch = SCRATCH.get();
+            Result result = compare(scratch, fold(guess, false, scratch.guess));
+            if (result != Result.CORRECT && umlauts && containsUmlaut(guess)) {
+                Result expanded = compare(scratch, fold(guess, true, scratch.guess));
+                if (expanded.ordinal() < result.ordinal()) {
+                    result = expanded;
+                }
+            }
+            return result;
+        }
+
+        private Result compare(Scratch scratch, int guessLength) {
+            if (guessLength <= 0) {
+                return Result.WRONG;
+            }
+            Result best = Result.WRONG;
+            for (char[] form : forms) {
+                int distance = boundedDistance(scratch.guess, guessLength, form, form.length,
+                        tolerance, scratch.previous, scratch.current);
+                if (distance == 0) {
+                    return Result.CORRECT;
+                }
+                if (distance <= tolerance) {
+                    best = Result.CLOSE;
+                }
+            }
+            return best;
+        }
+    }
+
+    // per-thread buffers, sized for the longest folded guess (and words up to the tolerance longer)
+    private static final class Scratch {
+        private final char[] guess = new char[MAX_GUESS_LENGTH * 2];
+        private final int[] previous = new int[MAX_GUESS_LENGTH * 2 + MAX_TOLERANCE + 1];
+        private final int[] current = new int[MAX_GUESS_LENGTH * 2 + MAX_TOLERANCE + 1];
+    }
+}
@@ -0,0 +1,155 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.LobbyDTOMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lobby Browser Snapshot
+ * The GET /lobbies response kept in memory, already serialized.
+ *
+ * LobbyService hands over every lobby it creates or changes and every lobby it
+ * deletes. Each lobby is stored as its serialized LobbyGetDTO; the full JSON
+ * array is assembled from these fragments only when something changed since
+ * the last read. Every effective change bumps a version that doubles as ETag,
+ * so a poll with an unchanged If-None-Match can be answered with 304.
+ */
+@Component
+public class LobbyBrowserSnapshot {
+
+    private final ObjectMapper objectMapper;
+    private final UserService userService;
+
+    // serialized LobbyGetDTO per lobby id, in id order like the database listing
+    private final Map<Long, byte[]> entries = new ConcurrentSkipListMap<>();
+    private final AtomicLong version = new AtomicLong();
+    // distinguishes ETags of different server runs
+    private final String bootId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private volatile View current;
+
+    public LobbyBrowserSnapshot(ObjectMapper objectMapper, UserService userService) {
+        this.objectMapper = objectMapper;
+        this.userService = userService;
+        this.current = assemble(0L);
+    }
+
+    // Stores the lobby's current state; the version only moves if its JSON actually changed
+    public void update(Lobby lobby) {
+        byte[] json = serialize(lobby);
+        byte[] previous = entries.put(lobby.getId(), json);
+        if (!Arrays.equals(previous, json)) {
+            version.incrementAndGet();
+        }
+    }
+
+    public void remove(Long lobbyId) {
+        if (entries.remove(lobbyId) != null) {
+            version.incrementAndGet();
+        }
+    }
+
+    // Replaces the whole snapshot, e.g. with the stored lobbies at startup
+    public void reset(Collection<Lobby> lobbies) {
+        entries.clear();
+        for (Lobby lobby : lobbies) {
+            entries.put(lobby.getId(), serialize(lobby));
+        }
+        version.incrementAndGet();
+    }
+
+    // Brings the snapshot in line with the given lobbies, e.g. the stored lobbies
+    // of all instances; the version only moves if that changed anything
+    public void sync(Collection<Lobby> lobbies) {
+        Set<Long> seen = new HashSet<>();
+        for (Lobby lobby : lobbies) {
+            update(lobby);
+            seen.add(lobby.getId());
+        }
+        retain(seen);
+    }
+
+    // Drops every lobby not in the given ids, e.g. ones another instance deleted
+    public void retain(Set<Long> lobbyIds) {
+        for (Long lobbyId : entries.keySet()) {
+            if (!lobbyIds.contains(lobbyId)) {
+                remove(lobbyId);
+            }
+        }
+    }
+
+    public View current() {
+        View view = current;
+        long latest = version.get();
+        if (view.version == latest) {
+            return view;
+        }
+        synchronized (this) {
+            // labelled with the version read before assembling; later changes bump it again
+            long target = version.get();
+            if (current.version != target) {
+                current = assemble(target);
+            }
+            return current;
+        }
+    }
+
+    private View assemble(long atVersion) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write('[');
+        boolean first = true;
+        for (byte[] json : entries.values()) {
+            if (!first) {
+                body.write(',');
+            }
+            body.writeBytes(json);
+            first = false;
+        }
+        body.write(']');
+        return new View(bootId + "-" + atVersion, atVersion, body.toByteArray());
+    }
+
+    private byte[] serialize(Lobby lobby) {
+        try {
+            Map<Long, String> tokensById = userService.getTokensByIds(lobby.getPainterHistoryPlayerIds());
+            return objectMapper.writeValueAsBytes(LobbyDTOMapper.INSTANCE.convertEntityToLobbyGetDTO(lobby, tokensById));
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize lobby " + lobby.getId(), e);
+        }
+    }
+
+    /**
+     * One immutable state of the lobby list: JSON array body plus its ETag.
+     */
+    public static final class View {
+        private final String etag;
+        private final long version;
+        private final byte[] body;
+
+        public View(String etag, long version, byte[] body) {
+            this.etag = etag;
+            this.version = version;
+            this.body = body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
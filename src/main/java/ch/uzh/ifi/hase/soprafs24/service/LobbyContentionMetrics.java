@@ -0,0 +1,59 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lobby Contention Metrics
+ * Counts lobby writes, optimistic lock conflicts and retries per lobby:
+ * - lobby.write.attempts     every write of a lobby
+ * - lobby.write.conflicts    writes rejected because the lobby changed in between
+ * - lobby.write.retries      conflicting writes that were tried again
+ * - lobby.write.exhausted    writes given up after the last retry
+ * All meters are tagged with lobby=<id> and removed when the lobby is deleted,
+ * so conflict rate = conflicts / attempts per lobby (see /actuator/metrics).
+ */
+@Component
+public class LobbyContentionMetrics {
+
+    static final String ATTEMPTS = "lobby.write.attempts";
+    static final String CONFLICTS = "lobby.write.conflicts";
+    static final String RETRIES = "lobby.write.retries";
+    static final String EXHAUSTED = "lobby.write.exhausted";
+
+    private final MeterRegistry meterRegistry;
+
+    public LobbyContentionMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void recordAttempt(Long lobbyId) {
+        counter(ATTEMPTS, lobbyId).increment();
+    }
+
+    public void recordConflict(Long lobbyId) {
+        counter(CONFLICTS, lobbyId).increment();
+    }
+
+    public void recordRetry(Long lobbyId) {
+        counter(RETRIES, lobbyId).increment();
+    }
+
+    public void recordExhausted(Long lobbyId) {
+        counter(EXHAUSTED, lobbyId).increment();
+    }
+
+    // Drops the meters of a deleted lobby so the tag set does not grow forever
+    public void remove(Long lobbyId) {
+        String tag = String.valueOf(lobbyId);
+        meterRegistry.getMeters().stream()
+                .filter(meter -> meter.getId().getName().startsWith("lobby.write.")
+                        && tag.equals(meter.getId().getTag("lobby")))
+                .forEach(meterRegistry::remove);
+    }
+
+    private Counter counter(String name, Long lobbyId) {
+        return meterRegistry.counter(name, "lobby", String.valueOf(lobbyId));
+    }
+}
@@ -0,0 +1,190 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.LobbyDTOMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lobby Event Hub
+ * Pushes lobby changes to subscribers of GET /lobbies/{lobbyId}/stream as server-sent events.
+ *
+ * Every change is serialized once and shared by all subscribers of the lobby:
+ * - "lobby"   the full LobbyGetDTO, sent first to every new subscriber
+ * - "delta"   only the LobbyGetDTO fields that changed, plus the id
+ * - "deleted" the lobby is gone, the stream completes
+ * Event ids are consecutive per lobby. A subscriber that fell behind and missed
+ * an update gets the full lobby again instead of a delta.
+ *
+ * Channels only exist while a lobby has subscribers. publish and close must be
+ * called from the lobby's mailbox lane, which keeps emissions in order. A state
+ * with a lower version than the one last sent is skipped, so a lobby reloaded
+ * from the shared database never rolls subscribers back past a local change.
+ */
+@Component
+public class LobbyEventHub {
+
+    static final String FULL = "lobby";
+    static final String DELTA = "delta";
+    static final String DELETED = "deleted";
+
+    private final ObjectMapper objectMapper;
+    private final UserService userService;
+    private final Duration keepAlive;
+    private final Map<Long, Channel> channels = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LobbyEventHub(ObjectMapper objectMapper, UserService userService,
+                         @Value("${lobby.events.keep-alive-ms:15000}") long keepAliveMs) {
+        this.objectMapper = objectMapper;
+        this.userService = userService;
+        this.keepAlive = Duration.ofMillis(keepAliveMs);
+    }
+
+    public int getSubscriberCount(Long lobbyId) {
+        Channel channel = channels.get(lobbyId);
+        return channel == null ? 0 : channel.subscribers;
+    }
+
+    /**
+     * Stream for one subscriber, starting with the given (current) state of the lobby.
+     * Call on the lobby's lane so no change can slip in between state and subscription.
+     */
+    public Flux<ServerSentEvent<String>> subscribe(Lobby lobby) {
+        Long lobbyId = lobby.getId();
+        Channel channel = channels.compute(lobbyId, (id, existing) -> {
+            Channel open = existing != null ? existing : new Channel(toTree(lobby), lobby.getVersion());
+            open.subscribers++;
+            return open;
+        });
+
+        Flux<ServerSentEvent<String>> events = Flux.defer(() -> {
+            long[] lastSeen = {-1L};
+            return channel.sink.asFlux().map(update -> {
+                boolean inOrder = lastSeen[0] >= 0 && update.seq == lastSeen[0] + 1;
+                lastSeen[0] = update.seq;
+                if (update.deleted) {
+                    return event(DELETED, update.seq, update.full);
+                }
+                return inOrder ? event(DELTA, update.seq, update.delta) : event(FULL, update.seq, update.full);
+            });
+        });
+        // comments keep proxies from closing idle streams
+        Flux<ServerSentEvent<String>> heartbeats = Flux.interval(keepAlive)
+                .map(tick -> ServerSentEvent.<String>builder().comment("keep-alive").build());
+
+        return Flux.merge(events, heartbeats)
+                .takeUntil(event -> DELETED.equals(event.event()))
+                .doFinally(signal -> unsubscribe(lobbyId, channel));
+    }
+
+    // Sends the lobby's new state to its subscribers, if it has any
+    public void publish(Lobby lobby) {
+        Channel channel = channels.get(lobby.getId());
+        if (channel == null || isOlder(lobby.getVersion(), channel.version)) {
+            return;
+        }
+        ObjectNode current = toTree(lobby);
+        ObjectNode delta = objectMapper.createObjectNode();
+        delta.set("id", current.get("id"));
+        for (Iterator<Map.Entry<String, JsonNode>> fields = current.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!field.getValue().equals(channel.state.get(field.getKey()))) {
+                delta.set(field.getKey(), field.getValue());
+            }
+        }
+        if (delta.size() == 1) {
+            return; // nothing a subscriber can see has changed
+        }
+        channel.state = current;
+        channel.version = lobby.getVersion();
+        channel.emit(new Update(++channel.seq, write(current), write(delta), false));
+    }
+
+    // The lobby was deleted: tell its subscribers and end their streams
+    public void close(Long lobbyId) {
+        Channel channel = channels.remove(lobbyId);
+        if (channel != null) {
+            channel.emit(new Update(++channel.seq, write(channel.state), null, true));
+            channel.sink.tryEmitComplete();
+        }
+    }
+
+    private static boolean isOlder(Long version, Long sent) {
+        return version != null && sent != null && version < sent;
+    }
+
+    private void unsubscribe(Long lobbyId, Channel channel) {
+        channels.computeIfPresent(lobbyId, (id, existing) -> {
+            if (existing != channel) {
+                return existing;
+            }
+            existing.subscribers--;
+            return existing.subscribers == 0 ? null : existing;
+        });
+    }
+
+    private ObjectNode toTree(Lobby lobby) {
+        Map<Long, String> tokensById = userService.getTokensByIds(lobby.getPainterHistoryPlayerIds());
+        return objectMapper.valueToTree(LobbyDTOMapper.INSTANCE.convertEntityToLobbyGetDTO(lobby, tokensById));
+    }
+
+    private String write(JsonNode node) {
+        try {
+            return objectMapper.writeValueAsString(node);
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize lobby event", e);
+        }
+    }
+
+    private static ServerSentEvent<String> event(String type, long seq, String data) {
+        return ServerSentEvent.<String>builder().event(type).id(Long.toString(seq)).data(data).build();
+    }
+
+    private static final class Update {
+        private final long seq;
+        private final String full;
+        private final String delta;
+        private final boolean deleted;
+
+        private Update(long seq, String full, String delta, boolean deleted) {
+            this.seq = seq;
+            this.full = full;
+            this.delta = delta;
+            this.deleted = deleted;
+        }
+    }
+
+    // One lobby's subscribers; the sink replays the latest update to whoever subscribes next
+    private final class Channel {
+        private final Sinks.Many<Update> sink = Sinks.many().replay().latest();
+        private ObjectNode state;
+        private Long version; // of the lobby state last sent
+        private long seq = 0;
+        private volatile int subscribers = 0; // only changed inside channels.compute*
+
+        private Channel(ObjectNode state, Long version) {
+            this.state = state;
+            this.version = version;
+            emit(new Update(seq, write(state), null, false));
+        }
+
+        private void emit(Update update) {
+            sink.tryEmitNext(update);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.repository.LobbyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Lobby Id Allocator
+ * Hands out unique 6-digit lobby ids (join codes, 100000-999999) without a database round trip.
+ *
+ * Ids come from a keyed permutation of the 900000 codes: the n-th allocation
+ * returns permute(n), so codes look random but never repeat until the whole
+ * range was used once. Ids in use are tracked in a bit set, which is seeded with
+ * the stored lobbies at startup. Released ids go to a FIFO pool and are only
+ * handed out again after the permutation is used up, so a code that just
+ * became free is not reused right away.
+ *
+ * All methods are synchronized; an allocation is a few integer operations.
+ *
+ * With lobby.state.shared=true other instances allocate from the same range,
+ * each with its own permutation, so the bit set only knows this instance's ids.
+ * The insert of the lobby row then decides: LobbyService.createLobby retries
+ * with the next id when the primary key is already taken.
+ */
+@Component
+public class LobbyIdAllocator {
+
+    public static final long MIN_ID = 100000L;
+    public static final int ID_COUNT = 900000;
+
+    // Feistel network over 20 bits (2^20 >= ID_COUNT), values outside the range are walked again
+    private static final int HALF_BITS = 10;
+    private static final int HALF_MASK = (1 << HALF_BITS) - 1;
+    private static final int ROUNDS = 4;
+
+    private final Logger log = LoggerFactory.getLogger(LobbyIdAllocator.class);
+    private final LobbyRepository lobbyRepository;
+    private final int[] roundKeys = new int[ROUNDS];
+
+    private final BitSet inUse = new BitSet(ID_COUNT);
+    private final ArrayDeque<Integer> recycled = new ArrayDeque<>();
+    private int nextSequence = 0;
+    private int usedCount = 0;
+
+    @Autowired
+    public LobbyIdAllocator(@Qualifier("lobbyRepository") LobbyRepository lobbyRepository) {
+        this(lobbyRepository, new SecureRandom().nextLong());
+    }
+
+    LobbyIdAllocator(LobbyRepository lobbyRepository, long key) {
+        this.lobbyRepository = lobbyRepository;
+        Random keys = new Random(key);
+        for (int i = 0; i < ROUNDS; i++) {
+            roundKeys[i] = keys.nextInt();
+        }
+    }
+
+    // Marks the ids of all stored lobbies as taken
+    @PostConstruct
+    public void loadUsedIds() {
+        int seeded = 0;
+        for (Long id : lobbyRepository.findAllIds()) {
+            if (markUsed(id)) {
+                seeded++;
+            }
+        }
+        log.info("Lobby id allocator started with {} ids in use.", seeded);
+    }
+
+    public synchronized long allocate() {
+        while (nextSequence < ID_COUNT) {
+            int offset = permute(nextSequence++);
+            if (!inUse.get(offset)) {
+                return take(offset);
+            }
+        }
+        Integer offset;
+        while ((offset = recycled.poll()) != null) {
+            if (!inUse.get(offset)) {
+                return take(offset);
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "No free lobby ids left.");
+    }
+
+    public synchronized void release(Long id) {
+        if (!isInUse(id)) {
+            return;
+        }
+        int offset = offsetOf(id);
+        inUse.clear(offset);
+        usedCount--;
+        recycled.add(offset);
+    }
+
+    // Reserves an id that was assigned elsewhere; false if it is out of range or already taken
+    public synchronized boolean markUsed(Long id) {
+        if (!inRange(id) || inUse.get(offsetOf(id))) {
+            return false;
+        }
+        take(offsetOf(id));
+        return true;
+    }
+
+    public synchronized boolean isInUse(Long id) {
+        return inRange(id) && inUse.get(offsetOf(id));
+    }
+
+    public synchronized int getFreeCount() {
+        return ID_COUNT - usedCount;
+    }
+
+    private long take(int offset) {
+        inUse.set(offset);
+        usedCount++;
+        return MIN_ID + offset;
+    }
+
+    private static boolean inRange(Long id) {
+        return id != null && id >= MIN_ID && id < MIN_ID + ID_COUNT;
+    }
+
+    private static int offsetOf(Long id) {
+        return (int) (id - MIN_ID);
+    }
+
+    // Bijection on [0, ID_COUNT): cycle-walk the 20-bit Feistel permutation until the value is in range
+    int permute(int value) {
+        int x = value;
+        do {
+            x = feistel(x);
+        } while (x >= ID_COUNT);
+        return x;
+    }
+
+    private int feistel(int x) {
+        int left = x >>> HALF_BITS;
+        int right = x & HALF_MASK;
+        for (int round = 0; round < ROUNDS; round++) {
+            int mixed = (right * 0x9E3779B1 + roundKeys[round]);
+            mixed ^= mixed >>> 15;
+            int next = left ^ (mixed & HALF_MASK);
+            left = right;
+            right = next;
+        }
+        return (left << HALF_BITS) | right;
+    }
+}
@@ -0,0 +1,98 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Lobby Mailbox
+ * Runs all mutations of one lobby one after another on a single thread.
+ *
+ * Lobbies are striped over a fixed number of single-threaded lanes (by id),
+ * so two requests for the same lobby never interleave, while different
+ * lobbies on different lanes run in parallel. The number of lanes defaults
+ * to the number of cores (lobby.mailbox.lanes=0).
+ *
+ * A task that is already running on the lobby's lane runs inline. A task must
+ * not wait on a different lane; that could deadlock and is rejected.
+ */
+@Component
+public class LobbyMailbox {
+
+    private final ExecutorService[] lanes;
+    // index of the lane the current thread belongs to, unset on all other threads
+    private final ThreadLocal<Integer> currentLane = new ThreadLocal<>();
+
+    @Autowired
+    public LobbyMailbox(@Value("${lobby.mailbox.lanes:0}") int laneCount) {
+        int count = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors();
+        this.lanes = new ExecutorService[count];
+        for (int i = 0; i < count; i++) {
+            int lane = i;
+            this.lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(() -> {
+                    currentLane.set(lane);
+                    runnable.run();
+                }, "lobby-lane-" + lane);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    public int laneOf(Long lobbyId) {
+        return lobbyId == null ? 0 : (int) Math.floorMod(lobbyId, (long) lanes.length);
+    }
+
+    /**
+     * Runs the task on the lobby's lane and waits for its result.
+     * Exceptions thrown by the task are rethrown unchanged.
+     */
+    public <T> T submit(Long lobbyId, Supplier<T> task) {
+        int lane = laneOf(lobbyId);
+        Integer callerLane = currentLane.get();
+        if (callerLane != null && callerLane == lane) {
+            return task.get();
+        }
+        try {
+            return submitAsync(lobbyId, task).join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Queues the task on the lobby's lane without waiting for it
+    public <T> CompletableFuture<T> submitAsync(Long lobbyId, Supplier<T> task) {
+        int lane = laneOf(lobbyId);
+        Integer callerLane = currentLane.get();
+        if (callerLane != null && callerLane != lane) {
+            throw new IllegalStateException("Lobby lane " + callerLane + " must not wait on lane " + lane);
+        }
+        return CompletableFuture.supplyAsync(task, lanes[lane]);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.repository.LobbyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Moves lobby members that were stored in the old comma-separated
+ * {@code player_ids} column into the {@code LOBBY_PLAYERS} table.
+ * Runs once at startup; lobbies created afterwards never use the old column.
+ */
+@Component
+public class LobbyPlayerMigration {
+
+    private final Logger log = LoggerFactory.getLogger(LobbyPlayerMigration.class);
+    private final LobbyRepository lobbyRepository;
+
+    public LobbyPlayerMigration(@Qualifier("lobbyRepository") LobbyRepository lobbyRepository) {
+        this.lobbyRepository = lobbyRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE) // before anything reads the lobbies at startup
+    @Transactional
+    public void migrate() {
+        int migrated = 0;
+        for (Lobby lobby : lobbyRepository.findByLegacyPlayerIdsNot("")) {
+            if (lobby.migrateLegacyPlayerIds()) {
+                migrated++;
+            }
+        }
+        if (migrated > 0) {
+            lobbyRepository.flush();
+            log.info("Migrated player lists of {} lobbies to LOBBY_PLAYERS.", migrated);
+        }
+    }
+}
@@ -1,39 +1,258 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
-import ch.uzh.ifi.hase.soprafs24.entity.User;
-import ch.uzh.ifi.hase.soprafs24.repository.LobbyRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.LobbyVersionView;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 
 import java.util.*;
+import java.util.function.Supplier;
 
+// No class-level transaction: a request waiting for a lobby's mailbox must not hold a
+// pooled connection while the lane needs one of its own. Mutations open their
+// transaction on the lane (see mutate); createLobby inserts in a transaction of its own.
 @Service
-@Transactional // Ensure methods modifying data are transactional
 public class LobbyService {
 
+    // how long a turn may be overdue before another instance ends it (shared lobby state)
+    static final long ORPHANED_TURN_GRACE_MS = 5000L;
+    // most players a lobby may allow, at create and update; well below Lobby.MAX_TRACKED_PLAYERS
+    static final long MAX_PLAYERS = 10L;
+    // lobbies reloaded per query when the shared lobby browser catches up
+    static final int REFRESH_BATCH_SIZE = 500;
+
     private final Logger log = LoggerFactory.getLogger(LobbyService.class);
-    private final LobbyRepository lobbyRepository;
+    private final LobbyStateStore lobbyStateStore; // live lobbies, persisted through LobbyRepository
+    private final LobbyMailbox lobbyMailbox; // runs the mutations of one lobby one at a time
+    private final LobbyWriteRetry lobbyWriteRetry; // re-runs mutations that lost an optimistic lock race
+    private final LobbyIdAllocator lobbyIdAllocator; // unique 6-digit join codes
+    private final LobbyBrowserSnapshot lobbyBrowserSnapshot; // serialized GET /lobbies response
+    private final LobbyEventHub lobbyEventHub; // pushes lobby changes to stream subscribers
+    private final RoundTimer roundTimer; // ends turns at Lobby.roundEndsAt
+    private final GuessEvaluator guessEvaluator; // matches guesses against the current word
+    private final ScoreService scoreService; // points for correct guesses, global leaderboard
     private final UserService userService; // Assuming you have UserService for validation
+    private final TransactionOperations laneTransaction; // wraps each mutation on its lane
+    // shared lobby state: stored version of each lobby as of the last refresh, only touched by the scheduler
+    private final Map<Long, Long> refreshedVersions = new HashMap<>();
+
+    public LobbyService(LobbyStateStore lobbyStateStore, LobbyMailbox lobbyMailbox,
+                        LobbyWriteRetry lobbyWriteRetry, LobbyIdAllocator lobbyIdAllocator,
+                        LobbyBrowserSnapshot lobbyBrowserSnapshot, LobbyEventHub lobbyEventHub,
+                        RoundTimer roundTimer, GuessEvaluator guessEvaluator, ScoreService scoreService,
+                        UserService userService) {
+        this(lobbyStateStore, lobbyMailbox, lobbyWriteRetry, lobbyIdAllocator, lobbyBrowserSnapshot, lobbyEventHub,
+                roundTimer, guessEvaluator, scoreService, userService, TransactionOperations.withoutTransaction());
+    }
 
     @Autowired
-    public LobbyService(@Qualifier("lobbyRepository") LobbyRepository lobbyRepository, UserService userService) {
-        this.lobbyRepository = lobbyRepository;
+    public LobbyService(LobbyStateStore lobbyStateStore, LobbyMailbox lobbyMailbox,
+                        LobbyWriteRetry lobbyWriteRetry, LobbyIdAllocator lobbyIdAllocator,
+                        LobbyBrowserSnapshot lobbyBrowserSnapshot, LobbyEventHub lobbyEventHub,
+                        RoundTimer roundTimer, GuessEvaluator guessEvaluator, ScoreService scoreService,
+                        UserService userService, PlatformTransactionManager transactionManager) {
+        this(lobbyStateStore, lobbyMailbox, lobbyWriteRetry, lobbyIdAllocator, lobbyBrowserSnapshot, lobbyEventHub,
+                roundTimer, guessEvaluator, scoreService, userService, new TransactionTemplate(transactionManager));
+    }
+
+    private LobbyService(LobbyStateStore lobbyStateStore, LobbyMailbox lobbyMailbox,
+                         LobbyWriteRetry lobbyWriteRetry, LobbyIdAllocator lobbyIdAllocator,
+                         LobbyBrowserSnapshot lobbyBrowserSnapshot, LobbyEventHub lobbyEventHub,
+                         RoundTimer roundTimer, GuessEvaluator guessEvaluator, ScoreService scoreService,
+                         UserService userService, TransactionOperations laneTransaction) {
+        this.lobbyStateStore = lobbyStateStore;
+        this.lobbyMailbox = lobbyMailbox;
+        this.lobbyWriteRetry = lobbyWriteRetry;
+        this.lobbyIdAllocator = lobbyIdAllocator;
+        this.lobbyBrowserSnapshot = lobbyBrowserSnapshot;
+        this.lobbyEventHub = lobbyEventHub;
+        this.roundTimer = roundTimer;
+        this.guessEvaluator = guessEvaluator;
+        this.scoreService = scoreService;
         this.userService = userService;
+        this.laneTransaction = laneTransaction;
+    }
+
+    // Runs a mutation in the lobby's mailbox, in a transaction opened on the lane;
+    // on an optimistic lock conflict the stale copy is dropped and the mutation
+    // runs again on freshly loaded state. The lobby browser snapshot, stream
+    // subscribers and round timer are updated on the lane after the commit,
+    // before anything else can change the lobby.
+    private Lobby mutate(Long lobbyId, Supplier<Lobby> mutation) {
+        return lobbyWriteRetry.run(lobbyId,
+                () -> lobbyMailbox.submit(lobbyId, () -> {
+                    Lobby lobby = laneTransaction.execute(status -> mutation.get());
+                    if (lobby.getPlayerCount() == 0) {
+                        lobbyBrowserSnapshot.remove(lobbyId); // last player left, lobby was deleted
+                        lobbyEventHub.close(lobbyId);
+                        roundTimer.cancel(lobbyId);
+                        guessEvaluator.forget(lobbyId);
+                    } else {
+                        lobbyBrowserSnapshot.update(lobby);
+                        lobbyEventHub.publish(lobby);
+                        syncRoundTimer(lobby);
+                    }
+                    return lobby.copy(); // the caller reads it off the lane
+                }),
+                () -> lobbyStateStore.evict(lobbyId));
+    }
+
+    // Fills the lobby browser snapshot with the stored lobbies (after LobbyPlayerMigration)
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void loadLobbyBrowserSnapshot() {
+        lobbyBrowserSnapshot.reset(lobbyStateStore.findAll());
+    }
+
+    // Shared lobby state: picks up the lobbies other instances created, changed or
+    // deleted, and ends turns that are overdue because the instance timing them is gone.
+    // Polls only ids, versions and deadlines; just the lobbies whose version moved are reloaded.
+    // Reloaded and deleted lobbies reach this instance's stream subscribers on the lobby's lane,
+    // ordered with the local changes.
+    @Scheduled(fixedDelayString = "${lobby.state.refresh-ms:1000}")
+    public void refreshSharedLobbies() {
+        if (!lobbyStateStore.isShared()) {
+            return;
+        }
+        long overdue = System.currentTimeMillis() - ORPHANED_TURN_GRACE_MS;
+        Map<Long, Long> versions = new HashMap<>();
+        List<Long> changed = new ArrayList<>();
+        for (LobbyVersionView stored : lobbyStateStore.findAllVersions()) {
+            versions.put(stored.getId(), stored.getVersion());
+            if (!refreshedVersions.containsKey(stored.getId())
+                    || !Objects.equals(refreshedVersions.get(stored.getId()), stored.getVersion())) {
+                changed.add(stored.getId());
+            }
+            Long deadline = stored.getRoundEndsAt();
+            if (stored.getStatus() == Lobby.STATUS_PLAYING && deadline != null && deadline < overdue) {
+                syncRoundTimer(stored.getId(), stored.getStatus(), deadline);
+            }
+        }
+        for (int from = 0; from < changed.size(); from += REFRESH_BATCH_SIZE) {
+            List<Long> batch = changed.subList(from, Math.min(from + REFRESH_BATCH_SIZE, changed.size()));
+            for (Lobby lobby : lobbyStateStore.findStored(batch)) {
+                lobbyBrowserSnapshot.update(lobby);
+                lobbyMailbox.submitAsync(lobby.getId(), () -> {
+                    lobbyStateStore.evict(lobby.getId()); // the next read on this lane is fresh
+                    lobbyEventHub.publish(lobby);
+                    return null;
+                });
+            }
+        }
+        for (Long lobbyId : refreshedVersions.keySet()) {
+            if (!versions.containsKey(lobbyId)) {
+                lobbyMailbox.submitAsync(lobbyId, () -> {
+                    lobbyStateStore.evict(lobbyId);
+                    lobbyEventHub.close(lobbyId);
+                    roundTimer.cancel(lobbyId);
+                    guessEvaluator.forget(lobbyId);
+                    return null;
+                });
+            }
+        }
+        lobbyBrowserSnapshot.retain(versions.keySet());
+        refreshedVersions.clear();
+        refreshedVersions.putAll(versions);
+    }
+
+    // Re-arms the turn timers of games that were running when the server stopped
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void resumeRoundTimers() {
+        for (Lobby lobby : lobbyStateStore.findAll()) {
+            syncRoundTimer(lobby);
+        }
+    }
+
+    // Keeps the lobby's pending timer in line with its roundEndsAt
+    private void syncRoundTimer(Lobby lobby) {
+        syncRoundTimer(lobby.getId(), lobby.getStatus(), lobby.getRoundEndsAt());
+    }
+
+    private void syncRoundTimer(Long lobbyId, int status, Long deadline) {
+        if (deadline == null || status != Lobby.STATUS_PLAYING) {
+            roundTimer.cancel(lobbyId);
+        } else {
+            roundTimer.schedule(lobbyId, deadline, () -> endTurn(lobbyId, deadline));
+        }
+    }
+
+    // The turn ending at deadlineMs ran out: the next painter's turn starts.
+    // Ignored if the turn was already ended early or the game stopped meanwhile.
+    void endTurn(Long lobbyId, long deadlineMs) {
+        mutate(lobbyId, () -> {
+            Lobby lobby = liveLobby(lobbyId);
+            if (lobby.getStatus() != Lobby.STATUS_PLAYING || !Objects.equals(lobby.getRoundEndsAt(), deadlineMs)) {
+                return lobby;
+            }
+            log.info("Lobby {}: turn time is up, selecting the next painter.", lobbyId);
+            return applyNextPainter(lobbyId);
+        });
+    }
+
+    // The lobby list as served to the lobby browser, including its ETag
+    public LobbyBrowserSnapshot.View getLobbyBrowserSnapshot() {
+        return lobbyBrowserSnapshot.current();
     }
 
     // Get all lobbies
     public List<Lobby> getLobbies() {
         log.debug("Fetching all lobbies");
-        return this.lobbyRepository.findAll();
+        return this.lobbyStateStore.findAll();
     }
 
+    public static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * One page of the lobby browser, ordered by lobby id.
+     * Pass the id of the last lobby of the previous page as cursor (null for the first page).
+     * Filters that are null (or false for freeSlotsOnly) are not applied.
+     */
+    public List<Lobby> getLobbyPage(Long cursor, int limit, Integer status, String language, String type, boolean freeSlotsOnly) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page size must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        log.debug("Fetching lobby page after {} (limit {}, status {}, language {}, type {}, freeSlotsOnly {})",
+                cursor, limit, status, language, type, freeSlotsOnly);
+        return copiesOnLanes(lobbyStateStore.findPage(cursor == null ? 0L : cursor, limit, status, language, type, freeSlotsOnly));
+    }
+
+    // Copies of lobbies that may be live, each taken on its lobby's lane; one task per lane
+    private List<Lobby> copiesOnLanes(List<Lobby> lobbies) {
+        Map<Integer, List<Integer>> positionsByLane = new HashMap<>();
+        for (int i = 0; i < lobbies.size(); i++) {
+            positionsByLane.computeIfAbsent(lobbyMailbox.laneOf(lobbies.get(i).getId()), lane -> new ArrayList<>()).add(i);
+        }
+        Lobby[] copies = new Lobby[lobbies.size()];
+        for (List<Integer> positions : positionsByLane.values()) {
+            lobbyMailbox.submit(lobbies.get(positions.get(0)).getId(), () -> {
+                for (int position : positions) {
+                    copies[position] = lobbies.get(position).copy();
+                }
+                return null;
+            });
+        }
+        return Arrays.asList(copies);
+    }
+
+    // attempts at a free lobby id before createLobby gives up
+    static final int MAX_ID_ATTEMPTS = 5;
+
     // Create a new lobby
     public Lobby createLobby(Lobby newLobby) {
         // Validate required fields
@@ -53,7 +272,7 @@ public class LobbyService {
         if (newLobby.getPlayerIds() == null) {
             newLobby.setPlayerIds(new ArrayList<>());
         }
-        if (!newLobby.getPlayerIds().contains(newLobby.getLobbyOwner())) {
+        if (!newLobby.hasPlayer(newLobby.getLobbyOwner())) {
              log.debug("Adding lobby owner {} to initial player list.", newLobby.getLobbyOwner());
              newLobby.addPlayerId(newLobby.getLobbyOwner());
         }
@@ -64,20 +283,79 @@ public class LobbyService {
         if (newLobby.getNumOfRounds() == null) newLobby.setNumOfRounds(3L);
         if (newLobby.getDrawTime() == 0) newLobby.setDrawTime(80); // Default if 0
         if (newLobby.getType() == null) newLobby.setType("anything");
-        if (newLobby.getPainterHistoryTokens() == null) newLobby.setPainterHistoryTokens(Collections.emptySet());
+
+        // Same limit as updates, so joins never run past what a lobby can track
+        if (newLobby.getNumOfMaxPlayers() < 1 || newLobby.getNumOfMaxPlayers() > MAX_PLAYERS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Maximum number of players must be between 1 and " + MAX_PLAYERS + ".");
+        }
+        if (newLobby.getPlayerCount() > newLobby.getNumOfMaxPlayers()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A lobby cannot start with more players than its maximum.");
+        }
 
 
-        newLobby = lobbyRepository.save(newLobby);
-        lobbyRepository.flush(); // Persist immediately
-        log.info("Created Lobby with ID: {}", newLobby.getId());
-        log.debug("Created Lobby Details: {}", newLobby);
-        return newLobby;
+        // Ids are always assigned here, never taken from the request. The insert is the
+        // reservation: with shared lobby state another instance may have stored the same id,
+        // which then fails on the primary key, stays marked as taken, and the next id is tried
+        Lobby requested = newLobby;
+        for (int attempt = 1; ; attempt++) {
+            Lobby candidate = requested.copy();
+            candidate.setId(lobbyIdAllocator.allocate());
+            candidate.setVersion(null);
+            try {
+                newLobby = lobbyStateStore.create(candidate); // Persist immediately
+                break;
+            }
+            catch (DataIntegrityViolationException e) {
+                if (!lobbyStateStore.exists(candidate.getId())) {
+                    lobbyIdAllocator.release(candidate.getId()); // the lobby itself was rejected, not its id
+                    throw e;
+                }
+                if (attempt >= MAX_ID_ATTEMPTS) {
+                    throw e;
+                }
+                log.info("Lobby id {} was taken by another instance, trying the next one.", candidate.getId());
+            }
+        }
+        // copied before the id shows up in the lobby browser, i.e. before anyone can change it
+        Lobby created = newLobby.copy();
+        lobbyBrowserSnapshot.update(newLobby);
+        log.info("Created Lobby with ID: {}", created.getId());
+        log.debug("Created Lobby Details: {}", created);
+        return created;
     }
 
-    // Get lobby by ID
+    // Change stream of one lobby: its current state first, then every change (see LobbyEventHub)
+    public Flux<ServerSentEvent<String>> streamLobby(Long lobbyId) {
+        return lobbyMailbox.submit(lobbyId, () -> lobbyEventHub.subscribe(liveLobby(lobbyId)));
+    }
+
+    // Get lobby by ID: a copy taken on the lobby's lane, so the caller never sees a
+    // half-applied mutation and may read it at leisure
     public Lobby getLobbyById(Long id) {
+        return lobbyMailbox.submit(id, () -> liveLobby(id).copy());
+    }
+
+    // Id of the member holding the lobby's painter token, null while nobody paints
+    public Long getCurrentPainterId(Long lobbyId) {
+        return painterIdOf(getLobbyById(lobbyId));
+    }
+
+    private Long painterIdOf(Lobby lobby) {
+        if (lobby.getCurrentPainterToken() == null) {
+            return null;
+        }
+        for (Map.Entry<Long, String> member : userService.getTokensByIds(lobby.getPlayerIds()).entrySet()) {
+            if (lobby.getCurrentPainterToken().equals(member.getValue())) {
+                return member.getKey();
+            }
+        }
+        return null;
+    }
+
+    // The live lobby the mutations work on; only to be used on the lobby's lane
+    private Lobby liveLobby(Long id) {
         log.debug("Attempting to fetch lobby with ID: {}", id);
-        return lobbyRepository.findById(id)
+        return lobbyStateStore.findById(id)
                 .orElseThrow(() -> {
                     log.warn("Lobby not found with ID: {}", id);
                     return new ResponseStatusException(HttpStatus.NOT_FOUND,
@@ -96,23 +374,31 @@ public class LobbyService {
      * @throws ResponseStatusException if lobby not found or validation fails.
      */
     public Lobby updateLobby(Long id, Lobby lobbyUpdatesFromDTO) {
+        return mutate(id, () -> applyLobbyUpdate(id, lobbyUpdatesFromDTO));
+    }
+
+    private Lobby applyLobbyUpdate(Long id, Lobby lobbyUpdatesFromDTO) {
         // The 'lobbyUpdatesFromDTO' object is the result of mapping LobbyPutDTO.
         // Fields *not* included in the PUT request body will be null (for Objects)
         // or default values (for primitives like int) after mapping.
 
-        Lobby existingLobby = getLobbyById(id); // Fetches or throws NOT_FOUND
+        Lobby existingLobby = liveLobby(id); // Fetches or throws NOT_FOUND
         log.info("Attempting to update lobby {} with data: owner={}, maxPlayers={}, lang={}, rounds={}, drawTime={}, type={}",
                 id, lobbyUpdatesFromDTO.getLobbyOwner(), lobbyUpdatesFromDTO.getNumOfMaxPlayers(),
                 lobbyUpdatesFromDTO.getLanguage(), lobbyUpdatesFromDTO.getNumOfRounds(),
                 lobbyUpdatesFromDTO.getDrawTime(), lobbyUpdatesFromDTO.getType());
 
+        // Validate every requested change before touching the lobby: it is the live copy
+        // (with write-behind there is no rollback), so a rejected request must change nothing
+        validateLobbyUpdate(existingLobby, lobbyUpdatesFromDTO);
+
         boolean updated = false; // Track if any changes are made
 
         // 1. Update Lobby Owner (if provided and different)
         if (lobbyUpdatesFromDTO.getLobbyOwner() != null &&
             !Objects.equals(existingLobby.getLobbyOwner(), lobbyUpdatesFromDTO.getLobbyOwner())) {
             // Validate if the new owner is actually in the lobby
-            if (!existingLobby.getPlayerIds().contains(lobbyUpdatesFromDTO.getLobbyOwner())) {
+            if (!existingLobby.hasPlayer(lobbyUpdatesFromDTO.getLobbyOwner())) {
                  log.warn("Attempted to set owner {} who is not currently in lobby {}. Ignoring owner update.", lobbyUpdatesFromDTO.getLobbyOwner(), id);
                 // Depending on requirements, you might throw an exception instead:
                 // throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Proposed new owner ID " + lobbyUpdatesFromDTO.getLobbyOwner() + " is not in the lobby's player list.");
@@ -126,14 +412,6 @@ public class LobbyService {
         // 2. Update Max Players (if provided and different)
         if (lobbyUpdatesFromDTO.getNumOfMaxPlayers() != null &&
             !Objects.equals(existingLobby.getNumOfMaxPlayers(), lobbyUpdatesFromDTO.getNumOfMaxPlayers())) {
-             // Validation: must be >= current number of players
-             if (lobbyUpdatesFromDTO.getNumOfMaxPlayers() < existingLobby.getPlayerIds().size()) {
-                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Max players cannot be set lower than the current number of players.");
-             }
-             // Validation: maybe a sensible upper limit? (e.g., <= 10)
-             if (lobbyUpdatesFromDTO.getNumOfMaxPlayers() > 10) { // Example limit
-                  throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Maximum number of players cannot exceed 10.");
-             }
             log.info("Updating Lobby {} Max Players from {} to {}", id, existingLobby.getNumOfMaxPlayers(), lobbyUpdatesFromDTO.getNumOfMaxPlayers());
             existingLobby.setNumOfMaxPlayers(lobbyUpdatesFromDTO.getNumOfMaxPlayers());
             updated = true;
@@ -151,14 +429,6 @@ public class LobbyService {
         // 4. Update Rounds (if provided and different)
         if (lobbyUpdatesFromDTO.getNumOfRounds() != null &&
             !Objects.equals(existingLobby.getNumOfRounds(), lobbyUpdatesFromDTO.getNumOfRounds())) {
-             // Validation: must be > 0
-             if (lobbyUpdatesFromDTO.getNumOfRounds() <= 0) {
-                  throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Number of rounds must be positive.");
-             }
-             // Optional: Sensible upper limit? (e.g., <= 20)
-             if (lobbyUpdatesFromDTO.getNumOfRounds() > 20) {
-                   throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Number of rounds cannot exceed 20.");
-             }
             log.info("Updating Lobby {} Num Rounds from {} to {}", id, existingLobby.getNumOfRounds(), lobbyUpdatesFromDTO.getNumOfRounds());
             existingLobby.setNumOfRounds(lobbyUpdatesFromDTO.getNumOfRounds());
             updated = true;
@@ -168,10 +438,6 @@ public class LobbyService {
         // Only update if a value > 0 is given via DTO and it's different from current.
         if (lobbyUpdatesFromDTO.getDrawTime() > 0 &&
             existingLobby.getDrawTime() != lobbyUpdatesFromDTO.getDrawTime()) {
-             // Validation: must be within a reasonable range (e.g., 10-300 seconds)
-             if (lobbyUpdatesFromDTO.getDrawTime() < 10 || lobbyUpdatesFromDTO.getDrawTime() > 300) {
-                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Draw time must be between 10 and 300 seconds.");
-             }
             log.info("Updating Lobby {} Draw Time from {} to {}", id, existingLobby.getDrawTime(), lobbyUpdatesFromDTO.getDrawTime());
             existingLobby.setDrawTime(lobbyUpdatesFromDTO.getDrawTime());
             updated = true;
@@ -191,6 +457,14 @@ public class LobbyService {
         if (existingLobby.getStatus() != (lobbyUpdatesFromDTO.getStatus())) {
         log.info("Updating Lobby {} Status from '{}' to '{}'", id, existingLobby.getStatus(), lobbyUpdatesFromDTO.getStatus());
         existingLobby.setStatus(lobbyUpdatesFromDTO.getStatus());
+        // the first turn starts with the game; the timer stops with it
+        existingLobby.setRoundEndsAt(existingLobby.getStatus() == Lobby.STATUS_PLAYING
+                ? turnDeadline(existingLobby) : null);
+        if (existingLobby.getStatus() == Lobby.STATUS_PLAYING) {
+            existingLobby.clearScores(); // a new game starts from zero
+            existingLobby.resetRounds();
+            rotatePainter(existingLobby); // the first turn has a painter whose strokes are relayed
+        }
         updated = true;
     }
 
@@ -200,10 +474,9 @@ public class LobbyService {
 
 
 
-        // 9. Save to DB only if actual changes were made
+        // 9. Save only if actual changes were made
         if (updated) {
-            lobbyRepository.save(existingLobby);
-            lobbyRepository.flush(); // Ensure changes hit the DB
+            lobbyStateStore.save(existingLobby);
             log.info("Lobby {} successfully updated.", id);
         } else {
             log.info("No effective changes detected for lobby {}. Skipping database save.", id);
@@ -211,17 +484,55 @@ public class LobbyService {
         return existingLobby;
     }
 
+    // Throws 400 for the first requested change that is not allowed; changes nothing
+    private void validateLobbyUpdate(Lobby existingLobby, Lobby lobbyUpdatesFromDTO) {
+        Long maxPlayers = lobbyUpdatesFromDTO.getNumOfMaxPlayers();
+        if (maxPlayers != null && !Objects.equals(existingLobby.getNumOfMaxPlayers(), maxPlayers)) {
+            // Validation: must be >= current number of players
+            if (maxPlayers < existingLobby.getPlayerCount()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Max players cannot be set lower than the current number of players.");
+            }
+            // Validation: same upper limit as at creation
+            if (maxPlayers > MAX_PLAYERS) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Maximum number of players cannot exceed " + MAX_PLAYERS + ".");
+            }
+        }
+        Long rounds = lobbyUpdatesFromDTO.getNumOfRounds();
+        if (rounds != null && !Objects.equals(existingLobby.getNumOfRounds(), rounds)) {
+            // Validation: must be > 0
+            if (rounds <= 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Number of rounds must be positive.");
+            }
+            // Optional: Sensible upper limit? (e.g., <= 20)
+            if (rounds > 20) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Number of rounds cannot exceed 20.");
+            }
+        }
+        int drawTime = lobbyUpdatesFromDTO.getDrawTime();
+        if (drawTime > 0 && existingLobby.getDrawTime() != drawTime) {
+            // Validation: must be within a reasonable range (e.g., 10-300 seconds)
+            if (drawTime < 10 || drawTime > 300) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Draw time must be between 10 and 300 seconds.");
+            }
+        }
+    }
+
     // Add a player to a lobby
+    // Runs in the lobby's mailbox, so concurrent joins cannot both pass the capacity check
     public Lobby addPlayerToLobby(Long lobbyId, Long playerId) {
-        Lobby lobby = getLobbyById(lobbyId);
+        return mutate(lobbyId, () -> applyAddPlayer(lobbyId, playerId));
+    }
+
+    private Lobby applyAddPlayer(Long lobbyId, Long playerId) {
+        Lobby lobby = liveLobby(lobbyId);
 
         // Validate lobby capacity
-        if (lobby.getPlayerIds().size() >= lobby.getNumOfMaxPlayers()) {
-             log.warn("Failed to add player {} to lobby {}: Lobby is full ({} players, max {}).", playerId, lobbyId, lobby.getPlayerIds().size(), lobby.getNumOfMaxPlayers());
+        if (lobby.getPlayerCount() >= lobby.getNumOfMaxPlayers()) {
+             log.warn("Failed to add player {} to lobby {}: Lobby is full ({} players, max {}).", playerId, lobbyId, lobby.getPlayerCount(), lobby.getNumOfMaxPlayers());
             throw new ResponseStatusException(HttpStatus.CONFLICT, "Lobby is full.");
         }
         // Check if player already present
-        if (lobby.getPlayerIds().contains(playerId)) {
+        if (lobby.hasPlayer(playerId)) {
              log.warn("Player {} already in lobby {}. No action taken.", playerId, lobbyId);
              return lobby; // Return current state is fine, no change needed
         }
@@ -238,18 +549,21 @@ public class LobbyService {
 
         // Add player and save
         lobby.addPlayerId(playerId);
-        lobby = lobbyRepository.save(lobby);
-        lobbyRepository.flush();
+        lobby = lobbyStateStore.save(lobby);
         log.info("Player {} added to lobby {}", playerId, lobbyId);
         return lobby;
     }
 
     // Remove a player from a lobby
     public Lobby removePlayerFromLobby(Long lobbyId, Long playerId) {
-        Lobby lobby = getLobbyById(lobbyId);
+        return mutate(lobbyId, () -> applyRemovePlayer(lobbyId, playerId));
+    }
+
+    private Lobby applyRemovePlayer(Long lobbyId, Long playerId) {
+        Lobby lobby = liveLobby(lobbyId);
 
         // Check if player is actually in the lobby
-        if (!lobby.getPlayerIds().contains(playerId)) {
+        if (!lobby.hasPlayer(playerId)) {
             log.warn("Attempted to remove player {} who is not in lobby {}. No action taken.", playerId, lobbyId);
              return lobby; // Return current state if player already gone
         }
@@ -259,11 +573,11 @@ public class LobbyService {
         log.info("Player {} removed from lobby {} player list.", playerId, lobbyId);
 
         // --- Lobby Deletion / Saving Logic ---
-        if (lobby.getPlayerIds().isEmpty()) {
+        if (lobby.getPlayerCount() == 0) {
             // Lobby is now empty, delete it
             log.info("Lobby {} is now empty after removing player {}. Deleting lobby.", lobbyId, playerId);
-            lobbyRepository.delete(lobby);
-            lobbyRepository.flush();
+            lobbyStateStore.delete(lobby);
+            lobbyIdAllocator.release(lobbyId);
              // Return the lobby object *as it was before deletion*
              // The controller DTO mapping will still work.
              return lobby;
@@ -271,25 +585,48 @@ public class LobbyService {
             // Lobby still has players.
             // Owner transfer logic is handled by the socket server calling updateLobby separately.
             // We just save the state with the player removed.
-            lobby = lobbyRepository.save(lobby);
-            lobbyRepository.flush();
-            log.info("Saved lobby {} after removing player {}. Remaining players: {}.", lobbyId, playerId, lobby.getPlayerIds().size());
+            lobby = lobbyStateStore.save(lobby);
+            log.info("Saved lobby {} after removing player {}. Remaining players: {}.", lobbyId, playerId, lobby.getPlayerCount());
             return lobby;
         }
     }
 
     /**
      * Selects the next player to be the painter based on sequential rotation.
-     * Ensures each player paints once per cycle. Uses player tokens.
+     * Ensures each player paints once per cycle. Rotation state is kept as a
+     * bit mask over member positions plus the last painter's position, so the
+     * pick is a couple of bit operations; only the chosen painter's token is stored.
      * Updates the lobby state (current painter, history) and saves it.
+     * While a game is running the server also ends turns at their deadline, so
+     * the call only ends the turn of the given painter: if that turn is already
+     * over, the lobby is returned unchanged instead of skipping the next painter.
      *
      * @param lobbyId The ID of the lobby.
+     * @param currentPainterToken The token of the painter whose turn should end.
      * @return The updated Lobby object.
      * @throws ResponseStatusException if lobby not found or no players are present.
      */
-    public Lobby selectNextPainter(Long lobbyId) {
-        Lobby lobby = getLobbyById(lobbyId); // Fetches lobby or throws NOT_FOUND
+    public Lobby selectNextPainter(Long lobbyId, String currentPainterToken) {
+        return mutate(lobbyId, () -> {
+            Lobby lobby = liveLobby(lobbyId);
+            if (lobby.getStatus() == Lobby.STATUS_PLAYING
+                    && !Objects.equals(lobby.getCurrentPainterToken(), currentPainterToken)) {
+                log.info("Lobby {}: turn of painter {} already ended, keeping painter {}.", lobbyId,
+                        currentPainterToken, lobby.getCurrentPainterToken());
+                return lobby;
+            }
+            return applyNextPainter(lobbyId);
+        });
+    }
 
+    private Lobby applyNextPainter(Long lobbyId) {
+        Lobby lobby = liveLobby(lobbyId); // Fetches lobby or throws NOT_FOUND
+        return lobbyStateStore.save(rotatePainter(lobby));
+    }
+
+    // Hands the turn to the next painter (or ends the game after its last round); the caller saves
+    private Lobby rotatePainter(Lobby lobby) {
+        Long lobbyId = lobby.getId();
         List<Long> playerIds = lobby.getPlayerIds();
 
         // --- Handle Empty Lobby ---
@@ -297,132 +634,85 @@ public class LobbyService {
             log.warn("Attempted to select painter in empty lobby: {}", lobbyId);
             lobby.setCurrentPainterToken(null);
             lobby.clearPainterHistory();
-            lobbyRepository.save(lobby); // Save the cleaned state
-            lobbyRepository.flush();
+            lobby.setLastPainterIndex(-1);
+            lobbyStateStore.save(lobby); // Save the cleaned state
             // Consider if throwing is appropriate or just returning the empty state
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cannot select painter: Lobby is empty.");
         }
 
-        // --- Get Current Player Tokens (Maintain Order if Possible) ---
-        List<String> activePlayerTokens = new ArrayList<>();
-        List<Long> validPlayerIdsInOrder = new ArrayList<>(); // Keep track of IDs corresponding to tokens
-        for (Long playerId : playerIds) {
-            try {
-                User player = userService.getUserById(playerId); // Fetch user by ID
-                activePlayerTokens.add(player.getToken()); // Get the token
-                validPlayerIdsInOrder.add(playerId); // Add ID in the same order
-                 log.trace("Found token {} for player {}", player.getToken(), playerId);
-            } catch (ResponseStatusException e) {
+        // --- Find members that resolve to a user ---
+        // All member tokens come from one query, so rotation cost does not grow with round trips per player
+        Map<Long, String> tokensById = userService.getTokensByIds(playerIds);
+        long activeMask = 0L; // bit i set = playerIds[i] is a valid user
+        for (int position = 0; position < playerIds.size(); position++) {
+            if (tokensById.containsKey(playerIds.get(position))) {
+                activeMask |= 1L << position;
+            } else {
                 // Log if a player ID in the lobby list doesn't correspond to a valid user
-                log.warn("Player ID {} listed in lobby {} not found via UserService. Skipping for painter rotation.", playerId, lobbyId);
+                log.warn("Player ID {} listed in lobby {} not found via UserService. Skipping for painter rotation.", playerIds.get(position), lobbyId);
             }
         }
 
         // Check if any valid players remain after fetching tokens
-        if (activePlayerTokens.isEmpty()) {
+        if (activeMask == 0L) {
             log.error("No valid players found for lobby {} after fetching tokens, though playerIds list was not empty.", lobbyId);
             lobby.setCurrentPainterToken(null);
             lobby.clearPainterHistory();
-            lobbyRepository.save(lobby);
-            lobbyRepository.flush();
+            lobby.setLastPainterIndex(-1);
+            lobbyStateStore.save(lobby);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Could not find tokens for any player currently listed in the lobby.");
         }
-        log.debug("Lobby {}: Active players for rotation (tokens): {}", lobbyId, activePlayerTokens);
-
 
         // --- Painter Rotation Logic ---
-        Set<String> history = lobby.getPainterHistoryTokens();
-        String lastPainterToken = lobby.getCurrentPainterToken();
-        String nextPainterToken = null;
-        log.debug("Lobby {}: Current painter history: {}", lobbyId, history);
-        log.debug("Lobby {}: Last painter was: {}", lobbyId, lastPainterToken);
-
-
-        // Check if all currently active players have painted in this cycle
-        boolean allActiveHavePainted = history.containsAll(activePlayerTokens);
-
-        if (allActiveHavePainted) {
-            log.info("Lobby {}: All active players {} have painted in this cycle. Resetting painter history.", lobbyId, activePlayerTokens);
-            lobby.clearPainterHistory();
-            history = lobby.getPainterHistoryTokens(); // Refresh the local history variable (now empty)
-            lastPainterToken = null; // Force search to start from index 0 for the new cycle
-        }
-
-        // Determine starting point for the search based on the last painter's token
-        int startIndex = 0;
-        if (lastPainterToken != null) {
-            int lastIndex = activePlayerTokens.indexOf(lastPainterToken);
-            if (lastIndex != -1) { // Make sure the last painter is still in the active list
-                startIndex = (lastIndex + 1) % activePlayerTokens.size();
-                log.debug("Lobby {}: Last painter {} found at index {}. Starting next search from index {}.", lobbyId, lastPainterToken, lastIndex, startIndex);
-            } else {
-                 log.warn("Lobby {}: Last painter token {} not found in current active player tokens {}. Starting search from index 0.", lobbyId, lastPainterToken, activePlayerTokens);
+        long candidates = activeMask & ~lobby.getPainterHistoryMask();
+        int lastIndex = lobby.getLastPainterIndex();
+        log.debug("Lobby {}: active mask {}, history mask {}, last painter position {}", lobbyId,
+                Long.toBinaryString(activeMask), Long.toBinaryString(lobby.getPainterHistoryMask()), lastIndex);
+
+        // All currently active players have painted in this cycle: start a new one from position 0,
+        // unless that was the game's last round
+        if (candidates == 0L) {
+            if (lobby.getStatus() == Lobby.STATUS_PLAYING && lobby.getNumOfRounds() != null
+                    && lobby.completeRound() >= lobby.getNumOfRounds()) {
+                log.info("Lobby {}: all {} rounds played, the game is over.", lobbyId, lobby.getNumOfRounds());
+                lobby.setStatus(Lobby.STATUS_FINISHED);
+                lobby.setRoundEndsAt(null); // no next turn: mutate cancels the timer
+                lobby.setCurrentPainterToken(null);
+                return lobby;
             }
-        } else {
-             log.debug("Lobby {}: No last painter recorded or new cycle. Starting search from index 0.", lobbyId);
+            log.info("Lobby {}: All active players have painted in this cycle. Resetting painter history.", lobbyId);
+            lobby.clearPainterHistory();
+            candidates = activeMask;
+            lastIndex = -1;
         }
 
-        // Iterate through players starting from startIndex to find the next eligible painter
-        log.debug("Lobby {}: Searching for next painter starting from index {}.", lobbyId, startIndex);
-        for (int i = 0; i < activePlayerTokens.size(); i++) {
-            int currentIndex = (startIndex + i) % activePlayerTokens.size(); // Wrap around the list
-            String potentialPainterToken = activePlayerTokens.get(currentIndex);
-            log.trace("Lobby {}: Checking player at index {} (token {}). History contains? {}", lobbyId, currentIndex, potentialPainterToken, history.contains(potentialPainterToken));
-
-            if (!history.contains(potentialPainterToken)) {
-                nextPainterToken = potentialPainterToken;
-                log.info("Lobby {}: Found next painter at index {}: {}", lobbyId, currentIndex, nextPainterToken);
-                break; // Found the next painter
-            }
-        }
-
-        // Fallback: Should ideally not happen if history clearing is correct.
-        if (nextPainterToken == null && !allActiveHavePainted) {
-            // This might occur if the history contains tokens of players no longer active
-            log.error("Lobby {}: Could not determine next painter sequentially, but not all active players have painted. History might contain inactive players. Selecting first active player not in history.", lobbyId);
-            for (String token : activePlayerTokens) {
-                if (!history.contains(token)) {
-                    nextPainterToken = token;
-                    log.warn("Lobby {}: Fallback selected painter: {}", lobbyId, nextPainterToken);
-                    break;
-                }
-            }
-            // If still null, something is very wrong
-            if (nextPainterToken == null) {
-                 log.error("Lobby {}: CRITICAL FALLBACK FAILURE - Cannot find any active player not in history {}. Selecting first active player {} and clearing history.", lobbyId, history, activePlayerTokens.get(0));
-                 nextPainterToken = activePlayerTokens.get(0);
-                 lobby.clearPainterHistory(); // Clear history as a recovery measure
-            }
-        } else if (nextPainterToken == null && allActiveHavePainted) {
-             // Should have been caught by the history reset, but as a safety net
-             log.error("Lobby {}: CRITICAL - History should have been reset, but still couldn't find next painter. Selecting first active player {} and clearing history.", lobbyId, activePlayerTokens.get(0));
-             nextPainterToken = activePlayerTokens.get(0);
-             lobby.clearPainterHistory();
-        }
+        // First candidate after the last painter, wrapping around to the lowest position
+        long afterLast = lastIndex < 0 ? candidates
+                : lastIndex < Long.SIZE - 1 ? candidates & (-1L << (lastIndex + 1)) : 0L;
+        int nextIndex = Long.numberOfTrailingZeros(afterLast != 0L ? afterLast : candidates);
+        String nextPainterToken = tokensById.get(playerIds.get(nextIndex));
 
         // --- Update Lobby State ---
-        if (nextPainterToken != null) {
-            lobby.setCurrentPainterToken(nextPainterToken);
-            lobby.addTokenToPainterHistory(nextPainterToken); // Add the new painter to history
-             log.info("Lobby {}: Set current painter to {} and added to history.", lobbyId, nextPainterToken);
-             log.debug("Lobby {}: Updated painter history: {}", lobbyId, lobby.getPainterHistoryTokens());
-        } else {
-            // Should be unreachable if fallbacks work, but safety first
-            log.error("Lobby {}: CRITICAL - Failed to select any painter even with fallbacks. Setting current painter to null.", lobbyId);
-            lobby.setCurrentPainterToken(null);
-            // Do not modify history here, as the state is uncertain
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to determine next painter due to an unexpected state.");
+        lobby.markPainter(nextIndex);
+        lobby.setCurrentPainterToken(nextPainterToken);
+        log.info("Lobby {}: Set current painter to {} (position {}) and added to history.", lobbyId, nextPainterToken, nextIndex);
+        if (lobby.getStatus() == Lobby.STATUS_PLAYING) {
+            lobby.setRoundEndsAt(turnDeadline(lobby)); // the new painter gets the full draw time
         }
 
-        // --- Save the updated Lobby ---
-        lobby = lobbyRepository.save(lobby);
-        lobbyRepository.flush(); // Ensure changes are persisted
-
         return lobby; // Return the updated lobby object
     }
 
+    private static long turnDeadline(Lobby lobby) {
+        return System.currentTimeMillis() + lobby.getDrawTime() * 1000L;
+    }
+
     public Lobby setLobbyWord(Long lobbyId, String word) {
-        Lobby lobby = getLobbyById(lobbyId);
+        return mutate(lobbyId, () -> applyLobbyWord(lobbyId, word));
+    }
+
+    private Lobby applyLobbyWord(Long lobbyId, String word) {
+        Lobby lobby = liveLobby(lobbyId);
     
         if (word == null || word.trim().isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Word cannot be null or empty.");
@@ -432,8 +722,53 @@ public class LobbyService {
 
     
         lobby.setCurrentWord(trimmedWord);
-        lobby = lobbyRepository.save(lobby);
-        lobbyRepository.flush();
+        lobby = lobbyStateStore.save(lobby);
+        guessEvaluator.prepare(lobbyId, trimmedWord, lobby.getLanguage());
+        return lobby;
+    }
+
+    // Checks a member's guess against the current word; reads the live lobby and only
+    // writes (through the mailbox) when a correct guess scores
+    public GuessEvaluator.Result evaluateGuess(Long lobbyId, Long playerId, String guess) {
+        Lobby lobby = getLobbyById(lobbyId);
+        if (playerId == null || !lobby.hasPlayer(playerId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Player " + playerId + " is not in lobby " + lobbyId + ".");
+        }
+        if (guess == null || guess.trim().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Guess cannot be null or empty.");
+        }
+        GuessEvaluator.Result result = guessEvaluator.evaluate(lobbyId, lobby.getCurrentWord(), lobby.getLanguage(), guess);
+        if (result == GuessEvaluator.Result.CORRECT && lobby.getStatus() == Lobby.STATUS_PLAYING) {
+            mutate(lobbyId, () -> applyCorrectGuess(lobbyId, playerId));
+        }
+        return result;
+    }
+
+    // Scores the player's first correct guess of the running turn, for them and the painter.
+    // The mark is saved with the points under the lobby's version, so of two instances scoring
+    // the same guess one conflicts, and its retry finds the player already marked.
+    private Lobby applyCorrectGuess(Long lobbyId, Long playerId) {
+        Lobby lobby = liveLobby(lobbyId);
+        if (lobby.getStatus() != Lobby.STATUS_PLAYING || !lobby.hasPlayer(playerId) || scoreService.hasScored(lobby, playerId)) {
+            return lobby;
+        }
+        Long painterId = painterIdOf(lobby);
+        if (playerId.equals(painterId)) {
+            return lobby; // the painter knows the word
+        }
+        int points = scoreService.guessPoints(lobby, System.currentTimeMillis());
+        lobby.addScore(playerId, points);
+        if (painterId != null) {
+            lobby.addScore(painterId, ScoreService.PAINTER_POINTS);
+        }
+        scoreService.markScored(lobby, playerId);
+        lobby = lobbyStateStore.save(lobby);
+        log.info("Lobby {}: player {} guessed the word for {} points.", lobbyId, playerId, points);
+
+        scoreService.awardPoints(playerId, points);
+        if (painterId != null) {
+            scoreService.awardPoints(painterId, ScoreService.PAINTER_POINTS);
+        }
         return lobby;
     }
-}
\ No newline at end of file
+}
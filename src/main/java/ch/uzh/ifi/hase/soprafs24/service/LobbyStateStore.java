@@ -0,0 +1,378 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.repository.LobbyRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.LobbyVersionView;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lobby State Store
+ * Holds the live Lobby aggregates that LobbyService reads and mutates.
+ *
+ * In write-behind mode (default) the in-memory lobby is the source of truth:
+ * mutations only mark the lobby dirty and a scheduled flush writes all dirty
+ * lobbies in one saveAll batch, so many changes to the same lobby between two
+ * flushes cost one write. Guarantees:
+ * - creating and deleting a lobby is written through immediately, so a lobby
+ *   id is never lost or resurrected after a crash
+ * - other changes reach the database within lobby.state.flush-interval-ms, or
+ *   earlier once lobby.state.max-pending-writes lobbies are waiting: the lane
+ *   of the lobby that crossed the limit then writes its dirty lobbies before
+ *   running further mutations
+ * - a failed batch stays dirty and is retried on the next flush
+ * - pending changes are flushed when the application shuts down
+ * A hard crash can therefore lose at most one flush interval of lobby changes.
+ * Each batch is written on the lanes of the LobbyMailbox, so a lobby is never
+ * written while a mutation of it is still running.
+ *
+ * Lobby carries an optimistic lock version. If a batch hits a lobby that was
+ * changed elsewhere, that lobby is dropped from memory (the stored row wins and
+ * is reloaded on next access) and the rest of the batch is retried.
+ * In write-through mode the conflict is thrown to the caller, which retries
+ * (see LobbyWriteRetry).
+ *
+ * With lobby.state.write-behind=false every call goes straight to the
+ * repository (save + flush), which is the behaviour before this store existed.
+ *
+ * With lobby.state.shared=true several instances share one database, so no
+ * instance may hold the only copy of a change: every call is written through
+ * as with write-behind=false, whatever that setting says. Lobbies read by id are
+ * kept in a bounded per-instance cache for lobby.state.cache-ttl-ms, so a lobby
+ * changed by another instance is seen here at most that much later. A write
+ * based on such a stale copy fails its optimistic lock check; the copy is then
+ * dropped and LobbyWriteRetry runs the mutation again on the stored lobby.
+ */
+@Component
+public class LobbyStateStore {
+
+    private final Logger log = LoggerFactory.getLogger(LobbyStateStore.class);
+    private final LobbyRepository lobbyRepository;
+    private final LobbyMailbox lobbyMailbox;
+    private final LobbyContentionMetrics contentionMetrics;
+    private final boolean writeBehind;
+    private final int maxPendingWrites;
+    private final boolean shared;
+    // lobbies read by id in shared mode, null otherwise
+    private final Cache<Long, Lobby> sharedCache;
+
+    private final Map<Long, Lobby> liveLobbies = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyLobbyIds = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> queuedLaneFlushes = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public LobbyStateStore(LobbyRepository lobbyRepository, LobbyMailbox lobbyMailbox,
+                           LobbyContentionMetrics contentionMetrics, boolean writeBehind, int maxPendingWrites) {
+        this(lobbyRepository, lobbyMailbox, contentionMetrics, writeBehind, maxPendingWrites, false, 0L, 0);
+    }
+
+    @Autowired
+    public LobbyStateStore(@Qualifier("lobbyRepository") LobbyRepository lobbyRepository,
+                           LobbyMailbox lobbyMailbox,
+                           LobbyContentionMetrics contentionMetrics,
+                           @Value("${lobby.state.write-behind:true}") boolean writeBehind,
+                           @Value("${lobby.state.max-pending-writes:500}") int maxPendingWrites,
+                           @Value("${lobby.state.shared:false}") boolean shared,
+                           @Value("${lobby.state.cache-ttl-ms:500}") long cacheTtlMs,
+                           @Value("${lobby.state.cache-max-size:10000}") int cacheMaxSize) {
+        this.lobbyRepository = lobbyRepository;
+        this.lobbyMailbox = lobbyMailbox;
+        this.contentionMetrics = contentionMetrics;
+        this.writeBehind = writeBehind && !shared;
+        this.maxPendingWrites = maxPendingWrites;
+        this.shared = shared;
+        this.sharedCache = !shared ? null : Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(Math.max(0L, cacheTtlMs)))
+                .maximumSize(Math.max(0, cacheMaxSize))
+                .build();
+        if (shared) {
+            log.info("Lobby state is shared with other instances: writing through, caching reads for {} ms.", cacheTtlMs);
+        }
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    public Optional<Lobby> findById(Long id) {
+        if (shared) {
+            Lobby cached = sharedCache.getIfPresent(id);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+            Optional<Lobby> loaded = lobbyRepository.findById(id);
+            loaded.ifPresent(lobby -> sharedCache.put(id, lobby));
+            return loaded;
+        }
+        if (!writeBehind) {
+            return lobbyRepository.findById(id);
+        }
+        Lobby live = liveLobbies.get(id);
+        if (live != null) {
+            return Optional.of(live);
+        }
+        // First access since startup: load once, afterwards the in-memory copy wins
+        return lobbyRepository.findById(id).map(loaded -> {
+            Lobby existing = liveLobbies.putIfAbsent(id, loaded);
+            return existing != null ? existing : loaded;
+        });
+    }
+
+    // Stored lobbies with their live version where one exists, plus live lobbies not written yet
+    public List<Lobby> findAll() {
+        if (!writeBehind) {
+            return lobbyRepository.findAll();
+        }
+        Map<Long, Lobby> merged = new LinkedHashMap<>();
+        for (Lobby stored : lobbyRepository.findAll()) {
+            merged.put(stored.getId(), liveLobbies.getOrDefault(stored.getId(), stored));
+        }
+        for (Lobby live : liveLobbies.values()) {
+            merged.putIfAbsent(live.getId(), live);
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    // Versions and turn deadlines of every stored lobby, without loading the lobbies
+    public List<LobbyVersionView> findAllVersions() {
+        return lobbyRepository.findAllVersions();
+    }
+
+    // The stored rows of these lobbies, past the live copies and the shared cache; the caller gets its own instances
+    public List<Lobby> findStored(Collection<Long> ids) {
+        return lobbyRepository.findAllById(ids);
+    }
+
+    // One page from the database, with live copies swapped in (they are at most one flush interval newer).
+    // With write-behind the filters match the stored rows: for up to one flush interval a lobby can be
+    // missing from a page it now matches, or be on a page its live copy no longer matches.
+    public List<Lobby> findPage(long cursor, int limit, Integer status, String language, String type, boolean freeSlotsOnly) {
+        List<Lobby> page = lobbyRepository.findPage(cursor, status, language, type, freeSlotsOnly, PageRequest.of(0, limit));
+        if (!writeBehind) {
+            return page;
+        }
+        List<Lobby> result = new ArrayList<>(page.size());
+        for (Lobby stored : page) {
+            result.add(liveLobbies.getOrDefault(stored.getId(), stored));
+        }
+        return result;
+    }
+
+    // New lobbies are always written through so their id is taken in the database right away
+    public Lobby create(Lobby lobby) {
+        Lobby saved = lobbyRepository.save(lobby);
+        lobbyRepository.flush();
+        if (writeBehind) {
+            liveLobbies.put(saved.getId(), saved);
+        }
+        else if (shared) {
+            sharedCache.put(saved.getId(), saved);
+        }
+        return saved;
+    }
+
+    // Whether a lobby with this id is stored, by this or another instance
+    public boolean exists(Long id) {
+        return lobbyRepository.existsById(id);
+    }
+
+    // Records a change to an existing lobby; in write-behind mode it is persisted by the next flush
+    public Lobby save(Lobby lobby) {
+        if (!writeBehind) {
+            contentionMetrics.recordAttempt(lobby.getId());
+            try {
+                Lobby saved = lobbyRepository.save(lobby);
+                lobbyRepository.flush();
+                if (shared) {
+                    sharedCache.put(saved.getId(), saved);
+                }
+                return saved;
+            }
+            catch (ObjectOptimisticLockingFailureException e) {
+                contentionMetrics.recordConflict(lobby.getId());
+                if (shared) {
+                    sharedCache.invalidate(lobby.getId());
+                }
+                throw e;
+            }
+        }
+        liveLobbies.put(lobby.getId(), lobby);
+        dirtyLobbyIds.add(lobby.getId());
+        if (dirtyLobbyIds.size() >= maxPendingWrites) {
+            queueLaneFlush(lobby.getId());
+        }
+        return lobby;
+    }
+
+    // Back-pressure: at most one extra flush is queued per lane. It writes the lane's dirty
+    // lobbies after the running mutation (outside its transaction; save runs on a lane, which
+    // must not wait for the other lanes) and holds up the lane's next mutations meanwhile,
+    // so writers cannot outrun the database
+    private void queueLaneFlush(Long lobbyId) {
+        int lane = lobbyMailbox.laneOf(lobbyId);
+        if (!queuedLaneFlushes.add(lane)) {
+            return;
+        }
+        lobbyMailbox.submitAsync(lobbyId, () -> {
+            queuedLaneFlushes.remove(lane);
+            List<Lobby> batch = new ArrayList<>();
+            for (Long id : dirtyLobbyIds) {
+                // remove claims the id, a flush running at the same time gets the others
+                if (lobbyMailbox.laneOf(id) != lane || !dirtyLobbyIds.remove(id)) {
+                    continue;
+                }
+                Lobby dirty = liveLobbies.get(id);
+                if (dirty != null) {
+                    batch.add(dirty);
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+            return null;
+        });
+    }
+
+    public void delete(Lobby lobby) {
+        if (writeBehind) {
+            liveLobbies.remove(lobby.getId());
+            dirtyLobbyIds.remove(lobby.getId());
+        }
+        else if (shared) {
+            sharedCache.invalidate(lobby.getId());
+        }
+        lobbyRepository.delete(lobby);
+        lobbyRepository.flush();
+        contentionMetrics.remove(lobby.getId());
+    }
+
+    // Forgets the in-memory copy, the next findById reloads the stored lobby
+    public void evict(Long id) {
+        liveLobbies.remove(id);
+        dirtyLobbyIds.remove(id);
+        if (shared) {
+            sharedCache.invalidate(id);
+        }
+    }
+
+    public int getPendingWrites() {
+        return dirtyLobbyIds.size();
+    }
+
+    /**
+     * Writes all dirty lobbies in one batch. Lobbies changed again while the
+     * batch is written are marked dirty again and go out with the next flush.
+     * Skipped if another flush is already running.
+     */
+    @Scheduled(fixedDelayString = "${lobby.state.flush-interval-ms:250}")
+    public void flush() {
+        if (!writeBehind || dirtyLobbyIds.isEmpty() || !flushLock.tryLock()) {
+            return;
+        }
+        try {
+            writeDirtyLobbies();
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Waits for a running flush instead of skipping, so nothing pending is left behind
+    @PreDestroy
+    public void flushOnShutdown() {
+        if (!writeBehind) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            if (!dirtyLobbyIds.isEmpty()) {
+                log.info("Flushing {} pending lobbies before shutdown.", dirtyLobbyIds.size());
+                writeDirtyLobbies();
+            }
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void writeDirtyLobbies() {
+        // one batch per mailbox lane, written on that lane
+        Map<Integer, List<Lobby>> batches = new HashMap<>();
+        for (Long id : dirtyLobbyIds) {
+            if (!dirtyLobbyIds.remove(id)) {
+                continue; // taken by a lane flush
+            }
+            Lobby lobby = liveLobbies.get(id);
+            if (lobby != null) {
+                batches.computeIfAbsent(lobbyMailbox.laneOf(id), lane -> new ArrayList<>()).add(lobby);
+            }
+        }
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (List<Lobby> batch : batches.values()) {
+            writes.add(lobbyMailbox.submitAsync(batch.get(0).getId(), () -> {
+                writeBatch(batch);
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(writes.toArray(CompletableFuture<?>[]::new)).join();
+    }
+
+    private void writeBatch(List<Lobby> batch) {
+        for (Lobby lobby : batch) {
+            contentionMetrics.recordAttempt(lobby.getId());
+        }
+        try {
+            // saveAll merges into managed copies; carry their new version over to the live lobbies
+            for (Lobby saved : lobbyRepository.saveAll(batch)) {
+                Lobby live = liveLobbies.get(saved.getId());
+                if (live != null && live != saved) {
+                    live.setVersion(saved.getVersion());
+                }
+            }
+            lobbyRepository.flush();
+            log.debug("Flushed {} lobbies.", batch.size());
+        }
+        catch (ObjectOptimisticLockingFailureException e) {
+            // without an identifier every lobby of the batch is treated as conflicting
+            Object conflictedId = e.getIdentifier();
+            log.warn("Lobby {} was changed elsewhere, reloading it from the database.", conflictedId);
+            for (Lobby lobby : batch) {
+                if (conflictedId == null || lobby.getId().equals(conflictedId)) {
+                    contentionMetrics.recordConflict(lobby.getId());
+                    evict(lobby.getId());
+                }
+                else if (liveLobbies.containsKey(lobby.getId())) {
+                    dirtyLobbyIds.add(lobby.getId());
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            log.error("Failed to flush {} lobbies, keeping them for the next attempt.", batch.size(), e);
+            for (Lobby lobby : batch) {
+                if (liveLobbies.containsKey(lobby.getId())) {
+                    dirtyLobbyIds.add(lobby.getId());
+                }
+            }
+        }
+    }
+}
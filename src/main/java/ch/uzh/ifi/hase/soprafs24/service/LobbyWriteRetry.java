@@ -0,0 +1,77 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Lobby Write Retry
+ * Re-runs a lobby mutation that failed on an optimistic lock conflict.
+ * Before every retry the caller's onConflict hook runs (to drop the stale copy)
+ * and the thread waits a jittered, exponentially growing delay capped at
+ * lobby.write.max-backoff-ms. After lobby.write.max-retries the request fails
+ * with 409 CONFLICT.
+ */
+@Component
+public class LobbyWriteRetry {
+
+    private final Logger log = LoggerFactory.getLogger(LobbyWriteRetry.class);
+    private final LobbyContentionMetrics contentionMetrics;
+    private final int maxRetries;
+    private final long backoffMs;
+    private final long maxBackoffMs;
+
+    @Autowired
+    public LobbyWriteRetry(LobbyContentionMetrics contentionMetrics,
+                           @Value("${lobby.write.max-retries:3}") int maxRetries,
+                           @Value("${lobby.write.backoff-ms:10}") long backoffMs,
+                           @Value("${lobby.write.max-backoff-ms:200}") long maxBackoffMs) {
+        this.contentionMetrics = contentionMetrics;
+        this.maxRetries = maxRetries;
+        this.backoffMs = backoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    public <T> T run(Long lobbyId, Supplier<T> write, Runnable onConflict) {
+        for (int retry = 1; ; retry++) {
+            try {
+                return write.get();
+            }
+            catch (OptimisticLockingFailureException e) {
+                onConflict.run();
+                if (retry > maxRetries) {
+                    contentionMetrics.recordExhausted(lobbyId);
+                    log.warn("Lobby {} still conflicting after {} retries, giving up.", lobbyId, maxRetries);
+                    throw new ResponseStatusException(HttpStatus.CONFLICT,
+                            "Lobby " + lobbyId + " was changed concurrently, please try again.");
+                }
+                contentionMetrics.recordRetry(lobbyId);
+                log.debug("Conflicting write on lobby {}, retry {} of {}.", lobbyId, retry, maxRetries);
+                pause(retry);
+            }
+        }
+    }
+
+    // Random delay between half and all of min(maxBackoff, backoff * 2^(retry-1))
+    private void pause(int retry) {
+        long ceiling = Math.min(maxBackoffMs, backoffMs << Math.min(retry - 1, 20));
+        if (ceiling <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while retrying lobby update.");
+        }
+    }
+}
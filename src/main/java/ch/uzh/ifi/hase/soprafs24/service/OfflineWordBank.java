@@ -0,0 +1,132 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Offline Word Bank
+ * Bundled drawable words per language and category, served while OpenAI is
+ * unavailable.
+ *
+ * The words are read once from classpath:words/{lang}.json (category to words)
+ * into plain arrays. A category matches case-insensitively and in singular or
+ * plural ("animal" finds "animals"); any other category gets all words of the
+ * language, and any other language gets English. Drawing never allocates more
+ * than the result list.
+ */
+@Component
+public class OfflineWordBank {
+
+    static final List<String> LANGUAGES = List.of("en", "de", "ch");
+    private static final String DEFAULT_LANGUAGE = "en";
+
+    // words by lang, then by category; "" holds all words of the language
+    private final Map<String, Map<String, String[]>> words = new HashMap<>();
+
+    public OfflineWordBank() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (String lang : LANGUAGES) {
+            Map<String, List<String>> categories = read(objectMapper, "/words/" + lang + ".json");
+            Map<String, String[]> byCategory = new HashMap<>();
+            Set<String> all = new LinkedHashSet<>();
+            for (Map.Entry<String, List<String>> category : categories.entrySet()) {
+                byCategory.put(normalize(category.getKey()), category.getValue().toArray(new String[0]));
+                all.addAll(category.getValue());
+            }
+            byCategory.put("", all.toArray(new String[0]));
+            words.put(lang, byCategory);
+        }
+    }
+
+    private static Map<String, List<String>> read(ObjectMapper objectMapper, String resource) {
+        try (InputStream in = OfflineWordBank.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalStateException("Word bank " + resource + " is missing");
+            }
+            return objectMapper.readValue(in, new TypeReference<LinkedHashMap<String, List<String>>>() {});
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Cannot read word bank " + resource, e);
+        }
+    }
+
+    /**
+     * Up to count random words for (lang, type), none of them in exclude and
+     * none twice.
+     */
+    public List<String> draw(String lang, String type, int count, Collection<String> exclude) {
+        String[] bank = wordsFor(lang, type);
+        List<String> drawn = new ArrayList<>(Math.max(0, Math.min(count, bank.length)));
+        if (count <= 0) {
+            return drawn;
+        }
+        // walk the bank from a random start with a random stride coprime to its size:
+        // every word is visited once, in a different order each time
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = bank.length;
+        int index = random.nextInt(size);
+        int stride = 1;
+        if (size > 2) {
+            do {
+                stride = 1 + random.nextInt(size - 1);
+            } while (gcd(stride, size) != 1);
+        }
+        for (int visited = 0; visited < size && drawn.size() < count; visited++) {
+            String word = bank[index];
+            if (!exclude.contains(word)) {
+                drawn.add(word);
+            }
+            index = (index + stride) % size;
+        }
+        return drawn;
+    }
+
+    // Number of words for (lang, type)
+    public int size(String lang, String type) {
+        return wordsFor(lang, type).length;
+    }
+
+    private String[] wordsFor(String lang, String type) {
+        Map<String, String[]> byCategory = words.get(normalize(lang));
+        if (byCategory == null) {
+            byCategory = words.get(DEFAULT_LANGUAGE);
+        }
+        String category = normalize(type);
+        String[] bank = byCategory.get(category);
+        if (bank == null && category.endsWith("s")) {
+            bank = byCategory.get(category.substring(0, category.length() - 1));
+        }
+        if (bank == null) {
+            bank = byCategory.get(category + "s");
+        }
+        return bank != null ? bank : byCategory.get("");
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,169 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.util.CircuitBreaker;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OpenAI Client
+ * Non-blocking calls to the chat completions endpoint.
+ *
+ * Requests share a bounded connection pool (openai.max-connections, callers
+ * beyond it queue for a connection instead of opening more). Every attempt has
+ * a deadline (openai.timeout-ms) covering the connection wait and the response.
+ * Timeouts, 5xx and 429 responses are retried up to openai.max-retries times
+ * with jittered exponential backoff starting at openai.backoff-ms; other 4xx
+ * responses (bad key, bad request) fail right away. Nothing here blocks: the
+ * returned Mono completes on the HTTP client's event loop.
+ *
+ * A circuit breaker watches whole calls (retries included): after
+ * openai.breaker.failure-threshold failed or slower than
+ * openai.breaker.slow-call-ms calls in a row, calls fail at once for
+ * openai.breaker.open-ms, then a single probe call decides whether to resume.
+ * isAvailable tells callers up front, so they can skip OpenAI while it is down.
+ */
+@Component
+public class OpenAiClient {
+
+    static final String DEFAULT_API_URL = "https://api.openai.com/v1/chat/completions";
+    private static final String MODEL = "gpt-3.5-turbo";
+
+    private final Logger log = LoggerFactory.getLogger(OpenAiClient.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ConnectionProvider connectionProvider;
+    private final WebClient webClient;
+    private final Duration timeout;
+    private final int maxRetries;
+    private final Duration backoff;
+    private final Duration maxBackoff;
+    private final CircuitBreaker breaker;
+
+    public OpenAiClient() {
+        this(DEFAULT_API_URL, 16, 15_000L, 2, 500L, 4_000L, 3, 10_000L, 30_000L);
+    }
+
+    @Autowired
+    public OpenAiClient(@Value("${openai.api-url:" + DEFAULT_API_URL + "}") String apiUrl,
+                        @Value("${openai.max-connections:16}") int maxConnections,
+                        @Value("${openai.timeout-ms:15000}") long timeoutMs,
+                        @Value("${openai.max-retries:2}") int maxRetries,
+                        @Value("${openai.backoff-ms:500}") long backoffMs,
+                        @Value("${openai.max-backoff-ms:4000}") long maxBackoffMs,
+                        @Value("${openai.breaker.failure-threshold:3}") int breakerFailures,
+                        @Value("${openai.breaker.slow-call-ms:10000}") long breakerSlowCallMs,
+                        @Value("${openai.breaker.open-ms:30000}") long breakerOpenMs) {
+        String apiKey = System.getenv("OPENAI_API_KEY");
+        if (apiKey == null || apiKey.isEmpty()) {
+            throw new IllegalStateException("OpenAI API Key not set");
+        }
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.maxRetries = maxRetries;
+        this.backoff = Duration.ofMillis(backoffMs);
+        this.maxBackoff = Duration.ofMillis(maxBackoffMs);
+        this.breaker = new CircuitBreaker(breakerFailures, breakerSlowCallMs, breakerOpenMs);
+        this.connectionProvider = ConnectionProvider.builder("openai")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(maxConnections * 8)
+                .pendingAcquireTimeout(timeout)
+                .maxIdleTime(Duration.ofSeconds(30))
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) Math.min(timeoutMs, Integer.MAX_VALUE))
+                .responseTimeout(timeout);
+        this.webClient = WebClient.builder()
+                .baseUrl(apiUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .build();
+    }
+
+    @PreDestroy
+    public void stop() {
+        connectionProvider.dispose();
+    }
+
+    // False while the circuit breaker refuses calls
+    public boolean isAvailable() {
+        return breaker.allowsCalls();
+    }
+
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.getState();
+    }
+
+    // The text of the first choice answering a single user message
+    public Mono<String> complete(String prompt, double temperature) {
+        return Mono.defer(() -> {
+            if (!breaker.tryAcquire()) {
+                return Mono.error(new IllegalStateException("OpenAI circuit breaker is open"));
+            }
+            long start = System.nanoTime();
+            return call(prompt, temperature)
+                    .doOnSuccess(content -> breaker.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)))
+                    .doOnError(e -> breaker.onFailure())
+                    .doOnCancel(breaker::onFailure); // no answer either, and frees the half-open probe
+        });
+    }
+
+    private Mono<String> call(String prompt, double temperature) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", MODEL);
+        body.put("messages", List.of(Map.of("role", "user", "content", prompt)));
+        body.put("temperature", temperature);
+
+        return webClient.post()
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(timeout)
+                .map(this::messageContent)
+                .retryWhen(Retry.backoff(maxRetries, backoff)
+                        .maxBackoff(maxBackoff)
+                        .jitter(0.5)
+                        .filter(OpenAiClient::isRetryable)
+                        .doBeforeRetry(signal -> log.warn("OpenAI call failed (attempt {}), retrying: {}",
+                                signal.totalRetries() + 1, signal.failure().getMessage()))
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    private String messageContent(String rawResponse) {
+        try {
+            JsonNode root = objectMapper.readTree(rawResponse);
+            return root.path("choices").path(0).path("message").path("content").asText();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unreadable completion response: " + e.getMessage(), e);
+        }
+    }
+
+    static boolean isRetryable(Throwable failure) {
+        if (failure instanceof WebClientResponseException) {
+            int status = ((WebClientResponseException) failure).getRawStatusCode();
+            return status >= 500 || status == 429;
+        }
+        // timeouts, refused or reset connections, pool exhaustion; not unreadable responses
+        return !(failure instanceof IllegalStateException);
+    }
+}
@@ -0,0 +1,112 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.util.HashedTimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Round Timer
+ * At most one pending deadline per lobby, for the end of the running turn.
+ *
+ * All lobbies share one hashed timing wheel (round.timer.tick-ms resolution),
+ * so tens of thousands of running games cost one timer thread instead of a
+ * scheduled task each. Expired callbacks run on a small pool
+ * (round.timer.threads) since they go through the lobby's mailbox.
+ * Deadlines are wall-clock epoch milliseconds, like Lobby.roundEndsAt.
+ */
+@Component
+public class RoundTimer {
+
+    private final Logger log = LoggerFactory.getLogger(RoundTimer.class);
+    private final HashedTimingWheel wheel;
+    private final ExecutorService expiryPool;
+    private final Map<Long, Entry> timers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RoundTimer(@Value("${round.timer.tick-ms:10}") long tickMs,
+                      @Value("${round.timer.wheel-size:512}") int wheelSize,
+                      @Value("${round.timer.threads:2}") int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.expiryPool = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "round-timer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.wheel = new HashedTimingWheel(tickMs, TimeUnit.MILLISECONDS, wheelSize, expiryPool, "round-timer-wheel");
+    }
+
+    @PreDestroy
+    public void stop() {
+        wheel.stop();
+        expiryPool.shutdownNow();
+    }
+
+    /**
+     * Runs onExpiry once the deadline (epoch ms) has passed, replacing the lobby's
+     * previous deadline. Scheduling the deadline that is already pending does nothing.
+     */
+    public void schedule(Long lobbyId, long deadlineMs, Runnable onExpiry) {
+        timers.compute(lobbyId, (id, existing) -> {
+            if (existing != null) {
+                if (existing.deadlineMs == deadlineMs) {
+                    return existing;
+                }
+                existing.timeout.cancel();
+            }
+            Entry entry = new Entry(deadlineMs);
+            entry.timeout = wheel.schedule(() -> fire(lobbyId, entry, onExpiry),
+                    deadlineMs - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+            return entry;
+        });
+    }
+
+    public void cancel(Long lobbyId) {
+        Entry entry = timers.remove(lobbyId);
+        if (entry != null) {
+            entry.timeout.cancel();
+        }
+    }
+
+    // The pending deadline of the lobby, null if none
+    public Long getDeadline(Long lobbyId) {
+        Entry entry = timers.get(lobbyId);
+        return entry == null ? null : entry.deadlineMs;
+    }
+
+    public int getActiveCount() {
+        return timers.size();
+    }
+
+    private void fire(Long lobbyId, Entry entry, Runnable onExpiry) {
+        // a deadline replaced while this one was already expiring must not run
+        if (!timers.remove(lobbyId, entry)) {
+            return;
+        }
+        try {
+            onExpiry.run();
+        }
+        catch (RuntimeException e) {
+            log.warn("Round timer of lobby {} failed: {}", lobbyId, e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+        private final long deadlineMs;
+        private HashedTimingWheel.Timeout timeout;
+
+        private Entry(long deadlineMs) {
+            this.deadlineMs = deadlineMs;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserScoreView;
+import ch.uzh.ifi.hase.soprafs24.util.ScoreRankIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Score Service
+ * Points for correct guesses, per game (Lobby.scores) and in total (User.totalScore).
+ *
+ * A guesser scores once per turn, more the earlier the guess: 50 points plus up
+ * to 250 for the time left of the turn (100 flat when no turn timer runs). The
+ * painter gets 25 points for every player who guesses the word.
+ *
+ * The global leaderboard is kept in memory in a ScoreRankIndex, loaded from the
+ * user table at startup and updated on every award, so top players and a
+ * user's rank never scan or sort the user table.
+ *
+ * Who scored in a turn is kept in the lobby row (Lobby.hasGuessed), so it is
+ * checked under the lobby's version lock on every instance. With shared lobby
+ * state (lobby.state.shared) other instances award points too: an award takes
+ * the stored total instead of adding to this instance's copy, and the whole
+ * leaderboard is rebuilt from the user table every leaderboard.refresh-ms.
+ */
+@Service
+@Transactional
+public class ScoreService {
+
+    public static final int BASE_GUESS_POINTS = 50;
+    public static final int TIME_BONUS_POINTS = 250;
+    public static final int UNTIMED_GUESS_POINTS = 100;
+    public static final int PAINTER_POINTS = 25;
+    public static final int MAX_LEADERBOARD_SIZE = 100;
+    private static final int LOAD_PAGE_SIZE = 10_000;
+
+    private final Logger log = LoggerFactory.getLogger(ScoreService.class);
+    private final UserRepository userRepository;
+    private final ScoreRankIndex leaderboard;
+    private final ReadWriteLock leaderboardLock = new ReentrantReadWriteLock();
+    private final boolean shared; // other instances award points on the same user table
+
+    public ScoreService(UserRepository userRepository, int maxBucketedScore) {
+        this(userRepository, maxBucketedScore, false);
+    }
+
+    @Autowired
+    public ScoreService(@Qualifier("userRepository") UserRepository userRepository,
+                        @Value("${leaderboard.max-score:1048575}") int maxBucketedScore,
+                        @Value("${lobby.state.shared:false}") boolean shared) {
+        this.userRepository = userRepository;
+        this.leaderboard = new ScoreRankIndex(maxBucketedScore);
+        this.shared = shared;
+    }
+
+    // Builds the leaderboard from the stored totals
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadLeaderboard() {
+        log.info("Leaderboard loaded with {} users.", putStoredTotals());
+    }
+
+    // Shared lobby state: takes over the totals other instances awarded since the last refresh
+    @Scheduled(fixedDelayString = "${leaderboard.refresh-ms:10000}", initialDelayString = "${leaderboard.refresh-ms:10000}")
+    public void refreshLeaderboard() {
+        if (!shared) {
+            return;
+        }
+        log.debug("Leaderboard refreshed with {} users.", putStoredTotals());
+    }
+
+    // Puts every stored total into the leaderboard, one page of id/score pairs at a time
+    private int putStoredTotals() {
+        long after = 0L;
+        int loaded = 0;
+        List<UserScoreView> page;
+        do {
+            page = userRepository.findScoresAfter(after, PageRequest.of(0, LOAD_PAGE_SIZE));
+            leaderboardLock.writeLock().lock();
+            try {
+                for (UserScoreView view : page) {
+                    leaderboard.put(view.getId(), view.getTotalScore());
+                    after = view.getId();
+                }
+            }
+            finally {
+                leaderboardLock.writeLock().unlock();
+            }
+            loaded += page.size();
+        } while (page.size() == LOAD_PAGE_SIZE);
+        return loaded;
+    }
+
+    // Points for a correct guess made now, by the time left in the lobby's turn
+    public int guessPoints(Lobby lobby, long nowMs) {
+        Long endsAt = lobby.getRoundEndsAt();
+        long turnMs = lobby.getDrawTime() * 1000L;
+        if (endsAt == null || turnMs <= 0) {
+            return UNTIMED_GUESS_POINTS;
+        }
+        long leftMs = Math.max(0, Math.min(turnMs, endsAt - nowMs));
+        return BASE_GUESS_POINTS + (int) (TIME_BONUS_POINTS * leftMs / turnMs);
+    }
+
+    // Whether the player already scored in the lobby's running turn (same word and deadline)
+    public boolean hasScored(Lobby lobby, long playerId) {
+        return lobby.hasGuessed(playerId);
+    }
+
+    // Marks the player in the lobby row, so the save that stores their points also stores the mark
+    public void markScored(Lobby lobby, long playerId) {
+        lobby.markGuessed(playerId);
+    }
+
+    /**
+     * Adds points to the user's total and leaderboard entry; returns the new total,
+     * or -1 if the user does not exist. Awards for one player come from their
+     * lobby's mailbox, so they never race each other.
+     */
+    public long awardPoints(Long userId, long points) {
+        if (userRepository.addToTotalScore(userId, points) == 0) {
+            log.warn("Cannot award {} points to unknown user {}.", points, userId);
+            return -1;
+        }
+        // first award since startup for a user created after loading, or awards from other
+        // instances in shared mode: take the stored total
+        Long storedTotal = shared || !isRanked(userId) ? userRepository.findTotalScoreById(userId) : null;
+        leaderboardLock.writeLock().lock();
+        try {
+            if (storedTotal != null && (shared || !leaderboard.contains(userId))) {
+                leaderboard.put(userId, storedTotal);
+                return storedTotal;
+            }
+            return leaderboard.add(userId, points);
+        }
+        finally {
+            leaderboardLock.writeLock().unlock();
+        }
+    }
+
+    // The best players, best first
+    public List<Standing> getTopPlayers(int limit) {
+        if (limit < 1 || limit > MAX_LEADERBOARD_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Leaderboard size must be between 1 and " + MAX_LEADERBOARD_SIZE + ".");
+        }
+        List<ScoreRankIndex.Entry> entries;
+        leaderboardLock.readLock().lock();
+        try {
+            entries = leaderboard.top(limit);
+        }
+        finally {
+            leaderboardLock.readLock().unlock();
+        }
+        Map<Long, String> usernames = new HashMap<>();
+        List<Long> userIds = new ArrayList<>(entries.size());
+        for (ScoreRankIndex.Entry entry : entries) {
+            userIds.add(entry.getUserId());
+        }
+        for (User user : userRepository.findAllById(userIds)) {
+            usernames.put(user.getId(), user.getUsername());
+        }
+        List<Standing> standings = new ArrayList<>(entries.size());
+        for (ScoreRankIndex.Entry entry : entries) {
+            standings.add(new Standing(entry.getUserId(), usernames.get(entry.getUserId()), entry.getScore(), entry.getRank()));
+        }
+        return standings;
+    }
+
+    // The user's total and rank on the global leaderboard
+    public Standing getStanding(Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User with ID " + userId + " not found."));
+        leaderboardLock.readLock().lock();
+        try {
+            if (leaderboard.contains(userId)) {
+                return new Standing(userId, user.getUsername(), leaderboard.getScore(userId), leaderboard.rank(userId));
+            }
+            // registered after the leaderboard was loaded and no points yet: rank by the stored total
+            return new Standing(userId, user.getUsername(), user.getTotalScore(), leaderboard.rankOfScore(user.getTotalScore()));
+        }
+        finally {
+            leaderboardLock.readLock().unlock();
+        }
+    }
+
+    private boolean isRanked(Long userId) {
+        leaderboardLock.readLock().lock();
+        try {
+            return leaderboard.contains(userId);
+        }
+        finally {
+            leaderboardLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * One user's place on the leaderboard.
+     */
+    public static final class Standing {
+        private final Long userId;
+        private final String username;
+        private final long score;
+        private final long rank;
+
+        public Standing(Long userId, String username, long score, long rank) {
+            this.userId = userId;
+            this.username = username;
+            this.score = score;
+            this.rank = rank;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public long getScore() {
+            return score;
+        }
+
+        public long getRank() {
+            return rank;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package ch.uzh.ifi.hase.soprafs24.service;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserTokenView;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,7 +13,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 import org.mindrot.jbcrypt.BCrypt; //instead of spring security
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.Optional;
 import javax.persistence.EntityNotFoundException;
@@ -111,6 +115,19 @@ public class UserService {
     }
   }
 
+  // Tokens of the given users keyed by id, fetched in one query.
+  // Ids without a matching user are missing from the map instead of causing an error.
+  public Map<Long, String> getTokensByIds(Collection<Long> ids) {
+    Map<Long, String> tokensById = new HashMap<>();
+    if (ids == null || ids.isEmpty()) {
+      return tokensById;
+    }
+    for (UserTokenView view : userRepository.findTokensByIdIn(ids)) {
+      tokensById.put(view.getId(), view.getToken());
+    }
+    return tokensById;
+  }
+
     public void setUserStatus(String token, UserStatus status) {
         // Find the user by username
         User user = userRepository.findByToken(token);
@@ -0,0 +1,207 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Word Request Coalescer
+ * Turns word requests for different (lang, type) pairs that arrive close
+ * together into one OpenAI completion.
+ *
+ * The first request opens a window of words.batch.window-ms; everything that
+ * arrives in it (up to words.batch.max-keys requests, a full batch is sent at
+ * once) goes out as one numbered prompt asking for a JSON object of word
+ * arrays by request number, which is split back into the requests' answers.
+ * A request alone in its window is sent with the plain single-category prompt.
+ * A request the answer has no array for gets an empty list; a failed or
+ * unreadable completion fails every request of the batch.
+ */
+@Component
+public class WordRequestCoalescer {
+
+    private static final double TEMPERATURE = 0.8;
+
+    private final Logger log = LoggerFactory.getLogger(WordRequestCoalescer.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OpenAiClient openAiClient;
+    private final Duration window;
+    private final int maxKeys;
+
+    private final Object lock = new Object();
+    private List<Request> pending = new ArrayList<>(); // guarded by lock
+
+    @Autowired
+    public WordRequestCoalescer(OpenAiClient openAiClient,
+                                @Value("${words.batch.window-ms:50}") long windowMs,
+                                @Value("${words.batch.max-keys:5}") int maxKeys) {
+        this.openAiClient = openAiClient;
+        this.window = Duration.ofMillis(windowMs);
+        this.maxKeys = Math.max(1, maxKeys);
+    }
+
+    // count fresh words in the category type, in lang (en, de or ch)
+    public Mono<List<String>> fetch(String lang, String type, int count) {
+        return Mono.create(sink -> {
+            Request request = new Request(lang, type, count, sink);
+            List<Request> full = null;
+            boolean opensWindow;
+            synchronized (lock) {
+                pending.add(request);
+                opensWindow = pending.size() == 1;
+                if (pending.size() >= maxKeys) {
+                    full = pending;
+                    pending = new ArrayList<>();
+                }
+            }
+            if (full != null) {
+                send(full);
+            }
+            else if (opensWindow) {
+                // may fire after its batch was sent full; it then only cuts the next window short
+                Mono.delay(window).subscribe(tick -> flush());
+            }
+        });
+    }
+
+    private void flush() {
+        List<Request> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        send(batch);
+    }
+
+    private void send(List<Request> batch) {
+        if (batch.size() == 1) {
+            Request request = batch.get(0);
+            openAiClient.complete(singlePrompt(request), TEMPERATURE)
+                    .map(this::parseWords)
+                    .subscribe(request.sink::success, request.sink::error);
+            return;
+        }
+        log.debug("Fetching words for {} categories in one completion.", batch.size());
+        openAiClient.complete(batchPrompt(batch), TEMPERATURE)
+                .map(content -> parseBatch(content, batch.size()))
+                .subscribe(answers -> {
+                    for (int i = 0; i < batch.size(); i++) {
+                        batch.get(i).sink.success(answers.get(i));
+                    }
+                }, e -> {
+                    for (Request request : batch) {
+                        request.sink.error(e);
+                    }
+                });
+    }
+
+    static String singlePrompt(Request request) {
+        return String.format(
+                "Give me %d random, drawable, (high-school to college difficulty) nouns in the category '%s' in %s. " +
+                        "Only return a raw JSON array like [\"word1\", \"word2\", \"word3\"], with no additional wrapping object.",
+                request.count, request.type, languageLabel(request.lang)
+        );
+    }
+
+    static String batchPrompt(List<Request> batch) {
+        StringBuilder prompt = new StringBuilder(
+                "For each numbered request below, give random, drawable, (high-school to college difficulty) nouns.\n");
+        for (int i = 0; i < batch.size(); i++) {
+            Request request = batch.get(i);
+            prompt.append(String.format("%d. %d nouns in the category '%s' in %s%n",
+                    i + 1, request.count, request.type, languageLabel(request.lang)));
+        }
+        prompt.append("Only return a raw JSON object mapping each request number to a JSON array of its words, " +
+                "like {\"1\": [\"word1\", \"word2\"], \"2\": [\"word3\", \"word4\"]}, with nothing else.");
+        return prompt.toString();
+    }
+
+    private static String languageLabel(String lang) {
+        return switch (lang) {
+            case "de" -> "German (no pronouns (der/die/das))";
+            case "ch" -> "Swiss German (echtes Züridütsch) (no pronouns (der/die/das))";
+            case "en" -> "English";
+            default -> "English";
+        };
+    }
+
+    private List<String> parseWords(String content) {
+        try {
+            return unique(objectMapper.readValue(content, new TypeReference<List<String>>() {}));
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("Completion is not a JSON array of words: " + e.getMessage(), e);
+        }
+    }
+
+    // The words of requests 1..size, in request order
+    List<List<String>> parseBatch(String content, int size) {
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(content);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("Completion is not a JSON object of word arrays: " + e.getMessage(), e);
+        }
+        if (!root.isObject()) {
+            throw new IllegalStateException("Completion is not a JSON object of word arrays");
+        }
+        List<List<String>> answers = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            JsonNode words = root.path(String.valueOf(i));
+            List<String> raw = new ArrayList<>();
+            if (words.isArray()) {
+                for (JsonNode word : words) {
+                    if (word.isTextual()) {
+                        raw.add(word.asText());
+                    }
+                }
+            }
+            else {
+                log.warn("Batched completion has no words for request {} of {}.", i, size);
+            }
+            answers.add(unique(raw));
+        }
+        return answers;
+    }
+
+    // remove any duplicates, shuffle, then return
+    private static List<String> unique(List<String> words) {
+        List<String> unique = new ArrayList<>(new LinkedHashSet<>(words));
+        Collections.shuffle(unique);
+        return unique;
+    }
+
+    /**
+     * One caller's request, answered through its sink.
+     */
+    static final class Request {
+        private final String lang;
+        private final String type;
+        private final int count;
+        private final MonoSink<List<String>> sink;
+
+        Request(String lang, String type, int count, MonoSink<List<String>> sink) {
+            this.lang = lang;
+            this.type = type;
+            this.count = count;
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Word Store
+ * Keeps the words fetched from OpenAI in a database table, so a restarted or
+ * new instance warms its corpora from it instead of calling OpenAI again.
+ *
+ * The table WORD_ENTRY lives in its own database (words.store.url, by default
+ * an H2 file in the temp directory that local instances share through H2's
+ * automatic server mode; empty turns the store off) and is keyed by
+ * (lang, category, folded word): a word is stored once per category however
+ * often it is fetched, and keeps the time it was first fetched. Entries older
+ * than words.store.max-age-days are deleted on load, so categories slowly
+ * refresh. Writes run on a single background thread and never hold up the
+ * caller; a failed write is only logged. A database that cannot be opened at
+ * startup turns the store off instead of failing the application.
+ */
+@Component
+public class WordStore {
+
+    static final int MAX_LENGTH = 255;
+
+    private final Logger log = LoggerFactory.getLogger(WordStore.class);
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbc;
+    private final long maxAgeMs;
+    private final LongSupplier clock;
+    private final ExecutorService writer;
+
+    @Autowired
+    public WordStore(@Value("${words.store.url:}") String url,
+                     @Value("${words.store.max-age-days:30}") long maxAgeDays) {
+        this(url, maxAgeDays, System::currentTimeMillis);
+    }
+
+    WordStore(String url, long maxAgeDays, LongSupplier clock) {
+        this.maxAgeMs = TimeUnit.DAYS.toMillis(maxAgeDays);
+        this.clock = clock;
+        if (url == null || url.isBlank()) {
+            this.dataSource = null;
+            this.jdbc = null;
+            this.writer = null;
+            return;
+        }
+        HikariDataSource opened = null;
+        JdbcTemplate template = null;
+        try {
+            HikariConfig config = new HikariConfig();
+            config.setJdbcUrl(url);
+            config.setUsername("sa");
+            config.setPassword("");
+            config.setMaximumPoolSize(2);
+            config.setPoolName("word-store");
+            opened = new HikariDataSource(config);
+            template = new JdbcTemplate(opened);
+            template.execute("CREATE TABLE IF NOT EXISTS WORD_ENTRY ("
+                    + "LANG VARCHAR(16) NOT NULL, "
+                    + "CATEGORY VARCHAR(255) NOT NULL, "
+                    + "WORD_KEY VARCHAR(255) NOT NULL, "
+                    + "WORD VARCHAR(255) NOT NULL, "
+                    + "FETCHED_AT BIGINT NOT NULL, "
+                    + "PRIMARY KEY (LANG, CATEGORY, WORD_KEY))");
+            template.execute("CREATE INDEX IF NOT EXISTS WORD_ENTRY_FETCHED_AT ON WORD_ENTRY (FETCHED_AT)");
+        }
+        catch (RuntimeException e) {
+            // e.g. the file is locked by another process: words are then kept in memory only
+            log.warn("Word store {} cannot be opened, keeping words in memory only: {}", url, e.getMessage());
+            if (opened != null) {
+                opened.close();
+            }
+            this.dataSource = null;
+            this.jdbc = null;
+            this.writer = null;
+            return;
+        }
+        this.dataSource = opened;
+        this.jdbc = template;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "word-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dataSource.close();
+    }
+
+    public boolean isEnabled() {
+        return jdbc != null;
+    }
+
+    /**
+     * Deletes the expired entries and returns the others, grouped by (lang,
+     * category) and oldest first within a category.
+     */
+    public List<Entry> load() {
+        if (!isEnabled()) {
+            return List.of();
+        }
+        long cutoff = clock.getAsLong() - maxAgeMs;
+        int expired;
+        List<Entry> entries;
+        try {
+            expired = jdbc.update("DELETE FROM WORD_ENTRY WHERE FETCHED_AT < ?", cutoff);
+            entries = jdbc.query(
+                    "SELECT LANG, CATEGORY, WORD, FETCHED_AT FROM WORD_ENTRY ORDER BY LANG, CATEGORY, FETCHED_AT",
+                    (row, i) -> new Entry(row.getString(1), row.getString(2), row.getString(3), row.getLong(4)));
+        }
+        catch (RuntimeException e) {
+            log.warn("Loading the word store failed, corpora start empty: {}", e.getMessage());
+            return List.of();
+        }
+        log.info("Word store loaded {} words, dropped {} older than {} days.",
+                entries.size(), expired, TimeUnit.MILLISECONDS.toDays(maxAgeMs));
+        return entries;
+    }
+
+    // Stores the words of (lang, category) not stored yet, in the background
+    public CompletableFuture<Void> save(String lang, String category, Collection<String> words) {
+        String langKey = normalize(lang);
+        String categoryKey = normalize(category);
+        if (!isEnabled() || words.isEmpty() || langKey.length() > 16 || categoryKey.length() > MAX_LENGTH) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Object[]> rows = new ArrayList<>(words.size());
+        long now = clock.getAsLong();
+        for (String word : words) {
+            if (word.length() > MAX_LENGTH) {
+                continue;
+            }
+            rows.add(new Object[] {langKey, categoryKey, normalize(word), word, now});
+        }
+        try {
+            return CompletableFuture.runAsync(() -> write(rows, langKey, categoryKey), writer);
+        }
+        catch (RejectedExecutionException e) { // stopped
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private void write(List<Object[]> rows, String langKey, String categoryKey) {
+        try {
+            // insert unless stored already, also when another instance stored it in the meantime
+            jdbc.batchUpdate("MERGE INTO WORD_ENTRY e "
+                    + "USING (SELECT CAST(? AS VARCHAR(16)) LANG, CAST(? AS VARCHAR(255)) CATEGORY, "
+                    + "CAST(? AS VARCHAR(255)) WORD_KEY, CAST(? AS VARCHAR(255)) WORD, CAST(? AS BIGINT) FETCHED_AT) n "
+                    + "ON (e.LANG = n.LANG AND e.CATEGORY = n.CATEGORY AND e.WORD_KEY = n.WORD_KEY) "
+                    + "WHEN NOT MATCHED THEN INSERT (LANG, CATEGORY, WORD_KEY, WORD, FETCHED_AT) "
+                    + "VALUES (n.LANG, n.CATEGORY, n.WORD_KEY, n.WORD, n.FETCHED_AT)", rows);
+        }
+        catch (RuntimeException e) {
+            log.warn("Storing {} words ({}, {}) failed: {}", rows.size(), langKey, categoryKey, e.getMessage());
+        }
+    }
+
+    // Number of stored words
+    public long size() {
+        if (!isEnabled()) {
+            return 0;
+        }
+        Long count = jdbc.queryForObject("SELECT COUNT(*) FROM WORD_ENTRY", Long.class);
+        return count == null ? 0 : count;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * One stored word and when it was first fetched.
+     */
+    public static final class Entry {
+        private final String lang;
+        private final String category;
+        private final String word;
+        private final long fetchedAt;
+
+        public Entry(String lang, String category, String word, long fetchedAt) {
+            this.lang = lang;
+            this.category = category;
+            this.word = word;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public String getLang() {
+            return lang;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public String getWord() {
+            return word;
+        }
+
+        public long getFetchedAt() {
+            return fetchedAt;
+        }
+    }
+}
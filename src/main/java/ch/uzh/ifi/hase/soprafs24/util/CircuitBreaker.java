@@ -0,0 +1,94 @@
+package ch.uzh.ifi.hase.soprafs24.util;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker for calls to a remote service.
+ *
+ * Closed, calls go through. After failureThreshold consecutive failed calls
+ * (a call slower than slowCallMs counts as failed, even if it answered) the
+ * breaker opens and refuses calls for openMs. After that, one probe call is let
+ * through (half-open): if it succeeds the breaker closes, otherwise it opens
+ * again for another openMs.
+ *
+ * Asking whether a call is allowed only reads a volatile field while the
+ * breaker is closed, and takes a lock otherwise. Thread-safe.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long slowCallMs;
+    private final long openMs;
+    private final LongSupplier clock; // milliseconds
+
+    private volatile State state = State.CLOSED;
+    private int failures;   // consecutive, guarded by this
+    private long openedAt;  // guarded by this
+
+    public CircuitBreaker(int failureThreshold, long slowCallMs, long openMs) {
+        this(failureThreshold, slowCallMs, openMs, System::currentTimeMillis);
+    }
+
+    public CircuitBreaker(int failureThreshold, long slowCallMs, long openMs, LongSupplier clock) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be at least 1.");
+        }
+        this.failureThreshold = failureThreshold;
+        this.slowCallMs = slowCallMs;
+        this.openMs = openMs;
+        this.clock = clock;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // Whether a call would be let through now, without claiming the half-open probe
+    public boolean allowsCalls() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            return state == State.OPEN && clock.getAsLong() - openedAt >= openMs;
+        }
+    }
+
+    /**
+     * Claims a call: true if the caller may go ahead, and must then report the
+     * outcome with onSuccess or onFailure. While half-open only one call is let
+     * through until it reports back.
+     */
+    public boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            if (state == State.OPEN && clock.getAsLong() - openedAt >= openMs) {
+                state = State.HALF_OPEN;
+                return true;
+            }
+            return state == State.CLOSED;
+        }
+    }
+
+    public synchronized void onSuccess(long latencyMs) {
+        if (latencyMs > slowCallMs) {
+            onFailure();
+            return;
+        }
+        failures = 0;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+    }
+}
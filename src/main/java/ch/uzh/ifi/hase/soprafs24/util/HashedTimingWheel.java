@@ -0,0 +1,253 @@
+package ch.uzh.ifi.hase.soprafs24.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timing wheel: one thread keeps any number of timeouts with a
+ * resolution of one tick.
+ *
+ * The wheel is a ring of buckets, one per tick. A timeout goes into the bucket
+ * of its deadline tick together with the number of full turns still to wait,
+ * so scheduling and cancelling are O(1) and every tick only looks at one bucket.
+ * schedule and cancel may be called from any thread: they only enqueue, and the
+ * worker thread moves new and cancelled timeouts into/out of the buckets at the
+ * start of each tick. Expired tasks are handed to the given executor, so a slow
+ * task never delays the wheel.
+ */
+public final class HashedTimingWheel {
+
+    private static final int NEW = 0;
+    private static final int STARTED = 1;
+    private static final int STOPPED = 2;
+    // new timeouts moved into buckets per tick, so a burst of schedules cannot stall a tick
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor taskExecutor;
+    private final Thread worker;
+    private final AtomicInteger state = new AtomicInteger(NEW);
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+
+    private volatile long startTime; // nanoTime when the worker started, deadlines are relative to it
+    private long tick;               // worker thread only
+
+    public HashedTimingWheel(long tickDuration, TimeUnit unit, int wheelSize, Executor taskExecutor, String threadName) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick duration and wheel size must be positive.");
+        }
+        int buckets = Integer.highestOneBit(wheelSize - 1) << 1; // next power of two, for masking
+        this.wheel = new Bucket[Math.max(1, buckets)];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheel.length - 1;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.taskExecutor = taskExecutor;
+        this.worker = new Thread(this::run, threadName);
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        if (state.compareAndSet(NEW, STARTED)) {
+            startTime = System.nanoTime();
+            worker.start();
+        }
+        else if (state.get() == STOPPED) {
+            throw new IllegalStateException("Timing wheel was stopped.");
+        }
+    }
+
+    public void stop() {
+        if (state.getAndSet(STOPPED) == STARTED) {
+            worker.interrupt();
+        }
+    }
+
+    // Runs the task once the delay has passed, rounded up to the next tick
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        start();
+        long deadline = System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay));
+        Timeout timeout = new Timeout(task, deadline);
+        pendingCount.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+    // Timeouts that have neither expired nor been cancelled
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    private void run() {
+        while (state.get() == STARTED) {
+            long now = waitForNextTick();
+            if (now < 0) {
+                break;
+            }
+            Bucket bucket = wheel[(int) (tick & mask)];
+            removeCancelled();
+            transferAdded();
+            bucket.expire(now);
+            tick++;
+        }
+    }
+
+    // Sleeps until the current tick is over; the elapsed time, or -1 when stopped
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long now = System.nanoTime() - startTime;
+            long sleepMs = (deadline - now + 999_999) / 1_000_000;
+            if (sleepMs <= 0) {
+                return now;
+            }
+            try {
+                Thread.sleep(sleepMs);
+            }
+            catch (InterruptedException e) {
+                if (state.get() == STOPPED) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void transferAdded() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = added.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() != Timeout.WAITING) {
+                continue; // cancelled before it reached the wheel
+            }
+            long dueTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (dueTick - tick) / wheel.length;
+            // already overdue: expire in the current tick
+            wheel[(int) (Math.max(dueTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * Handle of one scheduled task.
+     */
+    public final class Timeout {
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline; // nanos after startTime
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        // worker thread only
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        // false if the task already ran (or is running) or was cancelled before
+        public boolean cancel() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) {
+                return false;
+            }
+            pendingCount.decrementAndGet();
+            cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (state.compareAndSet(WAITING, EXPIRED)) {
+                pendingCount.decrementAndGet();
+                taskExecutor.execute(task);
+            }
+        }
+    }
+
+    // Doubly linked list of the timeouts of one slot, only touched by the worker
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            }
+            else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void expire(long now) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= now) {
+                    remove(timeout);
+                    timeout.expire();
+                }
+                else if (timeout.isCancelled()) {
+                    remove(timeout);
+                }
+                else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            }
+            else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
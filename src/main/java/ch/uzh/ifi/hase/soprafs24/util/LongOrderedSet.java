@@ -0,0 +1,154 @@
+package ch.uzh.ifi.hase.soprafs24.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Set of primitive longs that remembers insertion order.
+ * Lookups go through an open-addressing (linear probing) table that stores
+ * positions into a dense value array, so contains/add/remove never box and
+ * only allocate when the set has to grow.
+ * Not thread-safe.
+ */
+public final class LongOrderedSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int EMPTY = -1;
+
+    private long[] values; // members in insertion order, [0, size) is used
+    private int[] slots;   // hash table of positions into values, EMPTY if free
+    private int mask;
+    private int size;
+
+    public LongOrderedSet() {
+        this(8);
+    }
+
+    public LongOrderedSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        this.values = new long[Math.max(4, expectedSize)];
+        this.slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        this.mask = capacity - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(long value) {
+        return findSlot(value) >= 0;
+    }
+
+    // Position of the value in insertion order, or -1 if absent
+    public int indexOf(long value) {
+        int slot = findSlot(value);
+        return slot < 0 ? -1 : slots[slot];
+    }
+
+    public long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new NoSuchElementException("No member at position " + index);
+        }
+        return values[index];
+    }
+
+    public boolean add(long value) {
+        int slot = findSlot(value);
+        if (slot >= 0) {
+            return false;
+        }
+        if ((size + 1) * 2 > slots.length) {
+            rehash(slots.length << 1);
+            slot = findSlot(value);
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size << 1);
+        }
+        values[size] = value;
+        slots[-slot - 1] = size;
+        size++;
+        return true;
+    }
+
+    public boolean remove(long value) {
+        int slot = findSlot(value);
+        if (slot < 0) {
+            return false;
+        }
+        int position = slots[slot];
+        deleteSlot(slot);
+        // close the gap in insertion order and fix the positions stored in the table
+        System.arraycopy(values, position + 1, values, position, size - position - 1);
+        size--;
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] > position) {
+                slots[i]--;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    // Slot holding the value, or -(insertion slot + 1) if it is absent
+    private int findSlot(long value) {
+        int i = hash(value) & mask;
+        while (slots[i] != EMPTY) {
+            if (values[slots[i]] == value) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -(i + 1);
+    }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones
+    private void deleteSlot(int slot) {
+        int gap = slot;
+        int j = slot;
+        while (true) {
+            j = (j + 1) & mask;
+            if (slots[j] == EMPTY) {
+                break;
+            }
+            int home = hash(values[slots[j]]) & mask;
+            boolean movable = gap <= j ? (home <= gap || home > j) : (home <= gap && home > j);
+            if (movable) {
+                slots[gap] = slots[j];
+                gap = j;
+            }
+        }
+        slots[gap] = EMPTY;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        mask = capacity - 1;
+        for (int position = 0; position < size; position++) {
+            int i = hash(values[position]) & mask;
+            while (slots[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = position;
+        }
+    }
+
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
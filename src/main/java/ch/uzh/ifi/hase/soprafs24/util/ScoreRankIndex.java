@@ -0,0 +1,273 @@
+package ch.uzh.ifi.hase.soprafs24.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ranking of users by score with O(log S) rank and top-N queries, where S is
+ * the number of score buckets (one per score value from 0 to maxScore).
+ *
+ * A Fenwick tree counts the users per bucket, so "how many users score more
+ * than x" is a prefix sum and the bucket holding the k-th user is found by
+ * descending the tree. The users of a bucket are kept in an intrusive doubly
+ * linked list in the order they reached the score, so moving a user to a new
+ * score is O(1) however many users share the old one. Users live in primitive
+ * arrays behind an open-addressing table (users are never removed), which keeps
+ * the index at a few dozen bytes per user plus 12 bytes per bucket.
+ *
+ * Ranks are competition ranks: users with the same score share a rank, the next
+ * score down ranks after all of them. Scores above maxScore all land in the top
+ * bucket and share its rank.
+ * Not thread-safe.
+ */
+public final class ScoreRankIndex {
+
+    public static final int MAX_BUCKETED_SCORE = (1 << 30) - 1;
+    private static final int NONE = -1;
+
+    private final long maxScore;
+    private final int bucketCount;  // power of two, for the tree descent
+    private final int[] tree;       // Fenwick tree of users per bucket, 1-based
+    private final int[] head;       // first user of each bucket, NONE if empty
+    private final int[] tail;       // last user of each bucket, NONE if empty
+
+    // users by node index, [0, size) is used
+    private long[] userIds;
+    private long[] scores;
+    private int[] next;
+    private int[] prev;
+    private int size;
+
+    private int[] table; // node indexes by hash of the user id, NONE if free
+    private int mask;
+
+    public ScoreRankIndex(int maxScore) {
+        if (maxScore < 0 || maxScore > MAX_BUCKETED_SCORE) {
+            throw new IllegalArgumentException("Max score must be between 0 and " + MAX_BUCKETED_SCORE + ".");
+        }
+        this.maxScore = maxScore;
+        this.bucketCount = Math.max(1, Integer.highestOneBit(maxScore) << 1);
+        this.tree = new int[bucketCount + 1];
+        this.head = new int[bucketCount];
+        this.tail = new int[bucketCount];
+        Arrays.fill(head, NONE);
+        Arrays.fill(tail, NONE);
+        this.userIds = new long[16];
+        this.scores = new long[16];
+        this.next = new int[16];
+        this.prev = new int[16];
+        this.table = new int[32];
+        Arrays.fill(table, NONE);
+        this.mask = table.length - 1;
+    }
+
+    // Number of ranked users
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long userId) {
+        return find(userId) != NONE;
+    }
+
+    // Score of the user, or -1 if the user is not ranked
+    public long getScore(long userId) {
+        int node = find(userId);
+        return node == NONE ? -1 : scores[node];
+    }
+
+    // Sets the user's score, adding the user if needed; negative scores count as 0
+    public void put(long userId, long score) {
+        score = Math.max(0, score);
+        int node = find(userId);
+        if (node == NONE) {
+            node = insert(userId);
+            scores[node] = score;
+            link(node, bucketOf(score));
+            update(bucketOf(score), 1);
+            return;
+        }
+        int from = bucketOf(scores[node]);
+        int to = bucketOf(score);
+        scores[node] = score;
+        if (from != to) {
+            unlink(node, from);
+            update(from, -1);
+            link(node, to);
+            update(to, 1);
+        }
+    }
+
+    // Adds points to the user's score (a new user starts at 0) and returns the new score
+    public long add(long userId, long points) {
+        int node = find(userId);
+        long score = Math.max(0, (node == NONE ? 0 : scores[node]) + points);
+        put(userId, score);
+        return score;
+    }
+
+    // 1-based rank of the user, or 0 if the user is not ranked
+    public long rank(long userId) {
+        int node = find(userId);
+        return node == NONE ? 0 : rankOfScore(scores[node]);
+    }
+
+    // The rank a user with this score has (or would have)
+    public long rankOfScore(long score) {
+        int bucket = bucketOf(Math.max(0, score));
+        return size - prefix(bucket) + 1L;
+    }
+
+    // The best limit users, best first; users with equal scores in the order they reached it
+    public List<Entry> top(int limit) {
+        List<Entry> entries = new ArrayList<>(Math.max(0, Math.min(limit, size)));
+        int taken = 0; // users in the buckets already visited
+        while (entries.size() < limit && taken < size) {
+            // the bucket holding the (size - taken)-th user from the bottom is the next non-empty one
+            int bucket = findBucket(size - taken);
+            long rank = taken + 1L;
+            for (int node = head[bucket]; node != NONE && entries.size() < limit; node = next[node]) {
+                entries.add(new Entry(userIds[node], scores[node], rank));
+            }
+            taken = size - (bucket == 0 ? 0 : prefix(bucket - 1));
+        }
+        return entries;
+    }
+
+    private int bucketOf(long score) {
+        return (int) Math.min(score, maxScore);
+    }
+
+    // Users in buckets [0, bucket]
+    private int prefix(int bucket) {
+        int count = 0;
+        for (int i = bucket + 1; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    private void update(int bucket, int delta) {
+        for (int i = bucket + 1; i <= bucketCount; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // Lowest bucket whose prefix count reaches k (1 <= k <= size)
+    private int findBucket(int k) {
+        int position = 0;
+        for (int step = bucketCount; step > 0; step >>= 1) {
+            int probe = position + step;
+            if (probe <= bucketCount && tree[probe] < k) {
+                position = probe;
+                k -= tree[probe];
+            }
+        }
+        return position; // last tree index below k, so tree index position + 1 = bucket position
+    }
+
+    private void link(int node, int bucket) {
+        next[node] = NONE;
+        prev[node] = tail[bucket];
+        if (tail[bucket] == NONE) {
+            head[bucket] = node;
+        }
+        else {
+            next[tail[bucket]] = node;
+        }
+        tail[bucket] = node;
+    }
+
+    private void unlink(int node, int bucket) {
+        if (prev[node] == NONE) {
+            head[bucket] = next[node];
+        }
+        else {
+            next[prev[node]] = next[node];
+        }
+        if (next[node] == NONE) {
+            tail[bucket] = prev[node];
+        }
+        else {
+            prev[next[node]] = prev[node];
+        }
+    }
+
+    private int find(long userId) {
+        for (int i = hash(userId) & mask; table[i] != NONE; i = (i + 1) & mask) {
+            if (userIds[table[i]] == userId) {
+                return table[i];
+            }
+        }
+        return NONE;
+    }
+
+    private int insert(long userId) {
+        if (size == userIds.length) {
+            int capacity = userIds.length * 2;
+            userIds = Arrays.copyOf(userIds, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+        }
+        int node = size++;
+        userIds[node] = userId;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        else {
+            place(node);
+        }
+        return node;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        Arrays.fill(table, NONE);
+        mask = capacity - 1;
+        for (int node = 0; node < size; node++) {
+            place(node);
+        }
+    }
+
+    private void place(int node) {
+        int i = hash(userIds[node]) & mask;
+        while (table[i] != NONE) {
+            i = (i + 1) & mask;
+        }
+        table[i] = node;
+    }
+
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * One ranked user.
+     */
+    public static final class Entry {
+        private final long userId;
+        private final long score;
+        private final long rank;
+
+        public Entry(long userId, long score, long rank) {
+            this.userId = userId;
+            this.score = score;
+            this.rank = rank;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        public long getScore() {
+            return score;
+        }
+
+        public long getRank() {
+            return rank;
+        }
+    }
+}
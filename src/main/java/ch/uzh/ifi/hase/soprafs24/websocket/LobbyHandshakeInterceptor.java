@@ -0,0 +1,95 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
+import ch.uzh.ifi.hase.soprafs24.service.LobbyService;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accepts a WebSocket handshake on /ws/lobbies/{lobbyId}/... only for a member
+ * of that lobby, identified by their user token (?token=...); player ids are public,
+ * so they cannot identify anyone. Lobby and player id are kept as session attributes.
+ */
+@Component
+public class LobbyHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String LOBBY_ID = "lobbyId";
+    public static final String PLAYER_ID = "playerId";
+    static final String TOKEN = "token";
+
+    private final LobbyService lobbyService;
+    private final UserService userService;
+
+    public LobbyHandshakeInterceptor(LobbyService lobbyService, UserService userService) {
+        this.lobbyService = lobbyService;
+        this.userService = userService;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        UriComponents uri = UriComponentsBuilder.fromUri(request.getURI()).build();
+        List<String> segments = uri.getPathSegments();
+        int lobbies = segments.indexOf("lobbies");
+        Long lobbyId = lobbies >= 0 && lobbies + 1 < segments.size() ? parse(segments.get(lobbies + 1)) : null;
+        String token = uri.getQueryParams().getFirst(TOKEN);
+        if (lobbyId == null || token == null || token.isBlank()) {
+            response.setStatusCode(HttpStatus.BAD_REQUEST);
+            return false;
+        }
+        Long playerId;
+        try {
+            User user = userService.findByToken(token);
+            playerId = user.getId();
+        }
+        catch (UserNotFoundException e) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+        try {
+            Lobby lobby = lobbyService.getLobbyById(lobbyId);
+            if (!lobby.hasPlayer(playerId)) {
+                response.setStatusCode(HttpStatus.FORBIDDEN);
+                return false;
+            }
+        }
+        catch (ResponseStatusException e) {
+            response.setStatusCode(e.getStatus());
+            return false;
+        }
+        attributes.put(LOBBY_ID, lobbyId);
+        attributes.put(PLAYER_ID, playerId);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+        // nothing to clean up
+    }
+
+    private static Long parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value);
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import ch.uzh.ifi.hase.soprafs24.service.LobbyService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Painter Cache
+ * Who may draw in a lobby: its current painter as LobbyService knows it. The
+ * painter of a lobby is looked up at most once per stroke.relay.painter-check-ms,
+ * not for every stroke frame, so a new painter can draw after at most that delay.
+ */
+@Component
+public class PainterCache {
+
+    private final Function<Long, Long> painterLookup;
+    private final long checkMs;
+    private final LongSupplier clock;
+    private final Map<Long, Painter> painters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PainterCache(LobbyService lobbyService,
+                        @Value("${stroke.relay.painter-check-ms:250}") long checkMs) {
+        this(lobbyService::getCurrentPainterId, checkMs, System::currentTimeMillis);
+    }
+
+    PainterCache(Function<Long, Long> painterLookup, long checkMs, LongSupplier clock) {
+        this.painterLookup = painterLookup;
+        this.checkMs = checkMs;
+        this.clock = clock;
+    }
+
+    public boolean isPainter(Long lobbyId, Long playerId) {
+        long now = clock.getAsLong();
+        Painter painter = painters.get(lobbyId);
+        if (painter == null || now - painter.checkedAt >= checkMs) {
+            painter = new Painter(lookup(lobbyId), now);
+            painters.put(lobbyId, painter);
+        }
+        return painter.playerId != null && Objects.equals(painter.playerId, playerId);
+    }
+
+    public void forget(Long lobbyId) {
+        painters.remove(lobbyId);
+    }
+
+    private Long lookup(Long lobbyId) {
+        try {
+            return painterLookup.apply(lobbyId);
+        }
+        catch (ResponseStatusException e) { // lobby deleted: nobody draws
+            return null;
+        }
+    }
+
+    private static final class Painter {
+        private final Long playerId;
+        private final long checkedAt;
+
+        private Painter(Long playerId, long checkedAt) {
+            this.playerId = playerId;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import java.util.Arrays;
+
+/**
+ * One piece of a drawn line as carried by a stroke frame: the points added
+ * since the last frame of the same stroke, plus colour and width.
+ * Coordinates are canvas pixels, pressure is 0..1 (null for mouse input
+ * without pressure). last marks the final piece of a stroke (pen lifted).
+ * Stroke.clear() is the "clear canvas" command and carries no points.
+ */
+public final class Stroke {
+
+    private static final Stroke CLEAR = new Stroke(0L, 0, 0f, true, new int[0], new int[0], null);
+
+    private final long strokeId;
+    private final int color;   // 0xRRGGBB
+    private final float width; // pixels
+    private final boolean last;
+    private final int[] xs;
+    private final int[] ys;
+    private final float[] pressures;
+
+    public Stroke(long strokeId, int color, float width, boolean last, int[] xs, int[] ys, float[] pressures) {
+        if (xs.length != ys.length || (pressures != null && pressures.length != xs.length)) {
+            throw new IllegalArgumentException("Stroke point arrays differ in length.");
+        }
+        this.strokeId = strokeId;
+        this.color = color & 0xFFFFFF;
+        this.width = width;
+        this.last = last;
+        this.xs = xs;
+        this.ys = ys;
+        this.pressures = pressures;
+    }
+
+    public static Stroke clear() {
+        return CLEAR;
+    }
+
+    public boolean isClear() {
+        return this == CLEAR;
+    }
+
+    public long getStrokeId() {
+        return strokeId;
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    public int getPointCount() {
+        return xs.length;
+    }
+
+    public int getX(int point) {
+        return xs[point];
+    }
+
+    public int getY(int point) {
+        return ys[point];
+    }
+
+    public boolean hasPressure() {
+        return pressures != null;
+    }
+
+    // 1 for strokes without pressure
+    public float getPressure(int point) {
+        return pressures == null ? 1f : pressures[point];
+    }
+
+    @Override
+    public String toString() {
+        return "Stroke{id=" + strokeId + ", color=" + Integer.toHexString(color) + ", width=" + width
+                + ", last=" + last + ", xs=" + Arrays.toString(xs) + ", ys=" + Arrays.toString(ys) + "}";
+    }
+}
@@ -0,0 +1,186 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stroke Codec
+ * Compact binary form of a Stroke, used as the payload of stroke frames.
+ *
+ *   [u8 version=1][u8 flags][varint strokeId]
+ *   [u8 palette index] or, with FLAG_RGB, [u24 0xRRGGBB]
+ *   [u8 width in half pixels][varint pointCount]
+ *   per point: [zigzag varint x][zigzag varint y] (first point absolute, then deltas)
+ *              [u8 pressure * 255] only with FLAG_PRESSURE
+ * A clear canvas command is just [u8 version=1][u8 FLAG_CLEAR].
+ *
+ * Consecutive points of a stroke are a few pixels apart, so most deltas fit in
+ * one byte and a point costs 2-3 bytes instead of ~40 characters of JSON.
+ * Width and pressure are quantized; decode(encode(s)) returns them rounded to
+ * the nearest half pixel and 1/255.
+ */
+public final class StrokeCodec {
+
+    static final byte VERSION = 1;
+    static final int FLAG_LAST = 1;
+    static final int FLAG_PRESSURE = 1 << 1;
+    static final int FLAG_RGB = 1 << 2;
+    static final int FLAG_CLEAR = 1 << 3;
+
+    // the colours offered by the drawing toolbar; anything else is sent as RGB
+    static final int[] PALETTE = {
+            0x000000, 0xFFFFFF, 0x7F7F7F, 0xC1C1C1,
+            0xEF130B, 0xFF7100, 0xFFE400, 0x00CC00,
+            0x00B2FF, 0x231FD3, 0xA300BA, 0xD37CAA,
+            0xA0522D, 0x592F2A, 0xECBCB4, 0x005510
+    };
+
+    private static final int MAX_VARINT_BYTES = 10;
+    private static final float WIDTH_STEPS = 2f;
+    private static final float PRESSURE_STEPS = 255f;
+
+    private StrokeCodec() {
+    }
+
+    public static byte[] encode(Stroke stroke) {
+        if (stroke.isClear()) {
+            return new byte[]{VERSION, (byte) FLAG_CLEAR};
+        }
+        int points = stroke.getPointCount();
+        // upper bound: header + per point two 32-bit varints (5 bytes each) and pressure
+        ByteBuffer out = ByteBuffer.allocate(2 + MAX_VARINT_BYTES + 3 + 1 + 5 + points * 11);
+
+        int paletteIndex = paletteIndex(stroke.getColor());
+        int flags = (stroke.isLast() ? FLAG_LAST : 0)
+                | (stroke.hasPressure() ? FLAG_PRESSURE : 0)
+                | (paletteIndex < 0 ? FLAG_RGB : 0);
+        out.put(VERSION);
+        out.put((byte) flags);
+        putVarLong(out, stroke.getStrokeId());
+        if (paletteIndex < 0) {
+            int rgb = stroke.getColor();
+            out.put((byte) (rgb >>> 16)).put((byte) (rgb >>> 8)).put((byte) rgb);
+        }
+        else {
+            out.put((byte) paletteIndex);
+        }
+        out.put((byte) quantize(stroke.getWidth() * WIDTH_STEPS));
+        putVarLong(out, points);
+
+        int previousX = 0;
+        int previousY = 0;
+        for (int i = 0; i < points; i++) {
+            int x = stroke.getX(i);
+            int y = stroke.getY(i);
+            putVarLong(out, zigzag(x - previousX));
+            putVarLong(out, zigzag(y - previousY));
+            if (stroke.hasPressure()) {
+                out.put((byte) quantize(stroke.getPressure(i) * PRESSURE_STEPS));
+            }
+            previousX = x;
+            previousY = y;
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    // Reads one stroke from the buffer's position; IllegalArgumentException if the frame is malformed
+    public static Stroke decode(ByteBuffer in) {
+        try {
+            if (in.get() != VERSION) {
+                throw new IllegalArgumentException("Unknown stroke frame version.");
+            }
+            int flags = in.get();
+            if ((flags & FLAG_CLEAR) != 0) {
+                return Stroke.clear();
+            }
+            long strokeId = getVarLong(in);
+            int color;
+            if ((flags & FLAG_RGB) != 0) {
+                color = (in.get() & 0xFF) << 16 | (in.get() & 0xFF) << 8 | (in.get() & 0xFF);
+            }
+            else {
+                int index = in.get() & 0xFF;
+                if (index >= PALETTE.length) {
+                    throw new IllegalArgumentException("Unknown palette colour " + index + ".");
+                }
+                color = PALETTE[index];
+            }
+            float width = (in.get() & 0xFF) / WIDTH_STEPS;
+            boolean withPressure = (flags & FLAG_PRESSURE) != 0;
+
+            long count = getVarLong(in);
+            // every point takes at least two bytes, so this also bounds the allocation
+            if (count < 0 || count > in.remaining() / 2) {
+                throw new IllegalArgumentException("Stroke frame claims more points than it contains.");
+            }
+            int points = (int) count;
+            int[] xs = new int[points];
+            int[] ys = new int[points];
+            float[] pressures = withPressure ? new float[points] : null;
+            int x = 0;
+            int y = 0;
+            for (int i = 0; i < points; i++) {
+                x += unzigzag(getVarLong(in));
+                y += unzigzag(getVarLong(in));
+                xs[i] = x;
+                ys[i] = y;
+                if (withPressure) {
+                    pressures[i] = (in.get() & 0xFF) / PRESSURE_STEPS;
+                }
+            }
+            return new Stroke(strokeId, color, width, (flags & FLAG_LAST) != 0, xs, ys, pressures);
+        }
+        catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Stroke frame is truncated.", e);
+        }
+    }
+
+    // Checks the header only, without decoding the frame
+    public static boolean isClear(byte[] frame) {
+        return frame.length >= 2 && frame[0] == VERSION && (frame[1] & FLAG_CLEAR) != 0;
+    }
+
+    static int paletteIndex(int rgb) {
+        for (int i = 0; i < PALETTE.length; i++) {
+            if (PALETTE[i] == rgb) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int quantize(float value) {
+        return Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    private static long zigzag(int value) {
+        return Integer.toUnsignedLong((value << 1) ^ (value >> 31));
+    }
+
+    private static int unzigzag(long value) {
+        int bits = (int) value;
+        return (bits >>> 1) ^ -(bits & 1);
+    }
+
+    // LEB128: 7 bits per byte, high bit set while more bytes follow
+    private static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 7 * MAX_VARINT_BYTES; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint in stroke frame is too long.");
+    }
+}
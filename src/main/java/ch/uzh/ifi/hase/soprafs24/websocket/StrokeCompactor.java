@@ -0,0 +1,171 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stroke Compactor
+ * Keeps the stroke logs of the relay short by drawing their older frames into
+ * a raster canvas (stroke.canvas.width x stroke.canvas.height, white background).
+ *
+ * Once a log holds stroke.log.compact-after frames, everything but the last
+ * stroke.log.keep-tail frames is painted onto the lobby's canvas on a background
+ * thread and the canvas is stored as a PNG snapshot message:
+ *   [u8 type=2][u16 width][u16 height][PNG]
+ * So a late joiner receives at most one snapshot and about compact-after frames,
+ * however long the round has been going.
+ */
+@Component
+public class StrokeCompactor {
+
+    static final byte SNAPSHOT_TYPE = 2;
+
+    private final Logger log = LoggerFactory.getLogger(StrokeCompactor.class);
+    private final int width;
+    private final int height;
+    private final int compactAfter;
+    private final int keepTail;
+    private final Executor compactPool;
+
+    @Autowired
+    public StrokeCompactor(@Value("${stroke.canvas.width:800}") int width,
+                           @Value("${stroke.canvas.height:600}") int height,
+                           @Value("${stroke.log.compact-after:256}") int compactAfter,
+                           @Value("${stroke.log.keep-tail:32}") int keepTail) {
+        this(width, height, compactAfter, keepTail, Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stroke-compact");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    StrokeCompactor(int width, int height, int compactAfter, int keepTail, Executor compactPool) {
+        this.width = width;
+        this.height = height;
+        this.keepTail = Math.max(0, keepTail);
+        this.compactAfter = Math.max(this.keepTail + 1, compactAfter);
+        this.compactPool = compactPool;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (compactPool instanceof ExecutorService) {
+            ((ExecutorService) compactPool).shutdownNow();
+        }
+    }
+
+    // Schedules a compaction of the log if its tail is long enough and none is running
+    public void compactIfNeeded(StrokeLog strokeLog) {
+        StrokeLog.Compaction compaction = strokeLog.startCompaction(compactAfter, keepTail);
+        if (compaction != null) {
+            compactPool.execute(() -> compact(strokeLog, compaction));
+        }
+    }
+
+    private void compact(StrokeLog strokeLog, StrokeLog.Compaction compaction) {
+        byte[] snapshot = null;
+        try {
+            if (strokeLog.canvas == null || strokeLog.canvasGeneration != compaction.generation) {
+                strokeLog.canvas = blankCanvas();
+                strokeLog.canvasGeneration = compaction.generation;
+                strokeLog.lastPoints.clear();
+            }
+            Graphics2D graphics = strokeLog.canvas.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                for (StrokeLog.LoggedFrame frame : compaction.frames) {
+                    draw(graphics, strokeLog, frame);
+                }
+            }
+            finally {
+                graphics.dispose();
+            }
+            snapshot = encodeSnapshot(strokeLog.canvas);
+        }
+        catch (IOException | RuntimeException e) {
+            // the tail is kept and compacted again next time
+            log.warn("Stroke log compaction failed.", e);
+            strokeLog.canvas = null;
+        }
+        finally {
+            strokeLog.finishCompaction(compaction, snapshot);
+        }
+    }
+
+    private void draw(Graphics2D graphics, StrokeLog strokeLog, StrokeLog.LoggedFrame frame) {
+        Stroke stroke;
+        try {
+            stroke = StrokeCodec.decode(ByteBuffer.wrap(frame.frame));
+        }
+        catch (IllegalArgumentException e) {
+            log.debug("Skipping malformed stroke frame of player {}: {}", frame.senderId, e.getMessage());
+            return;
+        }
+        if (stroke.getPointCount() == 0) {
+            return;
+        }
+        graphics.setColor(new Color(stroke.getColor()));
+        // a stroke that continues an earlier frame starts at that frame's last point
+        Map<Long, int[]> senderStrokes = strokeLog.lastPoints.computeIfAbsent(frame.senderId, id -> new HashMap<>());
+        int[] previous = senderStrokes.get(stroke.getStrokeId());
+        for (int i = 0; i < stroke.getPointCount(); i++) {
+            int x = stroke.getX(i);
+            int y = stroke.getY(i);
+            float lineWidth = Math.max(0.5f, stroke.getWidth() * stroke.getPressure(i));
+            if (previous == null) {
+                int size = Math.max(1, Math.round(lineWidth));
+                graphics.fillOval(x - size / 2, y - size / 2, size, size);
+            }
+            else {
+                graphics.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+                graphics.drawLine(previous[0], previous[1], x, y);
+            }
+            previous = new int[]{x, y};
+        }
+        if (stroke.isLast()) {
+            senderStrokes.remove(stroke.getStrokeId());
+        }
+        else {
+            senderStrokes.put(stroke.getStrokeId(), previous);
+        }
+    }
+
+    private BufferedImage blankCanvas() {
+        BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = canvas.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return canvas;
+    }
+
+    private byte[] encodeSnapshot(BufferedImage canvas) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(SNAPSHOT_TYPE);
+        out.write(width >>> 8);
+        out.write(width);
+        out.write(height >>> 8);
+        out.write(height);
+        ImageIO.write(canvas, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,97 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The drawing of one lobby as the relay has seen it: the latest canvas
+ * snapshot plus the stroke frames that came after it (the tail).
+ * StrokeCompactor periodically draws the older part of the tail into the
+ * canvas, so a late joiner never needs more than one snapshot and a bounded
+ * number of frames. A clear frame (StrokeCodec.FLAG_CLEAR) empties both.
+ *
+ * The snapshot/tail state is guarded by this object; the canvas fields are
+ * only used by the one compaction that may run at a time.
+ */
+final class StrokeLog {
+
+    private final List<LoggedFrame> tail = new ArrayList<>();
+    private byte[] snapshot;        // ready-to-send snapshot message, null while blank
+    private long generation = 0;    // bumped by every clear, stale compactions are dropped
+    private boolean compacting = false;
+
+    // compaction side
+    BufferedImage canvas;
+    long canvasGeneration = -1;
+    final Map<Long, Map<Long, int[]>> lastPoints = new HashMap<>(); // sender -> stroke id -> last point drawn
+
+    synchronized void append(long senderId, byte[] frame) {
+        if (StrokeCodec.isClear(frame)) {
+            tail.clear();
+            snapshot = null;
+            generation++;
+            return;
+        }
+        tail.add(new LoggedFrame(senderId, frame));
+    }
+
+    synchronized int getTailSize() {
+        return tail.size();
+    }
+
+    synchronized CatchUp catchUp() {
+        return new CatchUp(snapshot, new ArrayList<>(tail));
+    }
+
+    // Claims the next compaction if the tail is long enough; returns the frames to draw, or null
+    synchronized Compaction startCompaction(int compactAfter, int keepTail) {
+        if (compacting || tail.size() < compactAfter) {
+            return null;
+        }
+        compacting = true;
+        return new Compaction(generation, new ArrayList<>(tail.subList(0, tail.size() - keepTail)));
+    }
+
+    // Swaps the drawn frames for the new snapshot, unless the canvas was cleared meanwhile
+    synchronized void finishCompaction(Compaction compaction, byte[] newSnapshot) {
+        compacting = false;
+        if (newSnapshot != null && compaction.generation == generation) {
+            tail.subList(0, compaction.frames.size()).clear();
+            snapshot = newSnapshot;
+        }
+    }
+
+    static final class LoggedFrame {
+        final long senderId;
+        final byte[] frame;
+
+        LoggedFrame(long senderId, byte[] frame) {
+            this.senderId = senderId;
+            this.frame = frame;
+        }
+    }
+
+    static final class CatchUp {
+        final byte[] snapshot;
+        final List<LoggedFrame> tail;
+
+        CatchUp(byte[] snapshot, List<LoggedFrame> tail) {
+            this.snapshot = snapshot;
+            this.tail = Collections.unmodifiableList(tail);
+        }
+    }
+
+    static final class Compaction {
+        final long generation;
+        final List<LoggedFrame> frames;
+
+        Compaction(long generation, List<LoggedFrame> frames) {
+            this.generation = generation;
+            this.frames = frames;
+        }
+    }
+}
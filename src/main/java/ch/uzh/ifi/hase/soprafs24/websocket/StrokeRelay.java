@@ -0,0 +1,313 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stroke Relay
+ * Relays drawing strokes between the WebSocket connections of a lobby.
+ * Only the lobby's current painter draws: frames from any other member are
+ * dropped before they are logged or relayed (see PainterCache).
+ *
+ * Incoming stroke frames are not sent one by one: they are collected per sender
+ * and every tick (stroke.relay.tick-ms) each sender's frames go out as one binary
+ * batch to all other connections of the lobby:
+ *   [u8 type=1][i64 senderPlayerId][u16 frameCount] then per frame [u16 length][payload]
+ * Payloads are StrokeCodec frames; the relay passes them on without decoding.
+ *
+ * Every relayed frame is also kept in the lobby's StrokeLog. A player who
+ * connects while a drawing is in progress first gets the latest canvas snapshot
+ * (see StrokeCompactor) and the logged frames after it as batches, then the
+ * live batches.
+ *
+ * Every connection has a bounded send buffer (stroke.relay.send-buffer-bytes) and
+ * a send time limit. Messages to a connection are queued in order and sent on a
+ * small pool, so a slow client only blocks its own connection; once it falls
+ * further behind than its buffer allows, it is closed and has to reconnect
+ * instead of stalling the painter.
+ */
+@Component
+public class StrokeRelay {
+
+    static final byte BATCH_TYPE = 1;
+    private static final int MAX_U16 = 0xFFFF;
+
+    private final Logger log = LoggerFactory.getLogger(StrokeRelay.class);
+    private final long tickMs;
+    private final int maxFrameBytes;
+    private final int sendTimeLimitMs;
+    private final int sendBufferBytes;
+    private final Executor sendPool;
+    private final StrokeCompactor strokeCompactor;
+    private final PainterCache painterCache;
+
+    private final Map<Long, Room> rooms = new ConcurrentHashMap<>();
+    private final Set<Room> roomsWithStrokes = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService ticker;
+
+    @Autowired
+    public StrokeRelay(@Value("${stroke.relay.tick-ms:25}") long tickMs,
+                       @Value("${stroke.relay.max-frame-bytes:8192}") int maxFrameBytes,
+                       @Value("${stroke.relay.send-time-limit-ms:2000}") int sendTimeLimitMs,
+                       @Value("${stroke.relay.send-buffer-bytes:262144}") int sendBufferBytes,
+                       StrokeCompactor strokeCompactor,
+                       PainterCache painterCache) {
+        this(tickMs, maxFrameBytes, sendTimeLimitMs, sendBufferBytes, strokeCompactor, painterCache,
+                Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), daemon("stroke-send")));
+    }
+
+    StrokeRelay(long tickMs, int maxFrameBytes, int sendTimeLimitMs, int sendBufferBytes,
+                StrokeCompactor strokeCompactor, PainterCache painterCache, Executor sendPool) {
+        this.tickMs = tickMs;
+        this.maxFrameBytes = Math.min(maxFrameBytes, MAX_U16); // frame lengths are written as u16
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.sendBufferBytes = sendBufferBytes;
+        this.sendPool = sendPool;
+        this.strokeCompactor = strokeCompactor;
+        this.painterCache = painterCache;
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(daemon("stroke-tick"));
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                tick();
+            }
+            catch (RuntimeException e) {
+                // an exception would cancel all further ticks
+                log.error("Stroke relay tick failed.", e);
+            }
+        }, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (sendPool instanceof ExecutorService) {
+            ((ExecutorService) sendPool).shutdownNow();
+        }
+    }
+
+    public void join(Long lobbyId, Long playerId, WebSocketSession session) {
+        Connection connection = new Connection(playerId, new ConcurrentWebSocketSessionDecorator(
+                session, sendTimeLimitMs, sendBufferBytes, OverflowStrategy.TERMINATE));
+        rooms.compute(lobbyId, (id, existing) -> {
+            Room room = existing != null ? existing : new Room(id);
+            synchronized (room) {
+                // queued before any live batch can reach the new connection
+                room.connections.put(session.getId(), connection);
+                sendCatchUp(room, connection);
+            }
+            return room;
+        });
+        log.debug("Player {} connected to the stroke relay of lobby {}.", playerId, lobbyId);
+    }
+
+    public void leave(Long lobbyId, WebSocketSession session) {
+        rooms.computeIfPresent(lobbyId, (id, room) -> {
+            room.connections.remove(session.getId());
+            if (room.connections.isEmpty()) {
+                painterCache.forget(id);
+                return null;
+            }
+            return room;
+        });
+    }
+
+    public int getConnectionCount(Long lobbyId) {
+        Room room = rooms.get(lobbyId);
+        return room == null ? 0 : room.connections.size();
+    }
+
+    // Queues one stroke frame from this connection for the next tick; false if it was rejected
+    public boolean submit(Long lobbyId, WebSocketSession session, ByteBuffer frame) {
+        Room room = rooms.get(lobbyId);
+        if (room == null || frame.remaining() == 0 || frame.remaining() > maxFrameBytes) {
+            return false;
+        }
+        Connection sender = room.connections.get(session.getId());
+        if (sender == null) {
+            return false;
+        }
+        if (!painterCache.isPainter(lobbyId, sender.playerId)) {
+            log.debug("Dropping stroke frame of player {} in lobby {}: not the painter.", sender.playerId, lobbyId);
+            return false;
+        }
+        synchronized (room) {
+            PendingBatch batch = room.pending.computeIfAbsent(session.getId(), id -> new PendingBatch(sender.playerId));
+            if (batch.frames.size() >= MAX_U16) {
+                return false;
+            }
+            batch.add(frame);
+        }
+        roomsWithStrokes.add(room);
+        return true;
+    }
+
+    // One frame tick: send every room's collected frames as one batch per sender
+    void tick() {
+        for (Iterator<Room> it = roomsWithStrokes.iterator(); it.hasNext(); ) {
+            Room room = it.next();
+            it.remove();
+            synchronized (room) {
+                Map<String, PendingBatch> batches = room.pending;
+                room.pending = new HashMap<>();
+                for (Map.Entry<String, PendingBatch> batch : batches.entrySet()) {
+                    PendingBatch frames = batch.getValue();
+                    for (byte[] frame : frames.frames) {
+                        room.strokeLog.append(frames.senderId, frame);
+                    }
+                    byte[] encoded = encodeBatch(frames.senderId, frames.frames);
+                    for (Map.Entry<String, Connection> target : room.connections.entrySet()) {
+                        if (!target.getKey().equals(batch.getKey())) {
+                            // own message per target, a ByteBuffer is consumed by sending it
+                            send(room, target.getValue(), new BinaryMessage(encoded));
+                        }
+                    }
+                }
+            }
+            strokeCompactor.compactIfNeeded(room.strokeLog);
+        }
+    }
+
+    // Snapshot and logged frames for a connection that joins mid-drawing
+    private void sendCatchUp(Room room, Connection connection) {
+        StrokeLog.CatchUp catchUp = room.strokeLog.catchUp();
+        if (catchUp.snapshot != null) {
+            send(room, connection, new BinaryMessage(catchUp.snapshot));
+        }
+        // consecutive frames of the same sender share a batch, like in a tick
+        List<byte[]> run = new ArrayList<>();
+        long runSender = 0L;
+        for (StrokeLog.LoggedFrame logged : catchUp.tail) {
+            if (!run.isEmpty() && (logged.senderId != runSender || run.size() == MAX_U16)) {
+                send(room, connection, new BinaryMessage(encodeBatch(runSender, run)));
+                run = new ArrayList<>();
+            }
+            runSender = logged.senderId;
+            run.add(logged.frame);
+        }
+        if (!run.isEmpty()) {
+            send(room, connection, new BinaryMessage(encodeBatch(runSender, run)));
+        }
+    }
+
+    // Queues the message behind the connection's earlier messages
+    private void send(Room room, Connection target, BinaryMessage message) {
+        target.outbox.add(message);
+        if (target.draining.compareAndSet(false, true)) {
+            sendPool.execute(() -> drain(room, target));
+        }
+    }
+
+    private void drain(Room room, Connection target) {
+        do {
+            BinaryMessage message;
+            while ((message = target.outbox.poll()) != null) {
+                try {
+                    target.session.sendMessage(message);
+                }
+                catch (IOException | RuntimeException e) {
+                    // the decorator closes connections that exceed their buffer or time limit
+                    log.debug("Dropping stroke connection {} of lobby {}: {}", target.session.getId(), room.lobbyId, e.getMessage());
+                    room.connections.remove(target.session.getId());
+                    target.outbox.clear();
+                    closeQuietly(target.session);
+                }
+            }
+            target.draining.set(false);
+            // a message queued after the last poll but before the reset would be stuck otherwise
+        } while (!target.outbox.isEmpty() && target.draining.compareAndSet(false, true));
+    }
+
+    static byte[] encodeBatch(long senderId, List<byte[]> frames) {
+        int bytes = 0;
+        for (byte[] frame : frames) {
+            bytes += frame.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(1 + Long.BYTES + Short.BYTES + frames.size() * Short.BYTES + bytes);
+        out.put(BATCH_TYPE);
+        out.putLong(senderId);
+        out.putShort((short) frames.size());
+        for (byte[] frame : frames) {
+            out.putShort((short) frame.length);
+            out.put(frame);
+        }
+        return out.array();
+    }
+
+    private static void closeQuietly(WebSocketSession session) {
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        }
+        catch (IOException | RuntimeException ignored) {
+            // already closed
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Room {
+        private final Long lobbyId;
+        private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+        private final StrokeLog strokeLog = new StrokeLog();
+        private Map<String, PendingBatch> pending = new HashMap<>(); // guarded by the room
+
+        private Room(Long lobbyId) {
+            this.lobbyId = lobbyId;
+        }
+    }
+
+    private static final class Connection {
+        private final Long playerId;
+        private final WebSocketSession session;
+        private final Queue<BinaryMessage> outbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Connection(Long playerId, WebSocketSession session) {
+            this.playerId = playerId;
+            this.session = session;
+        }
+    }
+
+    // Frames of one sender collected during the current tick
+    private static final class PendingBatch {
+        private final long senderId;
+        private final List<byte[]> frames = new ArrayList<>();
+
+        private PendingBatch(Long senderId) {
+            this.senderId = senderId == null ? 0L : senderId;
+        }
+
+        private void add(ByteBuffer frame) {
+            byte[] copy = new byte[frame.remaining()];
+            frame.get(copy);
+            frames.add(copy);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+
+/**
+ * WebSocket endpoint /ws/lobbies/{lobbyId}/strokes?token=...
+ * Binary frames from a member are stroke frames and relayed to the rest of the lobby (see StrokeRelay).
+ * Lobby and player are checked and stored on the session by LobbyHandshakeInterceptor.
+ */
+@Component
+public class StrokeRelayHandler extends BinaryWebSocketHandler {
+
+    private final StrokeRelay strokeRelay;
+
+    public StrokeRelayHandler(StrokeRelay strokeRelay) {
+        this.strokeRelay = strokeRelay;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        strokeRelay.join(lobbyId(session), playerId(session), session);
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        strokeRelay.submit(lobbyId(session), session, message.getPayload());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        strokeRelay.leave(lobbyId(session), session);
+    }
+
+    private static Long lobbyId(WebSocketSession session) {
+        return (Long) session.getAttributes().get(LobbyHandshakeInterceptor.LOBBY_ID);
+    }
+
+    private static Long playerId(WebSocketSession session) {
+        return (Long) session.getAttributes().get(LobbyHandshakeInterceptor.PLAYER_ID);
+    }
+}
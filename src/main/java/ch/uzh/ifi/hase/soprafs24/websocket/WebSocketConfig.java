@@ -0,0 +1,40 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final StrokeRelayHandler strokeRelayHandler;
+    private final LobbyHandshakeInterceptor lobbyHandshakeInterceptor;
+    private final int maxFrameBytes;
+
+    public WebSocketConfig(StrokeRelayHandler strokeRelayHandler, LobbyHandshakeInterceptor lobbyHandshakeInterceptor,
+                           @Value("${stroke.relay.max-frame-bytes:8192}") int maxFrameBytes) {
+        this.strokeRelayHandler = strokeRelayHandler;
+        this.lobbyHandshakeInterceptor = lobbyHandshakeInterceptor;
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(strokeRelayHandler, "/ws/lobbies/{lobbyId}/strokes")
+                .addInterceptors(lobbyHandshakeInterceptor)
+                .setAllowedOrigins("*");
+    }
+
+    // Frames above this size are refused by the container before they reach the relay
+    @Bean
+    public ServletServerContainerFactoryBean webSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxBinaryMessageBufferSize(maxFrameBytes);
+        return container;
+    }
+}
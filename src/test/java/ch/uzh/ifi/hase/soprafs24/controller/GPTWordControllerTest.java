@@ -7,14 +7,18 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
+import reactor.core.publisher.Mono;
+
 import java.util.List;
 
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -32,8 +36,8 @@ public class GPTWordControllerTest {
     public void getWords_validInput_returnsWordList() throws Exception {
         // given
         List<String> sampleWords = List.of("apple", "banana", "grape");
-        given(chatGPTService.nextWords(anyString(), eq("en"), eq("nouns"), eq(3)))
-                .willReturn(sampleWords);
+        given(chatGPTService.nextWordsAsync(anyString(), eq("en"), eq("nouns"), eq(3)))
+                .willReturn(Mono.just(sampleWords));
 
         // when
         MockHttpServletRequestBuilder getRequest = get("/api/words/gpt")
@@ -43,7 +47,10 @@ public class GPTWordControllerTest {
                 .contentType(MediaType.APPLICATION_JSON);
 
         // then
-        mockMvc.perform(getRequest)
+        MvcResult result = mockMvc.perform(getRequest)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", containsInAnyOrder("apple", "banana", "grape")));
     }
@@ -52,8 +59,8 @@ public class GPTWordControllerTest {
     @Test
     public void getWords_chatGPTFails_returnsFallbackWords() throws Exception {
         // given
-        given(chatGPTService.nextWords(anyString(), eq("de"), eq("nouns"), eq(3)))
-                .willReturn(List.of("Error", "when", "requesting", "words"));
+        given(chatGPTService.nextWordsAsync(anyString(), eq("de"), eq("nouns"), eq(3)))
+                .willReturn(Mono.just(List.of("Error", "when", "requesting", "words")));
 
         // when
         MockHttpServletRequestBuilder getRequest = get("/api/words/gpt")
@@ -63,7 +70,10 @@ public class GPTWordControllerTest {
                 .contentType(MediaType.APPLICATION_JSON);
 
         // then
-        mockMvc.perform(getRequest)
+        MvcResult result = mockMvc.perform(getRequest)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", containsInAnyOrder("Error", "when", "requesting", "words")));
     }
@@ -85,8 +95,8 @@ public class GPTWordControllerTest {
     @Test
     public void getWords_missingAPIKey_returnsErrorWords() throws Exception {
         // given
-        given(chatGPTService.nextWords(anyString(), eq("en"), eq("nouns"), eq(3)))
-                .willReturn(List.of("Error", "when", "requesting", "words"));
+        given(chatGPTService.nextWordsAsync(anyString(), eq("en"), eq("nouns"), eq(3)))
+                .willReturn(Mono.just(List.of("Error", "when", "requesting", "words")));
 
         // when
         MockHttpServletRequestBuilder getRequest = get("/api/words/gpt")
@@ -96,7 +106,10 @@ public class GPTWordControllerTest {
                 .contentType(MediaType.APPLICATION_JSON);
 
         // then
-        mockMvc.perform(getRequest)
+        MvcResult result = mockMvc.perform(getRequest)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", containsInAnyOrder("Error", "when", "requesting", "words")));
     }
@@ -114,11 +127,31 @@ public class GPTWordControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    // test: a count above the corpus size is clamped to it
+    @Test
+    public void getWords_hugeCount_isClampedToCorpusSize() throws Exception {
+        given(chatGPTService.nextWordsAsync(anyString(), eq("en"), eq("verbs"), eq(2000)))
+                .willReturn(Mono.just(List.of("run")));
+
+        MockHttpServletRequestBuilder getRequest = get("/api/words/gpt")
+                .param("lang", "en")
+                .param("type", "verbs")
+                .param("count", String.valueOf(Integer.MAX_VALUE))
+                .contentType(MediaType.APPLICATION_JSON);
+
+        MvcResult result = mockMvc.perform(getRequest)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", containsInAnyOrder("run")));
+    }
+
     // test: zero count returns empty list
     @Test
     public void getWords_zeroCount_returnsEmptyList() throws Exception {
-        given(chatGPTService.nextWords(anyString(), eq("en"), eq("verbs"), eq(0)))
-                .willReturn(List.of());
+        given(chatGPTService.nextWordsAsync(anyString(), eq("en"), eq("verbs"), eq(0)))
+                .willReturn(Mono.just(List.of()));
 
         MockHttpServletRequestBuilder getRequest = get("/api/words/gpt")
                 .param("lang", "en")
@@ -126,7 +159,10 @@ public class GPTWordControllerTest {
                 .param("count", "0")
                 .contentType(MediaType.APPLICATION_JSON);
 
-        mockMvc.perform(getRequest)
+        MvcResult result = mockMvc.perform(getRequest)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", containsInAnyOrder()));
     }
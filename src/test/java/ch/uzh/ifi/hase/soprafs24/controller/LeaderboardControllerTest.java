@@ -0,0 +1,55 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.service.ScoreService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * LeaderboardControllerTest
+ * WebMvcTest of the leaderboard endpoints with a mocked ScoreService.
+ */
+@WebMvcTest(LeaderboardController.class)
+public class LeaderboardControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ScoreService scoreService;
+
+    @Test
+    public void getLeaderboard_returnsStandingsInOrder() throws Exception {
+        given(scoreService.getTopPlayers(2)).willReturn(List.of(
+                new ScoreService.Standing(2L, "bob", 900, 1),
+                new ScoreService.Standing(1L, "ann", 400, 2)));
+
+        mockMvc.perform(get("/leaderboard").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].username", is("bob")))
+                .andExpect(jsonPath("$[0].score", is(900)))
+                .andExpect(jsonPath("$[1].rank", is(2)));
+    }
+
+    @Test
+    public void getStanding_unknownUser_returnsNotFound() throws Exception {
+        given(scoreService.getStanding(99L)).willThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "User with ID 99 not found."));
+
+        mockMvc.perform(get("/leaderboard/{userId}", 99L))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -1,8 +1,12 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.GuessPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.LobbyPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.LobbyPutDTO;
+import ch.uzh.ifi.hase.soprafs24.service.GuessEvaluator;
+import ch.uzh.ifi.hase.soprafs24.service.LobbyBrowserSnapshot;
 import ch.uzh.ifi.hase.soprafs24.service.LobbyService;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
@@ -12,12 +16,17 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.web.server.ResponseStatusException;
 
+import reactor.core.publisher.Flux;
+
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -25,6 +34,9 @@ import static org.mockito.Mockito.verify;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -44,6 +56,9 @@ public class LobbyControllerTest {
     @MockBean
     private LobbyService lobbyService;
 
+    @MockBean
+    private UserService userService;
+
     // Test for GET /lobbies
     @Test
     public void givenLobbies_whenGetLobbies_thenReturnJsonArray() throws Exception {
@@ -57,8 +72,9 @@ public class LobbyControllerTest {
         lobby.setNumOfRounds(3L);
         lobby.setDrawTime(80);
 
-        List<Lobby> allLobbies = Arrays.asList(lobby);
-        given(lobbyService.getLobbies()).willReturn(allLobbies);
+        LobbyBrowserSnapshot snapshot = new LobbyBrowserSnapshot(new ObjectMapper(), userService);
+        snapshot.update(lobby);
+        given(lobbyService.getLobbyBrowserSnapshot()).willReturn(snapshot.current());
 
         //when
         MockHttpServletRequestBuilder getRequest = get("/lobbies").contentType(MediaType.APPLICATION_JSON);
@@ -76,6 +92,81 @@ public class LobbyControllerTest {
                 .andExpect(jsonPath("$[0].drawTime", is(lobby.getDrawTime())));
     }
 
+    // Test for GET /lobbies --> unchanged snapshot answers 304 without a body
+    @Test
+    public void getLobbies_matchingETag_notModified() throws Exception {
+        LobbyBrowserSnapshot.View view = new LobbyBrowserSnapshot.View("abc-3", 3L, "[]".getBytes());
+        given(lobbyService.getLobbyBrowserSnapshot()).willReturn(view);
+
+        mockMvc.perform(get("/lobbies")).andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"abc-3\""))
+                .andExpect(content().json("[]"));
+
+        mockMvc.perform(get("/lobbies").header("If-None-Match", "\"abc-3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        mockMvc.perform(get("/lobbies").header("If-None-Match", "\"abc-2\""))
+                .andExpect(status().isOk());
+    }
+
+    // Test for GET /lobbies/{id}/stream --> lobby events as server-sent events
+    @Test
+    public void streamLobby_returnsEventStream() throws Exception {
+        ServerSentEvent<String> event = ServerSentEvent.<String>builder()
+                .event("lobby").id("0").data("{\"id\":123456}").build();
+        given(lobbyService.streamLobby(123456L)).willReturn(Flux.just(event));
+
+        MvcResult result = mockMvc.perform(get("/lobbies/123456/stream").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(content().string(containsString("event:lobby")))
+                .andExpect(content().string(containsString("data:{\"id\":123456}")));
+    }
+
+    // Test for GET /lobbies/page --> full page returns a cursor
+    @Test
+    public void getLobbyPage_fullPage_returnsNextCursor() throws Exception {
+        Lobby first = new Lobby();
+        first.setId(100001L);
+        first.setPlayerIds(Arrays.asList(1L));
+        Lobby second = new Lobby();
+        second.setId(100005L);
+        second.setPlayerIds(Arrays.asList(2L));
+
+        given(lobbyService.getLobbyPage(100000L, 2, 0, "english", null, true)).willReturn(Arrays.asList(first, second));
+
+        MockHttpServletRequestBuilder getRequest = get("/lobbies/page")
+                .param("cursor", "100000")
+                .param("limit", "2")
+                .param("status", "0")
+                .param("language", "english")
+                .param("hasFreeSlots", "true");
+
+        mockMvc.perform(getRequest).andExpect(status().isOk())
+                .andExpect(jsonPath("$.lobbies", hasSize(2)))
+                .andExpect(jsonPath("$.lobbies[1].id", is(100005)))
+                .andExpect(jsonPath("$.nextCursor", is(100005)));
+    }
+
+    // Test for GET /lobbies/page --> short page is the last one
+    @Test
+    public void getLobbyPage_lastPage_noCursor() throws Exception {
+        Lobby lobby = new Lobby();
+        lobby.setId(100001L);
+        lobby.setPlayerIds(Arrays.asList(1L));
+
+        given(lobbyService.getLobbyPage(null, 20, null, null, null, false)).willReturn(Arrays.asList(lobby));
+
+        mockMvc.perform(get("/lobbies/page")).andExpect(status().isOk())
+                .andExpect(jsonPath("$.lobbies", hasSize(1)))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
     // Test for POST /lobbies --> 201 Created status
     @Test
     public void createLobby_validInput_lobbyCreated() throws Exception {
@@ -275,6 +366,28 @@ public class LobbyControllerTest {
                 .andExpect(jsonPath("$.playerIds", hasSize(1)));
     }
 
+    @Test
+    public void selectNextPainter_passesCurrentPainter() throws Exception {
+        Lobby lobby = new Lobby();
+        lobby.setId(123456L);
+        lobby.setPlayerIds(Arrays.asList(1L, 2L));
+        lobby.markPainter(0);
+        lobby.markPainter(1);
+        lobby.setCurrentPainterToken("token2");
+
+        given(lobbyService.selectNextPainter(123456L, "token1")).willReturn(lobby);
+        given(userService.getTokensByIds(List.of(1L, 2L))).willReturn(Map.of(1L, "token1", 2L, "token2"));
+
+        MockHttpServletRequestBuilder postRequest = post("/lobbies/123456/nextPainter")
+                .param("currentPainterToken", "token1");
+
+        mockMvc.perform(postRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.currentPainterToken", is("token2")))
+                .andExpect(jsonPath("$.painterHistoryPlayerIds", contains(1, 2)))
+                .andExpect(jsonPath("$.painterHistoryTokens", contains("token1", "token2")));
+    }
+
     @Test
     public void updateLobby_onlyLanguageAndType_success() throws Exception {
         // given
@@ -358,6 +471,23 @@ public void leaveLobby_lastPlayer_lobbyDeleted() throws Exception {
 }
 
 
+    @Test
+    public void guess_closeGuess_returnsResult() throws Exception {
+        GuessPostDTO guessPostDTO = new GuessPostDTO();
+        guessPostDTO.setPlayerId(2L);
+        guessPostDTO.setGuess("elefent");
+
+        given(lobbyService.evaluateGuess(123456L, 2L, "elefent")).willReturn(GuessEvaluator.Result.CLOSE);
+
+        MockHttpServletRequestBuilder postRequest = post("/lobbies/{lobbyId}/guess", 123456L)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(guessPostDTO));
+
+        mockMvc.perform(postRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.result", is("CLOSE")));
+    }
+
 
 
 
@@ -0,0 +1,119 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.service.LobbyPlayerMigration;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DataJpaTest
+public class LobbyRepositoryIntegrationTest {
+
+  @Autowired
+  private TestEntityManager entityManager;
+
+  @Autowired
+  private LobbyRepository lobbyRepository;
+
+  private Lobby persistLobby(Long id, List<Long> playerIds) {
+    Lobby lobby = new Lobby();
+    lobby.setId(id);
+    lobby.setLobbyOwner(playerIds.isEmpty() ? 1L : playerIds.get(0));
+    lobby.setNumOfMaxPlayers(8L);
+    lobby.setPlayerIds(playerIds);
+    lobby.setLanguage("en");
+    lobby.setNumOfRounds(3L);
+    lobby.setDrawTime(80);
+    entityManager.persist(lobby);
+    entityManager.flush();
+    entityManager.clear();
+    return lobby;
+  }
+
+  @Test
+  public void playerIds_keepJoinOrder() {
+    persistLobby(100001L, List.of(5L, 3L, 9L));
+
+    Lobby found = lobbyRepository.findById(100001L).orElseThrow();
+
+    assertEquals(List.of(5L, 3L, 9L), found.getPlayerIds());
+  }
+
+  @Test
+  public void legacyCsvPlayerIds_areMigrated() {
+    persistLobby(100002L, List.of());
+    entityManager.getEntityManager()
+        .createNativeQuery("UPDATE LOBBY SET player_ids = '7,8' WHERE id = 100002")
+        .executeUpdate();
+    entityManager.clear();
+
+    new LobbyPlayerMigration(lobbyRepository).migrate();
+    entityManager.clear();
+
+    Lobby found = lobbyRepository.findById(100002L).orElseThrow();
+    assertEquals(List.of(7L, 8L), found.getPlayerIds());
+    assertEquals(0, lobbyRepository.findByLegacyPlayerIdsNot("").size());
+  }
+
+  @Test
+  public void staleLobby_isRejectedInsteadOfOverwriting() {
+    persistLobby(100003L, List.of(1L));
+    Lobby stale = lobbyRepository.findById(100003L).orElseThrow();
+    entityManager.detach(stale);
+
+    Lobby current = lobbyRepository.findById(100003L).orElseThrow();
+    current.addPlayerId(2L);
+    lobbyRepository.saveAndFlush(current);
+    entityManager.clear();
+
+    stale.addPlayerId(3L);
+    assertThrows(ObjectOptimisticLockingFailureException.class, () -> lobbyRepository.saveAndFlush(stale));
+  }
+
+  private List<Long> ids(List<Lobby> lobbies) {
+    return lobbies.stream().map(Lobby::getId).collect(Collectors.toList());
+  }
+
+  @Test
+  public void findPage_keysetPagesInIdOrder() {
+    persistLobby(100030L, List.of(1L));
+    persistLobby(100010L, List.of(2L));
+    persistLobby(100020L, List.of(3L));
+
+    List<Lobby> first = lobbyRepository.findPage(0L, null, null, null, false, PageRequest.of(0, 2));
+    List<Lobby> second = lobbyRepository.findPage(100020L, null, null, null, false, PageRequest.of(0, 2));
+
+    assertEquals(List.of(100010L, 100020L), ids(first));
+    assertEquals(List.of(100030L), ids(second));
+  }
+
+  @Test
+  public void findPage_appliesFilters() {
+    persistLobby(100040L, List.of(1L, 2L));
+    entityManager.getEntityManager()
+        .createQuery("UPDATE Lobby l SET l.numOfMaxPlayers = 2 WHERE l.id = 100040")
+        .executeUpdate();
+    persistLobby(100041L, List.of(3L));
+    persistLobby(100042L, List.of(4L));
+    entityManager.getEntityManager()
+        .createQuery("UPDATE Lobby l SET l.language = 'german', l.status = 1 WHERE l.id = 100042")
+        .executeUpdate();
+    entityManager.clear();
+
+    assertEquals(List.of(100041L, 100042L),
+        ids(lobbyRepository.findPage(0L, null, null, null, true, PageRequest.of(0, 10))));
+    assertEquals(List.of(100042L),
+        ids(lobbyRepository.findPage(0L, 1, "german", "anything", false, PageRequest.of(0, 10))));
+    assertEquals(List.of(100040L, 100041L),
+        ids(lobbyRepository.findPage(0L, 0, "en", null, false, PageRequest.of(0, 10))));
+  }
+}
@@ -6,6 +6,9 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -40,4 +43,44 @@ public class UserRepositoryIntegrationTest {
     assertEquals(found.getToken(), user.getToken());
     assertEquals(found.getStatus(), user.getStatus());
   }
+
+  @Test
+  public void findTokensByIdIn_returnsOnlyExistingUsers() {
+    User user = new User();
+    user.setUsername("painter");
+    user.setStatus(UserStatus.OFFLINE);
+    user.setToken("painter-token");
+    entityManager.persist(user);
+    entityManager.flush();
+
+    List<UserTokenView> views = userRepository.findTokensByIdIn(List.of(user.getId(), -1L));
+
+    assertEquals(1, views.size());
+    assertEquals(user.getId(), views.get(0).getId());
+    assertEquals("painter-token", views.get(0).getToken());
+  }
+
+  @Test
+  public void addToTotalScore_addsPointsAndPagesScoresById() {
+    User first = new User();
+    first.setUsername("first");
+    first.setStatus(UserStatus.OFFLINE);
+    first.setToken("first-token");
+    User second = new User();
+    second.setUsername("second");
+    second.setStatus(UserStatus.OFFLINE);
+    second.setToken("second-token");
+    entityManager.persist(first);
+    entityManager.persist(second);
+    entityManager.flush();
+
+    assertEquals(1, userRepository.addToTotalScore(second.getId(), 120L));
+    assertEquals(0, userRepository.addToTotalScore(-1L, 120L));
+    assertEquals(120L, userRepository.findTotalScoreById(second.getId()));
+
+    List<UserScoreView> page = userRepository.findScoresAfter(first.getId(), PageRequest.of(0, 10));
+    assertEquals(1, page.size());
+    assertEquals(second.getId(), page.get(0).getId());
+    assertEquals(120L, page.get(0).getTotalScore());
+  }
 }
@@ -2,37 +2,74 @@ package ch.uzh.ifi.hase.soprafs24.service;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.mock.web.MockHttpSession;
+
+import javax.servlet.http.HttpSessionEvent;
 
 /**
  * nightmare unit tests for {@link ChatGPTService}.
  *
  * The real OpenAI endpoint is not contacted. When a call fails (very
- * likely in CI), the service falls back to the hard‑coded list
- * ["apple", "dog", "house"], which is adequate for validating pool
- * behaviour. These tests therefore do not rely on network access.
+ * likely in CI), the service falls back to the bundled offline word bank,
+ * which is adequate for validating pool behaviour. These tests therefore do
+ * not rely on network access.
  */
 class ChatGPTServiceTest {
 
+    private OpenAiClient openAiClient;
     private ChatGPTService service;
+    private HttpServer stub;
+    private final AtomicInteger stubRequests = new AtomicInteger();
+    private volatile CountDownLatch stubGate = new CountDownLatch(0);
+    private volatile int stubStatus = 200;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private WordStore wordStore = new WordStore("", 30);
+
+    @TempDir
+    Path storeDir;
 
     @BeforeEach
     void init() {
         // Guarantee that the constructor does not throw, even on hosts where
         // OPENAI_API_KEY is unset.
         ensureEnv("OPENAI_API_KEY", "dummy-key");
-        service = new ChatGPTService();
+        openAiClient = new OpenAiClient();
+        service = new ChatGPTService(openAiClient);
+    }
+
+    @AfterEach
+    void tearDown() {
+        openAiClient.stop();
+        wordStore.stop();
+        if (stub != null) {
+            stub.stop(0);
+        }
     }
 
 
@@ -112,6 +149,195 @@ class ChatGPTServiceTest {
     }
 
 
+    // Background refills (against a local stub of the completions endpoint)
+
+    @Test
+    @DisplayName("Concurrent callers on a cold pool share a single upstream call")
+    void coldPoolSingleFlight() throws Exception {
+        service = stubbedService(5, 50);
+        stubGate = new CountDownLatch(1);
+        ExecutorService exec = Executors.newFixedThreadPool(20);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(exec.submit(() -> service.nextWords("cold", "en", "animals", 2)));
+        }
+        Thread.sleep(200);
+        stubGate.countDown();
+
+        Set<String> served = new HashSet<>();
+        for (Future<List<String>> future : futures) {
+            served.addAll(future.get(5, TimeUnit.SECONDS));
+        }
+        exec.shutdown();
+        assertEquals(40, served.size(), "every caller got its own stub words");
+        assertEquals(1, stubRequests.get());
+    }
+
+    @Test
+    @DisplayName("Dropping below the low-water mark refills without blocking the caller")
+    void lowWaterRefillsInBackground() throws Exception {
+        service = stubbedService(5, 10);
+        assertEquals(4, service.nextWords("warm", "en", "animals", 4).size()); // 6 left
+        assertEquals(1, stubRequests.get());
+
+        stubGate = new CountDownLatch(1); // upstream hangs from now on
+        long start = System.nanoTime();
+        assertEquals(2, service.nextWords("warm", "en", "animals", 2).size()); // 4 left, refill starts
+        assertEquals(2, service.nextWords("warm", "en", "animals", 2).size());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000, "callers did not wait for the refill");
+
+        stubGate.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stubRequests.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, stubRequests.get(), "one refill for both callers");
+    }
+
+    @Test
+    @DisplayName("Sessions share one corpus per language and category")
+    void sessionsShareCorpus() throws Exception {
+        service = stubbedService(0, 30);
+
+        List<String> first = service.nextWords("s1", "en", "animals", 10);
+        List<String> second = service.nextWords("s2", "EN", " Animals", 10);
+        service.nextWords("s3", "de", "animals", 1);
+
+        assertEquals(10, first.size());
+        assertEquals(10, second.size());
+        assertEquals(2, stubRequests.get(), "one call per (lang, type), not per session");
+        assertEquals(2, service.getCorpusCount());
+    }
+
+    @Test
+    @DisplayName("A session is not served the same word twice until the corpus is exhausted")
+    void sessionSeesEachWordOnce() throws Exception {
+        service = stubbedService(0, 12, 12);
+
+        Set<String> served = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            served.addAll(service.nextWords("s1", "en", "food", 3));
+        }
+        assertEquals(12, served.size());
+
+        // corpus is full and seen: the session starts over instead of calling OpenAI again
+        assertEquals(3, service.nextWords("s1", "en", "food", 3).size());
+        assertTrue(served.containsAll(service.nextWords("s1", "en", "food", 3)));
+        assertEquals(1, stubRequests.get());
+    }
+
+    @Test
+    @DisplayName("A caller waiting for a refill does not hold its thread")
+    void asyncWaitReleasesThread() throws Exception {
+        service = stubbedService(0, 10);
+        stubGate = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        CompletableFuture<List<String>> words = service.nextWordsAsync("s1", "en", "animals", 3).toFuture();
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000, "returned before the refill");
+        assertFalse(words.isDone());
+
+        stubGate.countDown();
+        assertEquals(3, words.get(5, TimeUnit.SECONDS).size());
+        assertEquals(1, stubRequests.get());
+    }
+
+    // Upstream outages
+
+    @Test
+    @DisplayName("An open circuit breaker serves offline words without calling or waiting for OpenAI")
+    void outageServesOfflineWords() throws Exception {
+        service = stubbedService(0, 10);
+        stubStatus = 503;
+        Set<String> offlineAnimals = new HashSet<>(new OfflineWordBank().draw("en", "animals", 1000, Set.of()));
+
+        // the cold refill and the follow-up refill fail: the second failure trips the breaker
+        assertEquals(3, service.nextWords("s1", "en", "animals", 3).size());
+        assertEquals(3, service.nextWords("s2", "en", "animals", 3).size());
+        assertEquals(2, stubRequests.get());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            List<String> words = service.nextWords("s" + i, "en", "animals", 3);
+            assertEquals(3, words.size());
+            assertTrue(offlineAnimals.containsAll(words), words.toString());
+        }
+        long perRequestMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / 1000;
+        assertTrue(perRequestMicros < 1000, "served in " + perRequestMicros + " µs");
+        assertEquals(2, stubRequests.get(), "no upstream calls while the breaker is open");
+    }
+
+    @Test
+    @DisplayName("After the open time one probe refill closes the breaker again")
+    void breakerRecoversAfterOpenTime() throws Exception {
+        service = stubbedService(0, 10, 2000, 200L);
+        stubStatus = 503;
+        service.nextWords("s1", "en", "animals", 3);
+        service.nextWords("s1", "en", "animals", 3);
+        assertFalse(openAiClient.isAvailable());
+
+        stubStatus = 200;
+        Thread.sleep(250);
+        List<String> words = service.nextWords("s1", "en", "animals", 3);
+
+        assertEquals(3, stubRequests.get());
+        assertTrue(openAiClient.isAvailable());
+        assertTrue(words.stream().allMatch(word -> word.startsWith("w3-")), words.toString());
+    }
+
+    // Word store
+
+    @Test
+    @DisplayName("A restarted service warms its corpora from the word store instead of calling OpenAI")
+    void restartWarmsFromStore() throws Exception {
+        String url = "jdbc:h2:file:" + storeDir.resolve("words").toAbsolutePath();
+        wordStore = new WordStore(url, 30);
+        service = stubbedService(0, 10, 10); // a full corpus, so no refill after the first
+        Set<String> fetched = new HashSet<>(service.nextWords("s1", "en", "animals", 10));
+        assertEquals(1, stubRequests.get());
+
+        wordStore.stop(); // restart: waits for pending writes
+        wordStore = new WordStore(url, 30);
+        service = stubbedService(0, 10, 10);
+        service.warmUp();
+
+        assertEquals(fetched, new HashSet<>(service.nextWords("s2", " EN", "Animals", 10)));
+        assertEquals(1, stubRequests.get(), "served from the store");
+        assertEquals(10, wordStore.size());
+    }
+
+    // Bounded caches
+
+    @Test
+    @DisplayName("A destroyed HTTP session takes its cursors with it")
+    void destroyedSessionIsForgotten() throws Exception {
+        service = stubbedService(0, 10);
+        service.nextWords("s1", "en", "animals", 5);
+        service.nextWords("s2", "en", "animals", 5);
+        assertEquals(2, service.getSessionCount());
+
+        service.sessionDestroyed(new HttpSessionEvent(new MockHttpSession(null, "s1")));
+
+        assertEquals(1, service.getSessionCount());
+        // s1 starts with a fresh cursor, so it may be served words it saw before
+        assertEquals(5, service.nextWords("s1", "en", "animals", 5).size());
+    }
+
+    @Test
+    @DisplayName("Sessions and corpora beyond their limits are evicted and counted")
+    void cachesAreBounded() throws Exception {
+        service = stubbedService(0, 10);
+        for (int i = 0; i < 10; i++) {
+            service.nextWords("session-" + i, "en", "category-" + i, 1);
+        }
+
+        assertTrue(service.getSessionCount() <= 2);
+        assertTrue(service.getCorpusCount() <= 2);
+        assertTrue(meterRegistry.get("cache.evictions").tag("cache", "words.sessions").functionCounter().count() >= 8);
+        assertEquals(10, meterRegistry.get("cache.gets").tag("cache", "words.corpora").tag("result", "miss")
+                .functionCounter().count());
+    }
+
     // Fallback and edge cases
 
 
@@ -136,6 +362,55 @@ class ChatGPTServiceTest {
 
     // Helpers
 
+    /**
+     * Service against a local completions stub that answers every request with
+     * refillSize fresh words, once stubGate is open.
+     */
+    private ChatGPTService stubbedService(int lowWater, int refillSize) throws IOException {
+        return stubbedService(lowWater, refillSize, 2000);
+    }
+
+    private ChatGPTService stubbedService(int lowWater, int refillSize, int maxCorpusSize) throws IOException {
+        return stubbedService(lowWater, refillSize, maxCorpusSize, 60_000L);
+    }
+
+    /**
+     * The stub answers with stubStatus; two failed calls in a row open the
+     * circuit breaker for breakerOpenMs.
+     */
+    private ChatGPTService stubbedService(int lowWater, int refillSize, int maxCorpusSize, long breakerOpenMs) throws IOException {
+        if (stub != null) {
+            stub.stop(0);
+        }
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newCachedThreadPool());
+        stub.createContext("/", exchange -> {
+            int request = stubRequests.incrementAndGet();
+            try {
+                stubGate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<String> words = new ArrayList<>();
+            for (int i = 0; i < refillSize; i++) {
+                words.add("\\\"w" + request + "-" + i + "\\\"");
+            }
+            byte[] body = ("{\"choices\":[{\"message\":{\"content\":\"" + words + "\"}}]}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(stubStatus, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        stub.start();
+        openAiClient.stop();
+        openAiClient = new OpenAiClient("http://127.0.0.1:" + stub.getAddress().getPort() + "/",
+                4, 5_000L, 0, 10L, 10L, 2, 5_000L, breakerOpenMs);
+        return new ChatGPTService(openAiClient, new WordRequestCoalescer(openAiClient, 10L, 5), new OfflineWordBank(),
+                wordStore, lowWater, refillSize, 5_000L, maxCorpusSize, 2, 2, 30L, meterRegistry);
+    }
+
     /**
      * Adds an environment variable if it is absent. Uses reflection because
      * {@code System.getenv()} is unmodifiable in most JVMs.
@@ -0,0 +1,109 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.Test;
+
+import static ch.uzh.ifi.hase.soprafs24.service.GuessEvaluator.Result.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GuessEvaluatorTest {
+
+    private final GuessEvaluator evaluator = new GuessEvaluator();
+
+    @Test
+    public void evaluate_caseSpacingAndPunctuation_areIgnored() {
+        evaluator.prepare(1L, "Ice Cream", "en");
+
+        assertEquals(CORRECT, evaluator.evaluate(1L, "Ice Cream", "en", "ice-cream"));
+        assertEquals(CORRECT, evaluator.evaluate(1L, "Ice Cream", "en", "  ICECREAM!"));
+    }
+
+    @Test
+    public void evaluate_diacritics_areStripped() {
+        assertEquals(CORRECT, evaluator.evaluate(1L, "Café", "en", "cafe"));
+        assertEquals(CORRECT, evaluator.evaluate(1L, "Crème brûlée", "en", "creme brulee"));
+        assertEquals(CORRECT, evaluator.evaluate(1L, "Straße", "de", "strasse"));
+    }
+
+    @Test
+    public void evaluate_germanUmlauts_acceptedWrittenOut() {
+        evaluator.prepare(1L, "Müesli", "ch");
+
+        assertEquals(CORRECT, evaluator.evaluate(1L, "Müesli", "ch", "muesli"));
+        assertEquals(CORRECT, evaluator.evaluate(1L, "Müesli", "ch", "mueesli"));
+        assertEquals(CORRECT, evaluator.evaluate(1L, "Müesli", "ch", "MÜESLI"));
+    }
+
+    @Test
+    public void evaluate_umlautInGuess_matchesWrittenOutWord() {
+        assertEquals(CORRECT, evaluator.evaluate(1L, "Maedchen", "de", "Mädchen"));
+    }
+
+    @Test
+    public void evaluate_umlautsWrittenOut_onlyForGermanLobbies() {
+        assertEquals(CORRECT, evaluator.evaluate(1L, "Mädchen", "en", "madchen"));
+        assertNotEquals(CORRECT, evaluator.evaluate(1L, "Mädchen", "en", "maedchen"));
+    }
+
+    @Test
+    public void evaluate_oneEditAway_isClose() {
+        assertEquals(CLOSE, evaluator.evaluate(1L, "giraffe", "en", "girafe"));
+        assertEquals(CLOSE, evaluator.evaluate(1L, "giraffe", "en", "giraffes"));
+        assertEquals(CLOSE, evaluator.evaluate(1L, "giraffe", "en", "gitaffe"));
+        assertEquals(WRONG, evaluator.evaluate(1L, "giraffe", "en", "gifare"));
+    }
+
+    @Test
+    public void evaluate_toleranceGrowsWithWordLength() {
+        // short words must be exact, long words allow two edits
+        assertEquals(WRONG, evaluator.evaluate(1L, "cat", "en", "cot"));
+        assertEquals(CLOSE, evaluator.evaluate(2L, "elephant", "en", "elefant"));
+        assertEquals(CLOSE, evaluator.evaluate(2L, "elephant", "en", "alephent"));
+        assertEquals(WRONG, evaluator.evaluate(2L, "elephant", "en", "alefent"));
+    }
+
+    @Test
+    public void evaluate_wordChanged_usesNewWord() {
+        evaluator.prepare(1L, "house", "en");
+
+        assertEquals(CORRECT, evaluator.evaluate(1L, "mouse", "en", "mouse"));
+    }
+
+    @Test
+    public void evaluate_emptyOrOverlongGuess_isWrong() {
+        assertEquals(WRONG, evaluator.evaluate(1L, "tree", "en", "!!!"));
+        assertEquals(WRONG, evaluator.evaluate(1L, "tree", "en", "tree".repeat(20)));
+    }
+
+    @Test
+    public void boundedDistance_matchesFullLevenshtein() {
+        String[] words = {"", "a", "kitten", "sitting", "flaw", "lawn", "intention", "execution", "abcdefgh", "hgfedcba"};
+        int[] previous = new int[32];
+        int[] current = new int[32];
+        for (String a : words) {
+            for (String b : words) {
+                int exact = levenshtein(a, b);
+                for (int max = 0; max <= 3; max++) {
+                    int bounded = GuessEvaluator.boundedDistance(a.toCharArray(), a.length(),
+                            b.toCharArray(), b.length(), max, previous, current);
+                    assertEquals(Math.min(exact, max + 1), bounded, a + " / " + b + " max " + max);
+                }
+            }
+        }
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                }
+                else {
+                    d[i][j] = Math.min(d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1),
+                            Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+}
@@ -0,0 +1,123 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LobbyBrowserSnapshotTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final UserService userService = Mockito.mock(UserService.class);
+
+    private LobbyBrowserSnapshot snapshot;
+
+    @BeforeEach
+    public void setup() {
+        snapshot = new LobbyBrowserSnapshot(objectMapper, userService);
+    }
+
+    private Lobby lobby(long id, Long... playerIds) {
+        Lobby lobby = new Lobby();
+        lobby.setId(id);
+        lobby.setLobbyOwner(playerIds[0]);
+        lobby.setPlayerIds(List.of(playerIds));
+        lobby.setLanguage("english");
+        return lobby;
+    }
+
+    @Test
+    public void update_includesPainterHistoryTokens() throws Exception {
+        Lobby lobby = lobby(100000L, 1L, 2L);
+        lobby.markPainter(1);
+        Mockito.when(userService.getTokensByIds(List.of(2L))).thenReturn(Map.of(2L, "token2"));
+
+        snapshot.update(lobby);
+
+        JsonNode entry = objectMapper.readTree(snapshot.current().getBody()).get(0);
+        assertEquals(2L, entry.get("painterHistoryPlayerIds").get(0).asLong());
+        assertEquals("token2", entry.get("painterHistoryTokens").get(0).asText());
+    }
+
+    @Test
+    public void current_isJsonArrayInIdOrder() throws Exception {
+        snapshot.update(lobby(200000L, 2L));
+        snapshot.update(lobby(100000L, 1L));
+
+        JsonNode body = objectMapper.readTree(snapshot.current().getBody());
+
+        assertEquals(2, body.size());
+        assertEquals(100000L, body.get(0).get("id").asLong());
+        assertEquals("english", body.get(1).get("language").asText());
+    }
+
+    @Test
+    public void update_unchangedLobby_keepsETag() {
+        Lobby lobby = lobby(100000L, 1L);
+        snapshot.update(lobby);
+        LobbyBrowserSnapshot.View first = snapshot.current();
+
+        snapshot.update(lobby);
+
+        assertSame(first, snapshot.current());
+    }
+
+    @Test
+    public void update_changedLobby_newETagAndBody() {
+        Lobby lobby = lobby(100000L, 1L);
+        snapshot.update(lobby);
+        String before = snapshot.current().getEtag();
+
+        lobby.addPlayerId(2L);
+        snapshot.update(lobby);
+
+        assertNotEquals(before, snapshot.current().getEtag());
+        assertTrue(new String(snapshot.current().getBody()).contains("[1,2]"));
+    }
+
+    @Test
+    public void remove_dropsLobby() {
+        snapshot.update(lobby(100000L, 1L));
+        String before = snapshot.current().getEtag();
+
+        snapshot.remove(100000L);
+        snapshot.remove(100000L);
+
+        assertEquals("[]", new String(snapshot.current().getBody()));
+        assertNotEquals(before, snapshot.current().getEtag());
+    }
+
+    @Test
+    public void reset_replacesAllLobbies() {
+        snapshot.update(lobby(100000L, 1L));
+
+        snapshot.reset(List.of(lobby(300000L, 3L)));
+
+        assertFalse(new String(snapshot.current().getBody()).contains("100000"));
+        assertTrue(new String(snapshot.current().getBody()).contains("300000"));
+    }
+
+    @Test
+    public void sync_appliesChangesOfOtherInstances() throws Exception {
+        Lobby kept = lobby(100000L, 1L);
+        snapshot.update(kept);
+        snapshot.update(lobby(100001L, 2L));
+        snapshot.sync(List.of(kept, lobby(100002L, 3L)));
+        LobbyBrowserSnapshot.View synced = snapshot.current();
+
+        snapshot.sync(List.of(kept, lobby(100002L, 3L)));
+
+        JsonNode body = objectMapper.readTree(synced.getBody());
+        assertEquals(2, body.size());
+        assertEquals(100002L, body.get(1).get("id").asLong());
+        assertSame(synced, snapshot.current());
+    }
+}
@@ -0,0 +1,131 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.Disposable;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LobbyEventHubTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private LobbyEventHub hub;
+
+    private Lobby lobby;
+
+    @BeforeEach
+    public void setup() {
+        hub = new LobbyEventHub(objectMapper, Mockito.mock(UserService.class), 60000L);
+        lobby = new Lobby();
+        lobby.setId(123456L);
+        lobby.setLobbyOwner(1L);
+        lobby.setPlayerIds(List.of(1L));
+        lobby.setLanguage("english");
+    }
+
+    private JsonNode data(ServerSentEvent<String> event) throws Exception {
+        return objectMapper.readTree(event.data());
+    }
+
+    @Test
+    public void subscribe_sendsFullLobbyThenDeltas() throws Exception {
+        List<ServerSentEvent<String>> received = new CopyOnWriteArrayList<>();
+        Disposable subscription = hub.subscribe(lobby).subscribe(received::add);
+
+        lobby.addPlayerId(2L);
+        hub.publish(lobby);
+        lobby.setCurrentWord("apple");
+        hub.publish(lobby);
+
+        assertEquals(3, received.size());
+        assertEquals("lobby", received.get(0).event());
+        assertEquals("english", data(received.get(0)).get("language").asText());
+
+        assertEquals("delta", received.get(1).event());
+        assertEquals("1", received.get(1).id());
+        JsonNode join = data(received.get(1));
+        assertEquals(123456L, join.get("id").asLong());
+        assertEquals(2, join.get("playerIds").size());
+        assertFalse(join.has("language"));
+
+        JsonNode word = data(received.get(2));
+        assertEquals("apple", word.get("currentWord").asText());
+        assertFalse(word.has("playerIds"));
+        subscription.dispose();
+    }
+
+    @Test
+    public void publish_withoutVisibleChange_sendsNothing() {
+        List<ServerSentEvent<String>> received = new CopyOnWriteArrayList<>();
+        Disposable subscription = hub.subscribe(lobby).subscribe(received::add);
+
+        hub.publish(lobby);
+
+        assertEquals(1, received.size());
+        subscription.dispose();
+    }
+
+    @Test
+    public void publish_olderVersion_isSkipped() {
+        lobby.setVersion(3L);
+        List<ServerSentEvent<String>> received = new CopyOnWriteArrayList<>();
+        Disposable subscription = hub.subscribe(lobby).subscribe(received::add);
+
+        Lobby reloaded = lobby.copy(); // read from the database before the local change below
+        reloaded.setVersion(2L);
+        reloaded.addPlayerId(2L);
+        hub.publish(reloaded);
+
+        assertEquals(1, received.size());
+        subscription.dispose();
+    }
+
+    @Test
+    public void lateSubscriber_startsWithCurrentFullLobby() throws Exception {
+        Disposable first = hub.subscribe(lobby).subscribe();
+        lobby.addPlayerId(2L);
+        hub.publish(lobby);
+
+        List<ServerSentEvent<String>> received = new CopyOnWriteArrayList<>();
+        Disposable second = hub.subscribe(lobby).subscribe(received::add);
+
+        assertEquals(1, received.size());
+        assertEquals("lobby", received.get(0).event());
+        assertEquals(2, data(received.get(0)).get("playerIds").size());
+        assertEquals(2, hub.getSubscriberCount(123456L));
+        first.dispose();
+        second.dispose();
+    }
+
+    @Test
+    public void close_sendsDeletedAndCompletes() {
+        List<ServerSentEvent<String>> received = new CopyOnWriteArrayList<>();
+        boolean[] completed = {false};
+        hub.subscribe(lobby).subscribe(received::add, error -> { }, () -> completed[0] = true);
+
+        hub.close(123456L);
+
+        assertEquals("deleted", received.get(received.size() - 1).event());
+        assertTrue(completed[0]);
+        assertEquals(0, hub.getSubscriberCount(123456L));
+    }
+
+    @Test
+    public void cancel_lastSubscriber_dropsChannel() {
+        Disposable subscription = hub.subscribe(lobby).subscribe();
+        assertEquals(1, hub.getSubscriberCount(123456L));
+
+        subscription.dispose();
+
+        assertEquals(0, hub.getSubscriberCount(123456L));
+    }
+}
@@ -0,0 +1,97 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.repository.LobbyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+public class LobbyIdAllocatorTest {
+
+    @Mock
+    private LobbyRepository lobbyRepository;
+
+    private LobbyIdAllocator allocator;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        allocator = new LobbyIdAllocator(lobbyRepository, 42L);
+    }
+
+    @Test
+    public void permute_isBijectionOverAllCodes() {
+        BitSet seen = new BitSet(LobbyIdAllocator.ID_COUNT);
+        for (int i = 0; i < LobbyIdAllocator.ID_COUNT; i++) {
+            int value = allocator.permute(i);
+            assertTrue(value >= 0 && value < LobbyIdAllocator.ID_COUNT);
+            assertFalse(seen.get(value), "duplicate code " + value);
+            seen.set(value);
+        }
+    }
+
+    @Test
+    public void allocate_returnsSixDigitIdsInScrambledOrder() {
+        long first = allocator.allocate();
+        long second = allocator.allocate();
+
+        assertTrue(first >= 100000L && first <= 999999L);
+        assertTrue(second >= 100000L && second <= 999999L);
+        assertNotEquals(first + 1, second);
+    }
+
+    @Test
+    public void loadUsedIds_skipsStoredLobbies() {
+        LobbyIdAllocator probe = new LobbyIdAllocator(lobbyRepository, 42L);
+        long firstCode = probe.allocate();
+        when(lobbyRepository.findAllIds()).thenReturn(List.of(firstCode));
+
+        allocator.loadUsedIds();
+
+        assertNotEquals(firstCode, allocator.allocate());
+        assertEquals(LobbyIdAllocator.ID_COUNT - 2, allocator.getFreeCount());
+    }
+
+    @Test
+    public void release_idIsReusedOnlyAfterRangeIsUsedUp() {
+        long released = allocator.allocate();
+        allocator.release(released);
+
+        for (int i = 1; i < LobbyIdAllocator.ID_COUNT; i++) {
+            assertNotEquals(released, allocator.allocate());
+        }
+        assertEquals(released, allocator.allocate());
+        assertThrows(ResponseStatusException.class, () -> allocator.allocate());
+    }
+
+    @Test
+    public void allocate_concurrentCallers_getDistinctIds() throws Exception {
+        int threads = 8;
+        int perThread = 5000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<List<Long>>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(pool.submit(() -> {
+                List<Long> ids = new ArrayList<>();
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(allocator.allocate());
+                }
+                return ids;
+            }));
+        }
+        Set<Long> all = new HashSet<>();
+        for (Future<List<Long>> result : results) {
+            all.addAll(result.get(30, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        assertEquals(threads * perThread, all.size());
+    }
+}
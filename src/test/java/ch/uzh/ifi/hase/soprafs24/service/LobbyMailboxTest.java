@@ -0,0 +1,90 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LobbyMailboxTest {
+
+    private LobbyMailbox mailbox;
+
+    @BeforeEach
+    public void setup() {
+        mailbox = new LobbyMailbox(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        mailbox.shutdown();
+    }
+
+    @Test
+    public void submit_sameLobby_runsOneTaskAtATime() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CompletableFuture<?>[] tasks = new CompletableFuture[50];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = CompletableFuture.runAsync(() -> mailbox.submit(7L, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.yield();
+                running.decrementAndGet();
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(tasks).get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void submit_differentLanes_runInParallel() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        // lobbies 1 and 2 are on different lanes; each waits until the other one has started
+        CompletableFuture<Boolean> first = mailbox.submitAsync(1L, () -> awaitQuietly(bothStarted));
+        CompletableFuture<Boolean> second = mailbox.submitAsync(2L, () -> awaitQuietly(bothStarted));
+
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertTrue(second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void submit_fromSameLane_runsInline() {
+        String result = mailbox.submit(3L, () -> mailbox.submit(3L + mailbox.getLaneCount(), () -> "nested"));
+
+        assertEquals("nested", result);
+    }
+
+    @Test
+    public void submit_fromOtherLane_isRejected() {
+        assertThrows(IllegalStateException.class, () -> mailbox.submit(1L, () -> mailbox.submit(2L, () -> "deadlock")));
+    }
+
+    @Test
+    public void submit_rethrowsTaskException() {
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> mailbox.submit(5L, () -> {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Lobby is full.");
+        }));
+
+        assertEquals(HttpStatus.CONFLICT, ex.getStatus());
+    }
+
+    private static boolean awaitQuietly(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Concurrent joins through the real LobbyService proxy against a connection
+ * pool smaller than the number of requests: a caller waiting for the lobby's
+ * mailbox must not hold a connection the lane needs.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:pooltest",
+        "spring.datasource.hikari.maximum-pool-size=2",
+        "spring.datasource.hikari.connection-timeout=1000",
+        "lobby.mailbox.lanes=2"
+})
+@Import({LobbyService.class, LobbyStateStore.class, LobbyMailbox.class, LobbyWriteRetry.class,
+        LobbyIdAllocator.class, LobbyBrowserSnapshot.class, LobbyEventHub.class, RoundTimer.class,
+        GuessEvaluator.class, ScoreService.class, UserService.class, LobbyContentionMetrics.class,
+        LobbyServiceConnectionPoolTest.Beans.class})
+public class LobbyServiceConnectionPoolTest {
+
+    @TestConfiguration
+    static class Beans {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+    }
+
+    @Autowired
+    private LobbyService lobbyService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Long user(String name) {
+        User user = new User();
+        user.setUsername(name + "-" + UUID.randomUUID());
+        user.setToken(UUID.randomUUID().toString());
+        user.setStatus(UserStatus.OFFLINE);
+        return userRepository.save(user).getId();
+    }
+
+    @Test
+    public void concurrentJoins_doNotExhaustSmallPool() throws Exception {
+        Lobby lobby = new Lobby();
+        lobby.setLobbyOwner(user("owner"));
+        Long lobbyId = lobbyService.createLobby(lobby).getId();
+        List<Long> players = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            players.add(user("player" + i));
+        }
+
+        ExecutorService requests = Executors.newFixedThreadPool(players.size());
+        try {
+            List<Future<Lobby>> joins = new ArrayList<>();
+            for (Long player : players) {
+                joins.add(requests.submit(() -> lobbyService.addPlayerToLobby(lobbyId, player)));
+            }
+            for (Future<Lobby> join : joins) {
+                join.get(10, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            requests.shutdownNow();
+        }
+
+        assertEquals(5, lobbyService.getLobbyById(lobbyId).getPlayerCount());
+    }
+}
@@ -2,6 +2,9 @@ package ch.uzh.ifi.hase.soprafs24.service;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
 import ch.uzh.ifi.hase.soprafs24.repository.LobbyRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -30,6 +33,8 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.server.ResponseStatusException;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
@@ -56,14 +61,24 @@ public class LobbyServiceTest {
     @Mock
     private LobbyRepository lobbyRepository;
 
-    @InjectMocks
     private LobbyService lobbyService;
 
+    private SimpleMeterRegistry meterRegistry;
+
+    private LobbyIdAllocator lobbyIdAllocator;
+
+    private LobbyBrowserSnapshot lobbyBrowserSnapshot;
+
+    private RoundTimer roundTimer;
+
     private Lobby testLobby;
 
     @Mock
     private UserService userService;
 
+    @Mock
+    private UserRepository userRepository;
+
 
     @Mock
     private Lobby lobby;
@@ -79,6 +94,17 @@ public class LobbyServiceTest {
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
+        // write-through store: every change is saved and flushed right away
+        LobbyMailbox mailbox = new LobbyMailbox(2);
+        lobbyIdAllocator = new LobbyIdAllocator(lobbyRepository, 7L);
+        lobbyBrowserSnapshot = new LobbyBrowserSnapshot(new ObjectMapper(), userService);
+        roundTimer = new RoundTimer(5, 64, 1);
+        meterRegistry = new SimpleMeterRegistry();
+        LobbyContentionMetrics metrics = new LobbyContentionMetrics(meterRegistry);
+        lobbyService = new LobbyService(new LobbyStateStore(lobbyRepository, mailbox, metrics, false, 500),
+                mailbox, new LobbyWriteRetry(metrics, 3, 0, 0), lobbyIdAllocator, lobbyBrowserSnapshot,
+                new LobbyEventHub(new ObjectMapper(), userService, 15000L), roundTimer, new GuessEvaluator(),
+                new ScoreService(userRepository, 10_000), userService);
 
         // Create a test lobby with all required fields
         testLobby = new Lobby();
@@ -94,6 +120,11 @@ public class LobbyServiceTest {
         // When saving any lobby, return the test lobby
         Mockito.when(lobbyRepository.save(Mockito.any())).thenReturn(testLobby);
     }
+
+    @AfterEach
+    public void tearDown() {
+        roundTimer.stop();
+    }
     
     @Test
     void fallback_SelectFirstActivePlayerNotInHistory() {
@@ -108,7 +139,7 @@ public class LobbyServiceTest {
         Set<String> history = Set.of("A");
 
         when(lobby.getPlayerIds()).thenReturn(playerIds);
-        when(lobby.getPainterHistoryTokens()).thenReturn(history);
+        when(lobby.getPainterHistoryMask()).thenReturn(0b1L);
         when(lobby.getId()).thenReturn(123456L);
 
         String nextPainterToken = null;
@@ -139,7 +170,7 @@ public class LobbyServiceTest {
         Set<String> history = Set.of("A", "B");
 
         when(lobby.getPlayerIds()).thenReturn(playerIds);
-        when(lobby.getPainterHistoryTokens()).thenReturn(history);
+        when(lobby.getPainterHistoryMask()).thenReturn(0b11L);
         when(lobby.getId()).thenReturn(123456L);
 
         String nextPainterToken = null;
@@ -174,7 +205,7 @@ public class LobbyServiceTest {
         Set<String> history = Set.of("A", "B");
 
         when(lobby.getPlayerIds()).thenReturn(playerIds);
-        when(lobby.getPainterHistoryTokens()).thenReturn(history);
+        when(lobby.getPainterHistoryMask()).thenReturn(0b11L);
         when(lobby.getId()).thenReturn(123456L);
 
         String nextPainterToken = null;
@@ -199,7 +230,7 @@ public class LobbyServiceTest {
         Set<String> history = Set.of("A");
 
         when(lobby.getPlayerIds()).thenReturn(playerIds);
-        when(lobby.getPainterHistoryTokens()).thenReturn(history);
+        when(lobby.getPainterHistoryMask()).thenReturn(0b1L);
         when(lobby.getId()).thenReturn(123456L);
 
         String nextPainterToken = null;
@@ -244,8 +275,21 @@ void createLobby_setsDefaultValuesIfNullOrZero() {
     assertEquals(3L, result.getNumOfRounds());
     assertEquals(80, result.getDrawTime());
     assertEquals("anything", result.getType());
-    assertNotNull(result.getPainterHistoryTokens());
-    assertTrue(result.getPainterHistoryTokens().isEmpty());
+    assertEquals(0L, result.getPainterHistoryMask());
+    assertTrue(result.getPainterHistoryPlayerIds().isEmpty());
+}
+
+@Test
+void createLobby_maxPlayersOverLimit_throwsBadRequest() {
+    Lobby lobby = new Lobby();
+    lobby.setLobbyOwner(1L);
+    lobby.setNumOfMaxPlayers(LobbyService.MAX_PLAYERS + 1);
+    when(userService.getUserById(1L)).thenReturn(new User());
+
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> lobbyService.createLobby(lobby));
+
+    assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+    verify(lobbyRepository, never()).save(any());
 }
 
 
@@ -647,7 +691,7 @@ void addPlayerToLobby_throwsWhenUserNotFound() {
         when(lobbyRepository.findById(lobbyId)).thenReturn(Optional.of(emptyLobby));
 
         ResponseStatusException ex = assertThrows(ResponseStatusException.class,
-            () -> lobbyService.selectNextPainter(lobbyId));
+            () -> lobbyService.selectNextPainter(lobbyId, null));
         assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
         verify(lobbyRepository).save(emptyLobby);
         verify(lobbyRepository).flush();
@@ -661,12 +705,10 @@ void addPlayerToLobby_throwsWhenUserNotFound() {
         lobby.setPlayerIds(Arrays.asList(10L, 20L));
 
         when(lobbyRepository.findById(lobbyId)).thenReturn(Optional.of(lobby));
-        when(userService.getUserById(anyLong())).thenThrow(
-            new ResponseStatusException(HttpStatus.NOT_FOUND)
-        );
+        when(userService.getTokensByIds(any())).thenReturn(Map.of());
 
         ResponseStatusException ex = assertThrows(ResponseStatusException.class,
-            () -> lobbyService.selectNextPainter(lobbyId));
+            () -> lobbyService.selectNextPainter(lobbyId, null));
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, ex.getStatus());
         verify(lobbyRepository).save(lobby);
         verify(lobbyRepository).flush();
@@ -678,27 +720,81 @@ void addPlayerToLobby_throwsWhenUserNotFound() {
         Lobby lobby = new Lobby();
         lobby.setId(lobbyId);
         lobby.setPlayerIds(Arrays.asList(10L, 20L, 30L));
-        lobby.setPainterHistoryTokens(new HashSet<>(List.of("token1")));
+        lobby.markPainter(0); // player 10 painted first
         lobby.setCurrentPainterToken("token1");
 
-        User u2 = new User(); u2.setId(20L); u2.setToken("token2");
-        User u3 = new User(); u3.setId(30L); u3.setToken("token3");
-        User u1 = new User(); u1.setId(10L); u1.setToken("token1");
-
         when(lobbyRepository.findById(lobbyId)).thenReturn(Optional.of(lobby));
-        when(userService.getUserById(10L)).thenReturn(u1);
-        when(userService.getUserById(20L)).thenReturn(u2);
-        when(userService.getUserById(30L)).thenReturn(u3);
+        when(userService.getTokensByIds(any())).thenReturn(Map.of(10L, "token1", 20L, "token2", 30L, "token3"));
         when(lobbyRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
 
-        Lobby result = lobbyService.selectNextPainter(lobbyId);
+        Lobby result = lobbyService.selectNextPainter(lobbyId, null);
 
         assertEquals("token2", result.getCurrentPainterToken());
-        assertTrue(result.getPainterHistoryTokens().contains("token2"));
-        verify(lobbyRepository).save(result);
+        assertTrue(result.getPainterHistoryPlayerIds().contains(20L));
+        verify(lobbyRepository).save(lobby);
         verify(lobbyRepository).flush();
     }
 
+    @Test
+    public void selectNextPainter_missingUserSkipped() {
+        Long lobbyId = 1L;
+        Lobby lobby = new Lobby();
+        lobby.setId(lobbyId);
+        lobby.setPlayerIds(Arrays.asList(10L, 20L, 30L));
+        lobby.markPainter(0); // player 10 painted first
+        lobby.setCurrentPainterToken("token1");
+
+        // user 20 no longer exists
+        when(lobbyRepository.findById(lobbyId)).thenReturn(Optional.of(lobby));
+        when(userService.getTokensByIds(any())).thenReturn(Map.of(10L, "token1", 30L, "token3"));
+        when(lobbyRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Lobby result = lobbyService.selectNextPainter(lobbyId, null);
+
+        assertEquals("token3", result.getCurrentPainterToken());
+        verify(userService, times(1)).getTokensByIds(List.of(10L, 20L, 30L)); // all members in one query
+        verify(userService, never()).getUserById(anyLong());
+    }
+
+    @Test
+    public void selectNextPainter_fullCycle_startsOverFromFirstPlayer() {
+        Long lobbyId = 1L;
+        Lobby lobby = new Lobby();
+        lobby.setId(lobbyId);
+        lobby.setPlayerIds(Arrays.asList(10L, 20L, 30L));
+
+        when(lobbyRepository.findById(lobbyId)).thenReturn(Optional.of(lobby));
+        when(userService.getTokensByIds(any())).thenReturn(Map.of(10L, "token1", 20L, "token2", 30L, "token3"));
+        when(lobbyRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<String> painters = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            painters.add(lobbyService.selectNextPainter(lobbyId, null).getCurrentPainterToken());
+        }
+
+        assertEquals(List.of("token1", "token2", "token3", "token1"), painters);
+        assertEquals(List.of(10L), lobby.getPainterHistoryPlayerIds());
+    }
+
+    @Test
+    public void removePlayerFromLobby_keepsPainterHistoryAligned() {
+        Long lobbyId = 1L;
+        Lobby lobby = new Lobby();
+        lobby.setId(lobbyId);
+        lobby.setPlayerIds(Arrays.asList(10L, 20L, 30L));
+        lobby.markPainter(0);
+        lobby.markPainter(2); // 10 and 30 painted, 30 is painting now
+
+        when(lobbyRepository.findById(lobbyId)).thenReturn(Optional.of(lobby));
+        when(lobbyRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Lobby result = lobbyService.removePlayerFromLobby(lobbyId, 20L);
+
+        assertEquals(List.of(10L, 30L), result.getPlayerIds());
+        assertEquals(List.of(10L, 30L), result.getPainterHistoryPlayerIds());
+        assertEquals(1, result.getLastPainterIndex());
+    }
+
     @Test
     public void setLobbyWord_validWord_setsAndSaves() {
         Long lobbyId = 1L;
@@ -712,7 +808,7 @@ void addPlayerToLobby_throwsWhenUserNotFound() {
         Lobby result = lobbyService.setLobbyWord(lobbyId, word);
 
         assertEquals("apple", result.getCurrentWord());
-        verify(lobbyRepository).save(result);
+        verify(lobbyRepository).save(lobby);
         verify(lobbyRepository).flush();
     }
 
@@ -810,4 +906,394 @@ void addPlayerToLobby_throwsWhenUserNotFound() {
 
 
 
-}
\ No newline at end of file
+    @Test
+    void addPlayerToLobby_concurrentJoins_neverOverfillLobby() throws Exception {
+        Lobby lobby = new Lobby();
+        lobby.setId(42L);
+        lobby.setNumOfMaxPlayers(4L);
+        lobby.setPlayerIds(List.of(1L));
+
+        when(lobbyRepository.findById(42L)).thenReturn(Optional.of(lobby));
+        when(userService.getUserById(anyLong())).thenReturn(new User());
+
+        int joiners = 16;
+        java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(joiners);
+        java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.atomic.AtomicInteger rejected = new java.util.concurrent.atomic.AtomicInteger();
+        List<java.util.concurrent.Future<?>> joins = new ArrayList<>();
+        for (long playerId = 100; playerId < 100 + joiners; playerId++) {
+            long id = playerId;
+            joins.add(pool.submit(() -> {
+                start.await();
+                try {
+                    lobbyService.addPlayerToLobby(42L, id);
+                }
+                catch (ResponseStatusException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (java.util.concurrent.Future<?> join : joins) {
+            join.get();
+        }
+        pool.shutdown();
+
+        assertEquals(4, lobby.getPlayerCount());
+        assertEquals(joiners - 3, rejected.get());
+    }
+
+    @Test
+    void setLobbyWord_optimisticLockConflict_retriesOnReloadedLobby() {
+        Lobby stale = new Lobby();
+        stale.setId(55L);
+        stale.setVersion(1L);
+        Lobby fresh = new Lobby();
+        fresh.setId(55L);
+        fresh.setVersion(2L);
+
+        when(lobbyRepository.findById(55L)).thenReturn(Optional.of(stale), Optional.of(fresh));
+        when(lobbyRepository.save(stale)).thenThrow(new ObjectOptimisticLockingFailureException(Lobby.class, 55L));
+        when(lobbyRepository.save(fresh)).thenReturn(fresh);
+
+        Lobby result = lobbyService.setLobbyWord(55L, "apple");
+
+        assertEquals(fresh.getVersion(), result.getVersion());
+        assertEquals("apple", fresh.getCurrentWord());
+        verify(lobbyRepository, times(2)).findById(55L);
+        assertEquals(1.0, meterRegistry.counter("lobby.write.conflicts", "lobby", "55").count());
+        assertEquals(1.0, meterRegistry.counter("lobby.write.retries", "lobby", "55").count());
+        assertEquals(2.0, meterRegistry.counter("lobby.write.attempts", "lobby", "55").count());
+    }
+
+    @Test
+    void setLobbyWord_persistentConflict_givesUpWithConflict() {
+        Lobby lobby = new Lobby();
+        lobby.setId(56L);
+
+        when(lobbyRepository.findById(56L)).thenReturn(Optional.of(lobby));
+        when(lobbyRepository.save(lobby)).thenThrow(new ObjectOptimisticLockingFailureException(Lobby.class, 56L));
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> lobbyService.setLobbyWord(56L, "apple"));
+
+        assertEquals(HttpStatus.CONFLICT, ex.getStatus());
+        verify(lobbyRepository, times(4)).save(lobby); // first try + 3 retries
+        assertEquals(1.0, meterRegistry.counter("lobby.write.exhausted", "lobby", "56").count());
+    }
+
+    @Test
+    void createLobby_assignsAllocatedId_andDeleteReleasesIt() {
+        Lobby lobby = new Lobby();
+        lobby.setLobbyOwner(1L);
+        when(userService.getUserById(1L)).thenReturn(new User());
+        when(lobbyRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Lobby created = lobbyService.createLobby(lobby);
+
+        assertTrue(created.getId() >= 100000L && created.getId() <= 999999L);
+        assertTrue(lobbyIdAllocator.isInUse(created.getId()));
+
+        when(lobbyRepository.findById(created.getId())).thenReturn(Optional.of(created));
+        lobbyService.removePlayerFromLobby(created.getId(), 1L);
+
+        assertFalse(lobbyIdAllocator.isInUse(created.getId()));
+    }
+
+    @Test
+    void getLobbyPage_firstPage_startsAtCursorZero() {
+        when(lobbyRepository.findPage(eq(0L), eq(null), eq("english"), eq(null), eq(true), any()))
+                .thenReturn(List.of(testLobby));
+
+        List<Lobby> page = lobbyService.getLobbyPage(null, 10, null, "english", null, true);
+
+        assertEquals(1, page.size());
+        assertEquals(testLobby.getId(), page.get(0).getId());
+    }
+
+    @Test
+    void getLobbyPage_invalidLimit_throwsBadRequest() {
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> lobbyService.getLobbyPage(null, 0, null, null, null, false));
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+        assertThrows(ResponseStatusException.class,
+                () -> lobbyService.getLobbyPage(null, LobbyService.MAX_PAGE_SIZE + 1, null, null, null, false));
+    }
+
+    @Test
+    void lobbyBrowserSnapshot_followsCreateJoinAndDelete() throws Exception {
+        Lobby lobby = new Lobby();
+        lobby.setLobbyOwner(1L);
+        when(userService.getUserById(anyLong())).thenReturn(new User());
+        when(lobbyRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        String emptyTag = lobbyService.getLobbyBrowserSnapshot().getEtag();
+
+        Lobby created = lobbyService.createLobby(lobby);
+        when(lobbyRepository.findById(created.getId())).thenReturn(Optional.of(created));
+        LobbyBrowserSnapshot.View afterCreate = lobbyService.getLobbyBrowserSnapshot();
+        assertNotEquals(emptyTag, afterCreate.getEtag());
+
+        lobbyService.addPlayerToLobby(created.getId(), 2L);
+        LobbyBrowserSnapshot.View afterJoin = lobbyService.getLobbyBrowserSnapshot();
+        assertNotEquals(afterCreate.getEtag(), afterJoin.getEtag());
+        assertEquals(List.of(1, 2), readPlayerIds(afterJoin));
+
+        lobbyService.removePlayerFromLobby(created.getId(), 1L);
+        lobbyService.removePlayerFromLobby(created.getId(), 2L);
+        assertEquals("[]", new String(lobbyService.getLobbyBrowserSnapshot().getBody()));
+    }
+
+    @Test
+    void updateLobby_gameStartsAndStops_armsAndCancelsRoundTimer() {
+        Lobby lobby = playingLobby(Lobby.STATUS_WAITING, null);
+        Lobby start = new Lobby();
+        start.setStatus(Lobby.STATUS_PLAYING);
+        long before = System.currentTimeMillis();
+
+        Lobby started = lobbyService.updateLobby(lobby.getId(), start);
+
+        assertTrue(started.getRoundEndsAt() >= before + 80_000L);
+        assertEquals(started.getRoundEndsAt(), roundTimer.getDeadline(lobby.getId()));
+
+        Lobby stop = new Lobby();
+        stop.setStatus(Lobby.STATUS_WAITING);
+        Lobby stopped = lobbyService.updateLobby(lobby.getId(), stop);
+
+        assertNull(stopped.getRoundEndsAt());
+        assertNull(roundTimer.getDeadline(lobby.getId()));
+    }
+
+    @Test
+    void endTurn_currentDeadline_selectsNextPainterAndRearms() {
+        Lobby lobby = playingLobby(Lobby.STATUS_PLAYING, 1_000L);
+
+        lobbyService.endTurn(lobby.getId(), 1_000L);
+
+        assertEquals("token10", lobby.getCurrentPainterToken());
+        assertTrue(lobby.getRoundEndsAt() > System.currentTimeMillis());
+        assertEquals(lobby.getRoundEndsAt(), roundTimer.getDeadline(lobby.getId()));
+    }
+
+    @Test
+    void endTurn_lastTurnOfLastRound_finishesGame() {
+        Lobby lobby = playingLobby(Lobby.STATUS_PLAYING, 1_000L);
+        lobby.setNumOfRounds(2L);
+
+        lobbyService.endTurn(lobby.getId(), 1_000L); // round 1: 10 paints
+        lobbyService.endTurn(lobby.getId(), lobby.getRoundEndsAt()); // 20 paints
+        lobbyService.endTurn(lobby.getId(), lobby.getRoundEndsAt()); // round 2: 10 paints
+        assertEquals(Lobby.STATUS_PLAYING, lobby.getStatus());
+        assertEquals(1, lobby.getRoundsPlayed());
+        lobbyService.endTurn(lobby.getId(), lobby.getRoundEndsAt()); // 20 paints
+        lobbyService.endTurn(lobby.getId(), lobby.getRoundEndsAt()); // everyone painted twice
+
+        assertEquals(Lobby.STATUS_FINISHED, lobby.getStatus());
+        assertEquals(2, lobby.getRoundsPlayed());
+        assertNull(lobby.getRoundEndsAt());
+        assertNull(lobby.getCurrentPainterToken());
+        assertNull(roundTimer.getDeadline(lobby.getId()));
+    }
+
+    @Test
+    void updateLobby_startingGame_resetsRoundsAndPicksFirstPainter() {
+        Lobby lobby = playingLobby(Lobby.STATUS_FINISHED, null);
+        lobby.markPainter(1);
+        lobby.completeRound();
+        Lobby start = new Lobby();
+        start.setStatus(Lobby.STATUS_PLAYING);
+
+        Lobby started = lobbyService.updateLobby(lobby.getId(), start);
+
+        assertEquals(0, started.getRoundsPlayed());
+        assertEquals("token10", started.getCurrentPainterToken());
+        assertEquals(List.of(10L), started.getPainterHistoryPlayerIds());
+        assertEquals(started.getRoundEndsAt(), roundTimer.getDeadline(lobby.getId()));
+    }
+
+    @Test
+    void endTurn_staleDeadline_isIgnored() {
+        Lobby lobby = playingLobby(Lobby.STATUS_PLAYING, 2_000L);
+
+        lobbyService.endTurn(lobby.getId(), 1_000L);
+
+        assertNull(lobby.getCurrentPainterToken());
+        assertEquals(2_000L, lobby.getRoundEndsAt());
+    }
+
+    @Test
+    void selectNextPainter_turnAlreadyEnded_isIgnored() {
+        Lobby lobby = playingLobby(Lobby.STATUS_PLAYING, 2_000L);
+        lobby.markPainter(1);
+        lobby.setCurrentPainterToken("token20"); // the server already ended token10's turn
+
+        Lobby result = lobbyService.selectNextPainter(lobby.getId(), "token10");
+
+        assertEquals("token20", result.getCurrentPainterToken());
+        assertEquals(2_000L, result.getRoundEndsAt());
+        verify(lobbyRepository, never()).save(any());
+    }
+
+    @Test
+    void selectNextPainter_currentPainter_endsTurn() {
+        Lobby lobby = playingLobby(Lobby.STATUS_PLAYING, 2_000L);
+        lobby.markPainter(0);
+        lobby.setCurrentPainterToken("token10");
+
+        Lobby result = lobbyService.selectNextPainter(lobby.getId(), "token10");
+
+        assertEquals("token20", result.getCurrentPainterToken());
+        assertEquals(lobby.getRoundEndsAt(), roundTimer.getDeadline(lobby.getId()));
+    }
+
+    @Test
+    void resumeRoundTimers_expiredTurn_firesOnTimerThread() throws InterruptedException {
+        Lobby lobby = playingLobby(Lobby.STATUS_PLAYING, System.currentTimeMillis() + 20);
+        when(lobbyRepository.findAll()).thenReturn(List.of(lobby));
+
+        lobbyService.resumeRoundTimers();
+
+        long waitUntil = System.currentTimeMillis() + 5_000;
+        while (lobby.getCurrentPainterToken() == null && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(5);
+        }
+        assertEquals("token10", lobby.getCurrentPainterToken());
+    }
+
+    @Test
+    void setLobbyWord_thenGuesses_areMatchedAgainstNewWord() {
+        Lobby lobby = playingLobby(Lobby.STATUS_PLAYING, null);
+        lobby.setLanguage("de");
+
+        lobbyService.setLobbyWord(lobby.getId(), "  Känguru ");
+
+        assertEquals(GuessEvaluator.Result.CORRECT, lobbyService.evaluateGuess(lobby.getId(), 20L, "kaenguru"));
+        assertEquals(GuessEvaluator.Result.CLOSE, lobbyService.evaluateGuess(lobby.getId(), 20L, "kanguruh"));
+        assertEquals(GuessEvaluator.Result.WRONG, lobbyService.evaluateGuess(lobby.getId(), 20L, "koala"));
+    }
+
+    @Test
+    void evaluateGuess_correctGuess_scoresGuesserAndPainterOncePerTurn() {
+        Lobby lobby = playingLobby(Lobby.STATUS_PLAYING, System.currentTimeMillis() + 60_000);
+        lobby.setCurrentPainterToken("token10");
+        when(userRepository.addToTotalScore(anyLong(), anyLong())).thenReturn(1);
+        lobbyService.setLobbyWord(lobby.getId(), "giraffe");
+
+        assertEquals(GuessEvaluator.Result.CORRECT, lobbyService.evaluateGuess(lobby.getId(), 20L, "Giraffe"));
+        assertEquals(GuessEvaluator.Result.CORRECT, lobbyService.evaluateGuess(lobby.getId(), 20L, "giraffe"));
+
+        long guesserPoints = lobby.getScores().get(20L);
+        assertTrue(guesserPoints > ScoreService.BASE_GUESS_POINTS, "points " + guesserPoints);
+        assertEquals(ScoreService.PAINTER_POINTS, lobby.getScores().get(10L));
+        verify(userRepository).addToTotalScore(20L, guesserPoints);
+        verify(userRepository).addToTotalScore(10L, ScoreService.PAINTER_POINTS);
+    }
+
+    @Test
+    void evaluateGuess_painterOrWaitingLobby_scoresNothing() {
+        Lobby lobby = playingLobby(Lobby.STATUS_PLAYING, null);
+        lobby.setCurrentPainterToken("token20");
+        lobbyService.setLobbyWord(lobby.getId(), "giraffe");
+
+        lobbyService.evaluateGuess(lobby.getId(), 20L, "giraffe");
+        lobby.setStatus(Lobby.STATUS_WAITING);
+        lobbyService.evaluateGuess(lobby.getId(), 10L, "giraffe");
+
+        assertTrue(lobby.getScores().isEmpty());
+        verify(userRepository, times(0)).addToTotalScore(anyLong(), anyLong());
+    }
+
+    @Test
+    void evaluateGuess_playerNotInLobby_throwsForbidden() {
+        Lobby lobby = playingLobby(Lobby.STATUS_PLAYING, null);
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> lobbyService.evaluateGuess(lobby.getId(), 99L, "word"));
+        assertEquals(HttpStatus.FORBIDDEN, ex.getStatus());
+    }
+
+    private Lobby playingLobby(int status, Long roundEndsAt) {
+        Lobby lobby = new Lobby();
+        lobby.setId(424242L);
+        lobby.setLobbyOwner(10L);
+        lobby.setNumOfMaxPlayers(8L);
+        lobby.setLanguage("english");
+        lobby.setNumOfRounds(3L);
+        lobby.setDrawTime(80);
+        lobby.setPlayerIds(Arrays.asList(10L, 20L));
+        lobby.setStatus(status);
+        lobby.setRoundEndsAt(roundEndsAt);
+        when(lobbyRepository.findById(lobby.getId())).thenReturn(Optional.of(lobby));
+        when(lobbyRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(userService.getTokensByIds(any())).thenReturn(Map.of(10L, "token10", 20L, "token20"));
+        return lobby;
+    }
+
+    private List<Integer> readPlayerIds(LobbyBrowserSnapshot.View view) throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        new ObjectMapper().readTree(view.getBody()).get(0).get("playerIds").forEach(node -> ids.add(node.asInt()));
+        return ids;
+    }
+
+    @Test
+    void updateLobby_invalidField_leavesOtherFieldsUnchanged() {
+        when(lobbyRepository.findById(123456L)).thenReturn(Optional.of(testLobby));
+        Lobby update = new Lobby();
+        update.setLobbyOwner(2L); // valid new owner
+        update.setNumOfMaxPlayers(20L); // over the limit
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> lobbyService.updateLobby(123456L, update));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+        assertEquals(1L, testLobby.getLobbyOwner());
+        assertEquals(8L, testLobby.getNumOfMaxPlayers());
+        verify(lobbyRepository, never()).save(any());
+    }
+
+    @Test
+    void getLobbyById_returnsCopyTakenOnLane() {
+        when(lobbyRepository.findById(123456L)).thenReturn(Optional.of(testLobby));
+
+        Lobby read = lobbyService.getLobbyById(123456L);
+        lobbyService.addPlayerToLobby(123456L, 3L);
+
+        assertNotSame(testLobby, read);
+        assertEquals(List.of(1L, 2L), read.getPlayerIds());
+        assertEquals(List.of(1L, 2L, 3L), testLobby.getPlayerIds());
+    }
+
+    @Test
+    void createLobby_idTakenByAnotherInstance_retriesWithNextId() {
+        Lobby lobby = new Lobby();
+        lobby.setLobbyOwner(1L);
+        when(userService.getUserById(1L)).thenReturn(new User());
+        List<Long> attempted = new ArrayList<>();
+        when(lobbyRepository.save(any())).thenAnswer(invocation -> {
+            Lobby candidate = invocation.getArgument(0);
+            attempted.add(candidate.getId());
+            if (attempted.size() == 1) {
+                throw new DataIntegrityViolationException("duplicate key");
+            }
+            return candidate;
+        });
+        when(lobbyRepository.existsById(any())).thenReturn(true);
+
+        Lobby created = lobbyService.createLobby(lobby);
+
+        assertEquals(2, attempted.size());
+        assertEquals(attempted.get(1), created.getId());
+        assertTrue(lobbyIdAllocator.isInUse(attempted.get(0)));
+    }
+
+    @Test
+    void createLobby_rejectedRow_releasesIdAndFails() {
+        Lobby lobby = new Lobby();
+        lobby.setLobbyOwner(1L);
+        when(userService.getUserById(1L)).thenReturn(new User());
+        when(lobbyRepository.save(any())).thenThrow(new DataIntegrityViolationException("not null"));
+
+        assertThrows(DataIntegrityViolationException.class, () -> lobbyService.createLobby(lobby));
+
+        assertEquals(LobbyIdAllocator.ID_COUNT, lobbyIdAllocator.getFreeCount());
+    }
+}
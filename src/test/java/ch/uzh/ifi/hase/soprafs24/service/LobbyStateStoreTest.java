@@ -0,0 +1,254 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.repository.LobbyRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+public class LobbyStateStoreTest {
+
+    @Mock
+    private LobbyRepository lobbyRepository;
+
+    private LobbyMailbox mailbox;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private LobbyContentionMetrics metrics;
+
+    private LobbyStateStore store;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        mailbox = new LobbyMailbox(2);
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new LobbyContentionMetrics(meterRegistry);
+        store = new LobbyStateStore(lobbyRepository, mailbox, metrics, true, 500);
+        when(lobbyRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    private Lobby lobby(long id) {
+        Lobby lobby = new Lobby();
+        lobby.setId(id);
+        lobby.setPlayerIds(List.of(1L));
+        return lobby;
+    }
+
+    @Test
+    public void save_isCoalescedUntilFlush() {
+        Lobby lobby = store.create(lobby(1L));
+        verify(lobbyRepository, times(1)).save(lobby);
+
+        lobby.addPlayerId(2L);
+        store.save(lobby);
+        lobby.addPlayerId(3L);
+        store.save(lobby);
+
+        verify(lobbyRepository, never()).saveAll(anyList());
+        assertEquals(1, store.getPendingWrites());
+
+        store.flush();
+
+        verify(lobbyRepository, times(1)).saveAll(List.of(lobby));
+        assertEquals(0, store.getPendingWrites());
+    }
+
+    @Test
+    public void findById_servesLiveLobbyAfterFirstLoad() {
+        Lobby stored = lobby(2L);
+        when(lobbyRepository.findById(2L)).thenReturn(Optional.of(stored));
+
+        Lobby first = store.findById(2L).orElseThrow();
+        first.addPlayerId(5L);
+        store.save(first);
+        Lobby second = store.findById(2L).orElseThrow();
+
+        assertSame(first, second);
+        assertTrue(second.hasPlayer(5L));
+        verify(lobbyRepository, times(1)).findById(2L);
+    }
+
+    @Test
+    public void flush_failedBatchIsRetried() {
+        Lobby lobby = store.create(lobby(3L));
+        store.save(lobby);
+        when(lobbyRepository.saveAll(anyList())).thenThrow(new IllegalStateException("db down"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        store.flush();
+        assertEquals(1, store.getPendingWrites());
+
+        store.flush();
+        assertEquals(0, store.getPendingWrites());
+        verify(lobbyRepository, times(2)).saveAll(anyList());
+    }
+
+    @Test
+    public void delete_isWrittenThroughAndDropsPendingChanges() {
+        Lobby lobby = store.create(lobby(4L));
+        store.save(lobby);
+
+        store.delete(lobby);
+        store.flush();
+
+        verify(lobbyRepository).delete(lobby);
+        verify(lobbyRepository, never()).saveAll(anyList());
+        assertEquals(0, store.getPendingWrites());
+    }
+
+    @Test
+    public void findAll_prefersLiveCopiesAndIncludesUnflushedLobbies() {
+        Lobby storedCopy = lobby(5L);
+        Lobby live = store.create(lobby(5L));
+        live.addPlayerId(9L);
+        store.save(live);
+        store.create(lobby(6L));
+        when(lobbyRepository.findAll()).thenReturn(List.of(storedCopy));
+
+        List<Lobby> all = store.findAll();
+
+        assertEquals(2, all.size());
+        assertSame(live, all.get(0));
+    }
+
+    @Test
+    public void writeThrough_savesAndFlushesImmediately() {
+        LobbyStateStore writeThrough = new LobbyStateStore(lobbyRepository, mailbox, metrics, false, 500);
+        Lobby lobby = lobby(7L);
+
+        writeThrough.save(lobby);
+
+        verify(lobbyRepository).save(lobby);
+        verify(lobbyRepository).flush();
+        assertEquals(0, writeThrough.getPendingWrites());
+    }
+
+    @Test
+    public void flush_copiesNewVersionToLiveLobby() {
+        Lobby lobby = store.create(lobby(8L));
+        lobby.setVersion(0L);
+        store.save(lobby);
+        Lobby managedCopy = lobby(8L);
+        managedCopy.setVersion(1L);
+        when(lobbyRepository.saveAll(anyList())).thenReturn(List.of(managedCopy));
+
+        store.flush();
+
+        assertEquals(1L, lobby.getVersion());
+    }
+
+    @Test
+    public void flush_conflict_evictsConflictingLobbyAndRetriesOthers() {
+        Lobby conflicting = store.create(lobby(10L));
+        Lobby other = store.create(lobby(12L)); // same lane as 10 with two lanes
+        store.save(conflicting);
+        store.save(other);
+        when(lobbyRepository.saveAll(anyList())).thenThrow(new ObjectOptimisticLockingFailureException(Lobby.class, 10L));
+        when(lobbyRepository.findById(10L)).thenReturn(Optional.of(lobby(10L)));
+
+        store.flush();
+
+        assertEquals(1, store.getPendingWrites());
+        assertNotSame(conflicting, store.findById(10L).orElseThrow());
+        assertSame(other, store.findById(12L).orElseThrow());
+        assertEquals(1.0, meterRegistry.counter("lobby.write.conflicts", "lobby", "10").count());
+    }
+
+    @Test
+    public void delete_removesLobbyMetrics() {
+        Lobby lobby = store.create(lobby(14L));
+        metrics.recordConflict(14L);
+
+        store.delete(lobby);
+
+        assertTrue(meterRegistry.find("lobby.write.conflicts").tag("lobby", "14").counters().isEmpty());
+    }
+
+    @Test
+    public void findPage_swapsInLiveCopies() {
+        Lobby live = store.create(lobby(16L));
+        live.addPlayerId(4L);
+        store.save(live);
+        Lobby storedCopy = lobby(16L);
+        Lobby untouched = lobby(17L);
+        when(lobbyRepository.findPage(eq(0L), isNull(), isNull(), isNull(), eq(false), any()))
+                .thenReturn(List.of(storedCopy, untouched));
+
+        List<Lobby> page = store.findPage(0L, 10, null, null, null, false);
+
+        assertSame(live, page.get(0));
+        assertSame(untouched, page.get(1));
+    }
+
+    @Test
+    public void shared_writesThroughAndServesCachedCopyWithinTtl() {
+        LobbyStateStore shared = new LobbyStateStore(lobbyRepository, mailbox, metrics, true, 500, true, 60_000L, 100);
+        when(lobbyRepository.findById(20L)).thenReturn(Optional.of(lobby(20L)));
+
+        Lobby first = shared.findById(20L).orElseThrow();
+        first.addPlayerId(3L);
+        shared.save(first);
+
+        assertFalse(shared.isWriteBehind());
+        verify(lobbyRepository).save(first);
+        verify(lobbyRepository).flush();
+        assertEquals(0, shared.getPendingWrites());
+        assertSame(first, shared.findById(20L).orElseThrow());
+        verify(lobbyRepository, times(1)).findById(20L);
+    }
+
+    @Test
+    public void shared_expiredOrConflictingCopyIsReloaded() {
+        LobbyStateStore expiring = new LobbyStateStore(lobbyRepository, mailbox, metrics, true, 500, true, 0L, 100);
+        when(lobbyRepository.findById(22L)).thenReturn(Optional.of(lobby(22L)), Optional.of(lobby(22L)));
+        assertNotSame(expiring.findById(22L).orElseThrow(), expiring.findById(22L).orElseThrow());
+
+        LobbyStateStore shared = new LobbyStateStore(lobbyRepository, mailbox, metrics, true, 500, true, 60_000L, 100);
+        Lobby stale = shared.create(lobby(24L));
+        Lobby stored = lobby(24L);
+        when(lobbyRepository.save(stale)).thenThrow(new ObjectOptimisticLockingFailureException(Lobby.class, 24L));
+        when(lobbyRepository.findById(24L)).thenReturn(Optional.of(stored));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> shared.save(stale));
+
+        assertSame(stored, shared.findById(24L).orElseThrow());
+    }
+
+    @Test
+    public void save_overPendingLimit_queuesOneFlushOnTheLane() throws Exception {
+        LobbyStateStore limited = new LobbyStateStore(lobbyRepository, mailbox, metrics, true, 2, false, 0L, 0);
+        Lobby first = limited.create(lobby(30L));
+        Lobby second = limited.create(lobby(32L)); // same lane as 30 with two lanes
+        Lobby otherLane = limited.create(lobby(31L));
+
+        mailbox.submit(30L, () -> {
+            limited.save(otherLane);
+            limited.save(first);
+            limited.save(second); // over the limit again, the flush is already queued
+            verify(lobbyRepository, never()).saveAll(anyList());
+            return null;
+        });
+        mailbox.submitAsync(30L, () -> null).get(5, TimeUnit.SECONDS);
+
+        verify(lobbyRepository, times(1)).saveAll(argThat(batch -> Set.copyOf((List<Lobby>) batch).equals(Set.of(first, second))));
+        assertEquals(1, limited.getPendingWrites());
+    }
+}
@@ -0,0 +1,54 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OfflineWordBankTest {
+
+    private final OfflineWordBank bank = new OfflineWordBank();
+
+    @Test
+    public void everyLanguage_hasBundledCategories() {
+        for (String lang : OfflineWordBank.LANGUAGES) {
+            assertTrue(bank.size(lang, "animals") >= 50, lang);
+            assertTrue(bank.size(lang, "food") >= 50, lang);
+            assertTrue(bank.size(lang, "anything") > bank.size(lang, "animals"), lang);
+        }
+    }
+
+    @Test
+    public void draw_returnsDistinctWordsOfTheCategory() {
+        Set<String> animals = new HashSet<>(bank.draw("de", "animals", 1000, Set.of()));
+        assertEquals(bank.size("de", "animals"), animals.size());
+        assertTrue(animals.contains("Eichhörnchen"));
+
+        List<String> drawn = bank.draw("de", "animals", 10, Set.of());
+        assertEquals(10, drawn.size());
+        assertEquals(10, new HashSet<>(drawn).size());
+        assertTrue(animals.containsAll(drawn));
+    }
+
+    @Test
+    public void draw_skipsExcludedWords() {
+        List<String> all = bank.draw("en", "vehicles", 1000, Set.of());
+        Set<String> exclude = new HashSet<>(all.subList(0, all.size() - 2));
+
+        List<String> drawn = bank.draw("en", "vehicles", 5, exclude);
+
+        assertEquals(new HashSet<>(all.subList(all.size() - 2, all.size())), new HashSet<>(drawn));
+    }
+
+    @Test
+    public void lookup_caseAndPluralInsensitive_unknownFallsBack() {
+        assertEquals(bank.size("en", "animals"), bank.size("EN", " Animal "));
+        assertEquals(bank.size("en", "professions"), bank.size("en", "profession"));
+        assertEquals(bank.size("en", "animals"), bank.size("xx", "animals"));
+        assertEquals(bank.size("ch", "whatever"), bank.size("ch", null));
+        assertTrue(bank.draw("en", "animals", 0, Set.of()).isEmpty());
+    }
+}
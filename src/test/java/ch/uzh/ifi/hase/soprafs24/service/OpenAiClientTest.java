@@ -0,0 +1,159 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Retries, deadlines and error handling of {@link OpenAiClient} against a local
+ * stub of the completions endpoint.
+ */
+class OpenAiClientTest {
+
+    private HttpServer stub;
+    private OpenAiClient client;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch hang = new CountDownLatch(1);
+
+    @BeforeAll
+    static void apiKey() {
+        if (System.getenv("OPENAI_API_KEY") != null) {
+            return;
+        }
+        try {
+            Field field = Class.forName("java.lang.ProcessEnvironment").getDeclaredField("theCaseInsensitiveEnvironment");
+            field.setAccessible(true);
+            @SuppressWarnings("unchecked")
+            Map<String, String> env = (Map<String, String>) field.get(null);
+            env.put("OPENAI_API_KEY", "dummy-key");
+        } catch (Exception ignored) {
+            // the constructor will say so
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        hang.countDown();
+        if (client != null) {
+            client.stop();
+        }
+        if (stub != null) {
+            stub.stop(0);
+        }
+    }
+
+    @Test
+    void complete_returnsMessageContent() throws IOException {
+        client = stubbedClient(request -> 200, 2, 5_000L);
+
+        assertEquals("[\"apple\"]", client.complete("prompt", 0.8).block(Duration.ofSeconds(5)));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void complete_serverErrors_retriedWithBackoff() throws IOException {
+        client = stubbedClient(request -> request <= 2 ? 503 : 200, 2, 5_000L);
+
+        assertEquals("[\"apple\"]", client.complete("prompt", 0.8).block(Duration.ofSeconds(5)));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void complete_retriesExhausted_failsWithLastError() throws IOException {
+        client = stubbedClient(request -> 429, 2, 5_000L);
+
+        WebClientResponseException e = assertThrows(WebClientResponseException.class,
+                () -> client.complete("prompt", 0.8).block(Duration.ofSeconds(5)));
+        assertEquals(429, e.getRawStatusCode());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void complete_clientError_notRetried() throws IOException {
+        client = stubbedClient(request -> 401, 2, 5_000L);
+
+        assertThrows(WebClientResponseException.class,
+                () -> client.complete("prompt", 0.8).block(Duration.ofSeconds(5)));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void complete_slowUpstream_hitsDeadline() throws IOException {
+        client = stubbedClient(request -> -1, 0, 200L);
+
+        long start = System.nanoTime();
+        Exception e = assertThrows(Exception.class, () -> client.complete("prompt", 0.8).block(Duration.ofSeconds(5)));
+        assertTrue(e instanceof TimeoutException || e.getCause() instanceof TimeoutException, e.toString());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000);
+    }
+
+    @Test
+    void complete_breakerOpen_failsWithoutCallingUpstream() throws IOException {
+        client = stubbedClient(request -> 503, 1, 5_000L);
+        assertThrows(WebClientResponseException.class, () -> client.complete("prompt", 0.8).block(Duration.ofSeconds(5)));
+        assertThrows(WebClientResponseException.class, () -> client.complete("prompt", 0.8).block(Duration.ofSeconds(5)));
+        assertEquals(4, requests.get());
+
+        assertFalse(client.isAvailable());
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> client.complete("prompt", 0.8).block(Duration.ofSeconds(5)));
+        assertTrue(e.getMessage().contains("circuit breaker"));
+        assertEquals(4, requests.get());
+    }
+
+    @Test
+    void isRetryable_onlyTransientFailures() {
+        assertTrue(OpenAiClient.isRetryable(new TimeoutException()));
+        assertTrue(OpenAiClient.isRetryable(WebClientResponseException.create(500, "", null, null, null)));
+        assertFalse(OpenAiClient.isRetryable(WebClientResponseException.create(400, "", null, null, null)));
+        assertFalse(OpenAiClient.isRetryable(new IllegalStateException("unreadable")));
+    }
+
+    /**
+     * Client against a stub answering the n-th request (1-based) with the given
+     * status; -1 hangs until the test ends.
+     */
+    private OpenAiClient stubbedClient(IntUnaryOperator status, int maxRetries, long timeoutMs) throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newCachedThreadPool());
+        stub.createContext("/", exchange -> {
+            int code = status.applyAsInt(requests.incrementAndGet());
+            if (code < 0) {
+                try {
+                    hang.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                code = 200;
+            }
+            byte[] body = "{\"choices\":[{\"message\":{\"content\":\"[\\\"apple\\\"]\"}}]}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(code, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        stub.start();
+        return new OpenAiClient("http://127.0.0.1:" + stub.getAddress().getPort() + "/",
+                4, timeoutMs, maxRetries, 10L, 50L, 2, 5_000L, 60_000L);
+    }
+}
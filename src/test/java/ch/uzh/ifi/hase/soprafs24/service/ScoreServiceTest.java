@@ -0,0 +1,167 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserScoreView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+public class ScoreServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private ScoreService scoreService;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        scoreService = new ScoreService(userRepository, 10_000);
+        when(userRepository.findScoresAfter(eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(score(1L, 400), score(2L, 900), score(3L, 400)));
+        when(userRepository.addToTotalScore(anyLong(), anyLong())).thenReturn(1);
+        scoreService.loadLeaderboard();
+    }
+
+    @Test
+    public void guessPoints_earlierGuessScoresMore() {
+        Lobby lobby = new Lobby();
+        lobby.setDrawTime(80);
+        lobby.setRoundEndsAt(100_000L);
+
+        assertEquals(300, scoreService.guessPoints(lobby, 20_000L));
+        assertEquals(175, scoreService.guessPoints(lobby, 60_000L));
+        assertEquals(50, scoreService.guessPoints(lobby, 120_000L));
+
+        lobby.setRoundEndsAt(null);
+        assertEquals(ScoreService.UNTIMED_GUESS_POINTS, scoreService.guessPoints(lobby, 60_000L));
+    }
+
+    @Test
+    public void markScored_onlyCountsForTheRunningTurn() {
+        Lobby lobby = new Lobby();
+        lobby.setId(424242L);
+        lobby.setPlayerIds(List.of(10L, 20L, 30L));
+        lobby.setCurrentWord("cat");
+        lobby.setRoundEndsAt(1_000L);
+
+        scoreService.markScored(lobby, 20L);
+        assertTrue(scoreService.hasScored(lobby, 20L));
+        assertFalse(scoreService.hasScored(lobby, 30L));
+
+        lobby.setRoundEndsAt(2_000L); // next painter's turn
+        assertFalse(scoreService.hasScored(lobby, 20L));
+    }
+
+    @Test
+    public void markScored_leavingPlayerKeepsOthersMarks() {
+        Lobby lobby = new Lobby();
+        lobby.setPlayerIds(List.of(10L, 20L, 30L));
+        scoreService.markScored(lobby, 30L);
+
+        lobby.removePlayerId(20L);
+
+        assertTrue(scoreService.hasScored(lobby, 30L));
+        assertFalse(scoreService.hasScored(lobby, 10L));
+    }
+
+    @Test
+    public void awardPoints_shared_takesStoredTotalWithOtherInstancesAwards() {
+        ScoreService sharedScores = new ScoreService(userRepository, 10_000, true);
+        sharedScores.loadLeaderboard();
+        // another instance awarded 500 to user 1 since loading
+        when(userRepository.findTotalScoreById(1L)).thenReturn(1_000L);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user(1L, "ann")));
+
+        assertEquals(1_000, sharedScores.awardPoints(1L, 100));
+        assertEquals(1, sharedScores.getStanding(1L).getRank());
+    }
+
+    @Test
+    public void awardPoints_movesUserUpTheLeaderboard() {
+        assertEquals(1000, scoreService.awardPoints(1L, 600));
+
+        when(userRepository.findAllById(any())).thenReturn(List.of(user(1L, "ann"), user(2L, "bob")));
+        List<ScoreService.Standing> top = scoreService.getTopPlayers(2);
+
+        assertEquals(1L, top.get(0).getUserId());
+        assertEquals("ann", top.get(0).getUsername());
+        assertEquals(1000, top.get(0).getScore());
+        assertEquals(2, top.get(1).getRank());
+    }
+
+    @Test
+    public void awardPoints_userNotLoaded_startsFromStoredTotal() {
+        when(userRepository.findTotalScoreById(7L)).thenReturn(150L);
+
+        assertEquals(150, scoreService.awardPoints(7L, 100));
+        assertEquals(4, scoreService.getTopPlayers(10).size());
+    }
+
+    @Test
+    public void awardPoints_unknownUser_isIgnored() {
+        when(userRepository.addToTotalScore(99L, 100L)).thenReturn(0);
+
+        assertEquals(-1, scoreService.awardPoints(99L, 100));
+    }
+
+    @Test
+    public void getStanding_sharedScore_sharesRank() {
+        when(userRepository.findById(3L)).thenReturn(Optional.of(user(3L, "cem")));
+
+        ScoreService.Standing standing = scoreService.getStanding(3L);
+
+        assertEquals(400, standing.getScore());
+        assertEquals(2, standing.getRank());
+    }
+
+    @Test
+    public void getStanding_unknownUser_throwsNotFound() {
+        when(userRepository.findById(99L)).thenReturn(Optional.empty());
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> scoreService.getStanding(99L));
+        assertEquals(HttpStatus.NOT_FOUND, ex.getStatus());
+    }
+
+    @Test
+    public void getTopPlayers_limitOutOfRange_throwsBadRequest() {
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> scoreService.getTopPlayers(0));
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+    }
+
+    private static UserScoreView score(Long id, long totalScore) {
+        return new UserScoreView() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public long getTotalScore() {
+                return totalScore;
+            }
+        };
+    }
+
+    private static User user(Long id, String username) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        return user;
+    }
+}
@@ -0,0 +1,201 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.repository.LobbyRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two instances in shared mode, each with its own LobbyStateStore and
+ * LobbyIdAllocator, over one database: the embedded test database stands in
+ * for the shared one. Every repository call commits on its own, as it does
+ * on the lobby mailbox lanes.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class SharedLobbyStateIntegrationTest {
+
+    @Autowired
+    private LobbyRepository lobbyRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private LobbyContentionMetrics metrics;
+    private LobbyMailbox mailbox;
+    private LobbyStateStore storeA;
+    private LobbyStateStore storeB;
+    private final List<Long> reloadedOnB = new ArrayList<>();
+    private RoundTimer roundTimer;
+
+    @BeforeEach
+    public void setup() {
+        metrics = new LobbyContentionMetrics(new SimpleMeterRegistry());
+        mailbox = new LobbyMailbox(2);
+        storeA = new LobbyStateStore(lobbyRepository, mailbox, metrics, true, 500, true, 60_000L, 100);
+        storeB = new LobbyStateStore(lobbyRepository, mailbox, metrics, true, 500, true, 60_000L, 100) {
+            @Override
+            public List<Lobby> findStored(Collection<Long> ids) {
+                reloadedOnB.addAll(ids);
+                return super.findStored(ids);
+            }
+        };
+        roundTimer = new RoundTimer(5, 64, 1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        roundTimer.stop();
+        lobbyRepository.deleteAll();
+    }
+
+    private List<Map<String, Object>> browserOf(LobbyBrowserSnapshot snapshot) throws Exception {
+        return new ObjectMapper().readValue(snapshot.current().getBody(), new TypeReference<List<Map<String, Object>>>() {});
+    }
+
+    private Lobby newLobby(long id, long owner) {
+        Lobby lobby = new Lobby();
+        lobby.setId(id);
+        lobby.setLobbyOwner(owner);
+        lobby.setNumOfMaxPlayers(8L);
+        lobby.setPlayerIds(List.of(owner));
+        lobby.setLanguage("en");
+        lobby.setNumOfRounds(3L);
+        lobby.setDrawTime(80);
+        return lobby;
+    }
+
+    @Test
+    public void lobbyCreatedOnOneInstance_isFoundAndChangedOnAnother() {
+        Lobby created = storeA.create(newLobby(123456L, 1L));
+
+        Lobby onB = storeB.findById(created.getId()).orElseThrow();
+        onB.addPlayerId(2L);
+        storeB.save(onB);
+
+        assertEquals(List.of(1L, 2L), lobbyRepository.findById(created.getId()).orElseThrow().getPlayerIds());
+        assertEquals(1, storeA.findAll().size());
+    }
+
+    @Test
+    public void staleCachedCopy_conflictsAndRetryRunsOnStoredLobby() {
+        storeA.create(newLobby(234567L, 1L));
+        Lobby onB = storeB.findById(234567L).orElseThrow();
+        onB.addPlayerId(2L);
+        storeB.save(onB);
+
+        Lobby staleOnA = storeA.findById(234567L).orElseThrow();
+        staleOnA.addPlayerId(3L);
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> storeA.save(staleOnA));
+
+        LobbyWriteRetry retry = new LobbyWriteRetry(metrics, 3, 0L, 0L);
+        Lobby saved = retry.run(234567L, () -> {
+            Lobby lobby = storeA.findById(234567L).orElseThrow();
+            lobby.addPlayerId(3L);
+            return storeA.save(lobby);
+        }, () -> storeA.evict(234567L));
+
+        assertEquals(List.of(1L, 2L, 3L), saved.getPlayerIds());
+    }
+
+    @Test
+    public void guessScoredOnOneInstance_isSeenAndConflictsOnAnother() {
+        Lobby lobby = newLobby(345678L, 1L);
+        lobby.addPlayerId(2L);
+        lobby.setRoundEndsAt(5_000L);
+        storeA.create(lobby);
+        Lobby staleOnB = storeB.findById(345678L).orElseThrow();
+
+        Lobby onA = storeA.findById(345678L).orElseThrow();
+        onA.markGuessed(2L);
+        storeA.save(onA);
+
+        staleOnB.markGuessed(2L);
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> storeB.save(staleOnB));
+        storeB.evict(345678L);
+        assertTrue(storeB.findById(345678L).orElseThrow().hasGuessed(2L));
+    }
+
+    @Test
+    public void refreshSharedLobbies_reloadsOnlyLobbiesOtherInstancesChanged() throws Exception {
+        LobbyBrowserSnapshot snapshotB = new LobbyBrowserSnapshot(new ObjectMapper(), new UserService(userRepository));
+        LobbyService serviceB = new LobbyService(storeB, mailbox, new LobbyWriteRetry(metrics, 3, 0L, 0L),
+                new LobbyIdAllocator(lobbyRepository, 13L), snapshotB, new LobbyEventHub(new ObjectMapper(), new UserService(userRepository), 15000L),
+                roundTimer, new GuessEvaluator(), new ScoreService(userRepository, 10_000), new UserService(userRepository));
+        storeA.create(newLobby(456789L, 1L));
+        storeA.create(newLobby(567890L, 1L));
+
+        serviceB.refreshSharedLobbies();
+        assertEquals(2, browserOf(snapshotB).size());
+
+        Lobby onA = storeA.findById(456789L).orElseThrow();
+        onA.addPlayerId(2L);
+        storeA.save(onA);
+        storeA.delete(storeA.findById(567890L).orElseThrow());
+        reloadedOnB.clear();
+        serviceB.refreshSharedLobbies();
+
+        assertEquals(List.of(456789L), reloadedOnB);
+        List<Map<String, Object>> browser = browserOf(snapshotB);
+        assertEquals(1, browser.size());
+        assertEquals(List.of(1, 2), browser.get(0).get("playerIds"));
+
+        reloadedOnB.clear();
+        serviceB.refreshSharedLobbies();
+        assertTrue(reloadedOnB.isEmpty());
+    }
+
+    @Test
+    public void refreshSharedLobbies_publishesOtherInstancesChangesToStreams() {
+        LobbyEventHub hubB = Mockito.spy(new LobbyEventHub(new ObjectMapper(), new UserService(userRepository), 15000L));
+        LobbyService serviceB = new LobbyService(storeB, mailbox, new LobbyWriteRetry(metrics, 3, 0L, 0L),
+                new LobbyIdAllocator(lobbyRepository, 13L), new LobbyBrowserSnapshot(new ObjectMapper(), new UserService(userRepository)), hubB,
+                roundTimer, new GuessEvaluator(), new ScoreService(userRepository, 10_000), new UserService(userRepository));
+        storeA.create(newLobby(678901L, 1L));
+        serviceB.refreshSharedLobbies();
+
+        Lobby onA = storeA.findById(678901L).orElseThrow();
+        onA.addPlayerId(2L);
+        storeA.save(onA);
+        serviceB.refreshSharedLobbies();
+        Mockito.verify(hubB, Mockito.timeout(2000))
+                .publish(Mockito.argThat(lobby -> lobby.getPlayerIds().equals(List.of(1L, 2L))));
+
+        storeA.delete(storeA.findById(678901L).orElseThrow());
+        serviceB.refreshSharedLobbies();
+        Mockito.verify(hubB, Mockito.timeout(2000)).close(678901L);
+    }
+
+    @Test
+    public void sameIdOnTwoInstances_secondInsertFailsOnPrimaryKey() {
+        // same key: both allocators hand out the same first id
+        long idA = new LobbyIdAllocator(lobbyRepository, 11L).allocate();
+        long idB = new LobbyIdAllocator(lobbyRepository, 11L).allocate();
+        assertEquals(idA, idB);
+        storeA.create(newLobby(idA, 1L));
+
+        assertThrows(DataIntegrityViolationException.class, () -> storeB.create(newLobby(idB, 2L)));
+
+        assertTrue(storeB.exists(idB));
+        assertEquals(List.of(1L), lobbyRepository.findById(idA).orElseThrow().getPlayerIds());
+    }
+}
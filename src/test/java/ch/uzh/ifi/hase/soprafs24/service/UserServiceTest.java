@@ -4,6 +4,7 @@ import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserTokenView;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mindrot.jbcrypt.BCrypt;
@@ -15,6 +16,7 @@ import org.springframework.web.server.ResponseStatusException;
 import javax.persistence.EntityNotFoundException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Collections;
 import static org.mockito.Mockito.never;
@@ -347,4 +349,21 @@ public class UserServiceTest {
 
     }
 
+    @Test
+    public void getTokensByIds_singleQuery_skipsUnknownIds() {
+        // given only user 1 exists
+        UserTokenView view = mock(UserTokenView.class);
+        when(view.getId()).thenReturn(1L);
+        when(view.getToken()).thenReturn("token1");
+        when(userRepository.findTokensByIdIn(List.of(1L, 2L))).thenReturn(List.of(view));
+
+        // when
+        Map<Long, String> tokens = userService.getTokensByIds(List.of(1L, 2L));
+
+        // then one repository call, unknown id absent
+        assertEquals(Map.of(1L, "token1"), tokens);
+        verify(userRepository, times(1)).findTokensByIdIn(any());
+        verify(userRepository, never()).findById(any());
+    }
+
 }
@@ -0,0 +1,163 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Batching of {@link WordRequestCoalescer} against a local completions stub
+ * that answers single prompts with an array and numbered prompts with an
+ * object of arrays.
+ */
+class WordRequestCoalescerTest {
+
+    private static final Pattern NUMBERED = Pattern.compile("(?m)^(\\d+)\\. (\\d+) nouns in the category '([^']*)'");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> prompts = new CopyOnWriteArrayList<>();
+    private HttpServer stub;
+    private OpenAiClient client;
+
+    @BeforeAll
+    static void apiKey() {
+        if (System.getenv("OPENAI_API_KEY") != null) {
+            return;
+        }
+        try {
+            Field field = Class.forName("java.lang.ProcessEnvironment").getDeclaredField("theCaseInsensitiveEnvironment");
+            field.setAccessible(true);
+            @SuppressWarnings("unchecked")
+            Map<String, String> env = (Map<String, String>) field.get(null);
+            env.put("OPENAI_API_KEY", "dummy-key");
+        } catch (Exception ignored) {
+            // the constructor will say so
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (client != null) {
+            client.stop();
+        }
+        if (stub != null) {
+            stub.stop(0);
+        }
+    }
+
+    @Test
+    void requestsInOneWindow_shareOneCompletion() throws Exception {
+        WordRequestCoalescer coalescer = new WordRequestCoalescer(stubbedClient(), 200L, 5);
+
+        CompletableFuture<List<String>> animals = coalescer.fetch("en", "animals", 3).toFuture();
+        CompletableFuture<List<String>> food = coalescer.fetch("de", "food", 2).toFuture();
+        CompletableFuture<List<String>> sports = coalescer.fetch("ch", "sports", 4).toFuture();
+
+        assertEquals(3, animals.get(5, TimeUnit.SECONDS).size());
+        assertTrue(animals.get().stream().allMatch(word -> word.startsWith("animals-")));
+        assertEquals(2, food.get(5, TimeUnit.SECONDS).size());
+        assertTrue(food.get().stream().allMatch(word -> word.startsWith("food-")));
+        assertEquals(4, sports.get(5, TimeUnit.SECONDS).size());
+        assertEquals(1, prompts.size());
+        assertTrue(prompts.get(0).contains("in German"));
+        assertTrue(prompts.get(0).contains("in Swiss German"));
+    }
+
+    @Test
+    void fullBatch_isSentWithoutWaitingForTheWindow() throws Exception {
+        WordRequestCoalescer coalescer = new WordRequestCoalescer(stubbedClient(), 10_000L, 2);
+
+        CompletableFuture<List<String>> animals = coalescer.fetch("en", "animals", 1).toFuture();
+        CompletableFuture<List<String>> food = coalescer.fetch("en", "food", 1).toFuture();
+
+        assertEquals(1, animals.get(2, TimeUnit.SECONDS).size());
+        assertEquals(1, food.get(2, TimeUnit.SECONDS).size());
+        assertEquals(1, prompts.size());
+    }
+
+    @Test
+    void requestAloneInWindow_usesSingleCategoryPrompt() throws Exception {
+        WordRequestCoalescer coalescer = new WordRequestCoalescer(stubbedClient(), 10L, 5);
+
+        List<String> words = coalescer.fetch("en", "vehicles", 5).block(Duration.ofSeconds(5));
+
+        assertEquals(5, words.size());
+        assertTrue(prompts.get(0).startsWith("Give me 5 random"));
+    }
+
+    @Test
+    void parseBatch_missingOrMalformedEntries_getNoWords() {
+        client = new OpenAiClient();
+        WordRequestCoalescer coalescer = new WordRequestCoalescer(client, 10L, 5);
+
+        List<List<String>> answers = coalescer.parseBatch("{\"1\": [\"a\", \"a\", \"b\"], \"3\": \"c\"}", 3);
+
+        assertEquals(2, answers.get(0).size());
+        assertTrue(answers.get(1).isEmpty());
+        assertTrue(answers.get(2).isEmpty());
+        assertThrows(IllegalStateException.class, () -> coalescer.parseBatch("[\"a\"]", 1));
+    }
+
+    private OpenAiClient stubbedClient() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newCachedThreadPool());
+        stub.createContext("/", exchange -> {
+            String prompt = objectMapper.readTree(exchange.getRequestBody())
+                    .path("messages").path(0).path("content").asText();
+            prompts.add(prompt);
+            String content;
+            Matcher numbered = NUMBERED.matcher(prompt);
+            if (numbered.find()) {
+                Map<String, List<String>> answer = new LinkedHashMap<>();
+                do {
+                    answer.put(numbered.group(1), words(numbered.group(3), Integer.parseInt(numbered.group(2))));
+                } while (numbered.find());
+                content = objectMapper.writeValueAsString(answer);
+            }
+            else {
+                Matcher single = Pattern.compile("Give me (\\d+) .* category '([^']*)'").matcher(prompt);
+                assertTrue(single.find(), prompt);
+                content = objectMapper.writeValueAsString(words(single.group(2), Integer.parseInt(single.group(1))));
+            }
+            byte[] body = objectMapper.writeValueAsBytes(
+                    Map.of("choices", List.of(Map.of("message", Map.of("content", content)))));
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        stub.start();
+        client = new OpenAiClient("http://127.0.0.1:" + stub.getAddress().getPort() + "/",
+                4, 5_000L, 0, 10L, 10L, 2, 5_000L, 60_000L);
+        return client;
+    }
+
+    private static List<String> words(String category, int count) {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            words.add(category + "-" + i);
+        }
+        return words;
+    }
+}
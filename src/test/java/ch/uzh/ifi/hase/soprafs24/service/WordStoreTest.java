@@ -0,0 +1,84 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WordStoreTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(100));
+    private final WordStore store = new WordStore("jdbc:h2:mem:words-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", 30, now::get);
+
+    @AfterEach
+    public void tearDown() {
+        store.stop();
+    }
+
+    @Test
+    public void save_sameWordTwice_storedOnceWithFirstFetchTime() throws Exception {
+        long firstFetch = now.get();
+        store.save("en", "Animals", List.of("Dog", "cat")).get(5, TimeUnit.SECONDS);
+        now.addAndGet(1_000);
+        store.save("EN", "animals", List.of("dog ", "owl")).get(5, TimeUnit.SECONDS);
+
+        List<WordStore.Entry> entries = store.load();
+
+        assertEquals(3, entries.size());
+        WordStore.Entry dog = entries.stream().filter(entry -> entry.getWord().equals("Dog")).findFirst().orElseThrow();
+        assertEquals("en", dog.getLang());
+        assertEquals("animals", dog.getCategory());
+        assertEquals(firstFetch, dog.getFetchedAt());
+    }
+
+    @Test
+    public void load_groupsByCategoryOldestFirst() throws Exception {
+        store.save("de", "food", List.of("Brot")).get(5, TimeUnit.SECONDS);
+        store.save("en", "food", List.of("bread")).get(5, TimeUnit.SECONDS);
+        now.addAndGet(1_000);
+        store.save("de", "food", List.of("Käse")).get(5, TimeUnit.SECONDS);
+
+        List<WordStore.Entry> entries = store.load();
+
+        assertEquals(List.of("Brot", "Käse", "bread"), entries.stream().map(WordStore.Entry::getWord).toList());
+    }
+
+    @Test
+    public void load_dropsEntriesOlderThanMaxAge() throws Exception {
+        store.save("en", "food", List.of("bread")).get(5, TimeUnit.SECONDS);
+        now.addAndGet(TimeUnit.DAYS.toMillis(20));
+        store.save("en", "food", List.of("cheese")).get(5, TimeUnit.SECONDS);
+        now.addAndGet(TimeUnit.DAYS.toMillis(15));
+
+        List<WordStore.Entry> entries = store.load();
+
+        assertEquals(1, entries.size());
+        assertEquals("cheese", entries.get(0).getWord());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void disabledStore_keepsNothing() throws Exception {
+        WordStore disabled = new WordStore("", 30);
+        disabled.save("en", "food", List.of("bread")).get(5, TimeUnit.SECONDS);
+
+        assertFalse(disabled.isEnabled());
+        assertTrue(disabled.load().isEmpty());
+        assertEquals(0, disabled.size());
+    }
+
+    @Test
+    public void unreachableDatabase_disablesStoreInsteadOfFailing() throws Exception {
+        WordStore unreachable = new WordStore("jdbc:h2:tcp://127.0.0.1:1/words", 30);
+        unreachable.save("en", "food", List.of("bread")).get(5, TimeUnit.SECONDS);
+
+        assertFalse(unreachable.isEnabled());
+        assertTrue(unreachable.load().isEmpty());
+        unreachable.stop();
+    }
+}
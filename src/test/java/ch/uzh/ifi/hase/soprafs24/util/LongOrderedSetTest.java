@@ -0,0 +1,70 @@
+package ch.uzh.ifi.hase.soprafs24.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LongOrderedSetTest {
+
+    @Test
+    public void add_keepsInsertionOrderAndRejectsDuplicates() {
+        LongOrderedSet set = new LongOrderedSet();
+
+        assertTrue(set.add(30L));
+        assertTrue(set.add(10L));
+        assertTrue(set.add(20L));
+        assertFalse(set.add(10L));
+
+        assertEquals(3, set.size());
+        assertArrayEquals(new long[]{30L, 10L, 20L}, set.toArray());
+        assertEquals(1, set.indexOf(10L));
+        assertEquals(-1, set.indexOf(99L));
+    }
+
+    @Test
+    public void remove_shiftsLaterMembersForward() {
+        LongOrderedSet set = new LongOrderedSet();
+        set.add(1L);
+        set.add(2L);
+        set.add(3L);
+
+        assertTrue(set.remove(2L));
+        assertFalse(set.remove(2L));
+
+        assertFalse(set.contains(2L));
+        assertArrayEquals(new long[]{1L, 3L}, set.toArray());
+        assertEquals(1, set.indexOf(3L));
+    }
+
+    @Test
+    public void randomOperations_matchLinkedHashSet() {
+        Random random = new Random(42);
+        LongOrderedSet set = new LongOrderedSet(2);
+        LinkedHashSet<Long> reference = new LinkedHashSet<>();
+
+        for (int i = 0; i < 20000; i++) {
+            long value = random.nextInt(64) * 1024L; // same low bits to force probe collisions
+            if (random.nextBoolean()) {
+                assertEquals(reference.add(value), set.add(value));
+            }
+            else {
+                assertEquals(reference.remove(value), set.remove(value));
+            }
+            assertEquals(reference.size(), set.size());
+        }
+
+        List<Long> actual = new ArrayList<>();
+        for (long value : set.toArray()) {
+            actual.add(value);
+        }
+        assertEquals(new ArrayList<>(reference), actual);
+        for (Long value : reference) {
+            assertTrue(set.contains(value));
+        }
+    }
+}
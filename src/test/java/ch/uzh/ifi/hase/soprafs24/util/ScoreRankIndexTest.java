@@ -0,0 +1,104 @@
+package ch.uzh.ifi.hase.soprafs24.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScoreRankIndexTest {
+
+    @Test
+    public void rank_equalScoresShareRank() {
+        ScoreRankIndex index = new ScoreRankIndex(1000);
+        index.put(1L, 300);
+        index.put(2L, 500);
+        index.put(3L, 300);
+        index.put(4L, 100);
+
+        assertEquals(1, index.rank(2L));
+        assertEquals(2, index.rank(1L));
+        assertEquals(2, index.rank(3L));
+        assertEquals(4, index.rank(4L));
+        assertEquals(0, index.rank(99L));
+        assertEquals(4, index.rankOfScore(200));
+    }
+
+    @Test
+    public void top_bestFirst_tiesInArrivalOrder() {
+        ScoreRankIndex index = new ScoreRankIndex(1000);
+        index.put(1L, 300);
+        index.put(2L, 500);
+        index.put(3L, 300);
+        index.put(4L, 100);
+
+        List<ScoreRankIndex.Entry> top = index.top(3);
+
+        assertEquals(3, top.size());
+        assertEquals(List.of(2L, 1L, 3L), userIds(top));
+        assertEquals(1, top.get(0).getRank());
+        assertEquals(2, top.get(2).getRank());
+        assertEquals(300, top.get(2).getScore());
+        assertEquals(4, index.top(10).size());
+    }
+
+    @Test
+    public void add_movesUserToNewScore() {
+        ScoreRankIndex index = new ScoreRankIndex(1000);
+        index.put(1L, 100);
+        index.put(2L, 200);
+
+        assertEquals(250, index.add(1L, 150));
+        assertEquals(50, index.add(3L, 50));
+
+        assertEquals(List.of(1L, 2L, 3L), userIds(index.top(3)));
+        assertEquals(250, index.getScore(1L));
+        assertEquals(-1, index.getScore(99L));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void put_scoreAboveMax_sharesTopBucket() {
+        ScoreRankIndex index = new ScoreRankIndex(100);
+        index.put(1L, 150);
+        index.put(2L, 5000);
+        index.put(3L, 99);
+
+        assertEquals(1, index.rank(1L));
+        assertEquals(1, index.rank(2L));
+        assertEquals(3, index.rank(3L));
+        assertEquals(5000, index.getScore(2L));
+    }
+
+    @Test
+    public void randomUpdates_matchSortedScores() {
+        Random random = new Random(17);
+        ScoreRankIndex index = new ScoreRankIndex(4095);
+        Map<Long, Long> scores = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            long userId = random.nextInt(2_000);
+            long points = random.nextInt(60) - 10;
+            scores.put(userId, Math.max(0, scores.getOrDefault(userId, 0L) + points));
+            assertEquals(scores.get(userId), index.add(userId, points));
+        }
+
+        List<Long> sorted = new ArrayList<>(scores.values());
+        sorted.sort(Comparator.reverseOrder());
+        for (Map.Entry<Long, Long> entry : scores.entrySet()) {
+            assertEquals(sorted.indexOf(entry.getValue()) + 1, index.rank(entry.getKey()));
+        }
+        List<ScoreRankIndex.Entry> top = index.top(50);
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(sorted.get(i), top.get(i).getScore());
+            assertEquals(sorted.indexOf(top.get(i).getScore()) + 1, top.get(i).getRank());
+        }
+    }
+
+    private static List<Long> userIds(List<ScoreRankIndex.Entry> entries) {
+        List<Long> ids = new ArrayList<>();
+        for (ScoreRankIndex.Entry entry : entries) {
+            ids.add(entry.getUserId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,87 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Lobby;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
+import ch.uzh.ifi.hase.soprafs24.service.LobbyService;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+public class LobbyHandshakeInterceptorTest {
+
+    private final LobbyService lobbyService = Mockito.mock(LobbyService.class);
+    private final UserService userService = Mockito.mock(UserService.class);
+    private final LobbyHandshakeInterceptor interceptor = new LobbyHandshakeInterceptor(lobbyService, userService);
+
+    private final Map<String, Object> attributes = new HashMap<>();
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    public void setup() {
+        Lobby lobby = new Lobby();
+        lobby.setId(123456L);
+        lobby.setPlayerIds(List.of(1L, 2L));
+        when(lobbyService.getLobbyById(123456L)).thenReturn(lobby);
+        when(userService.findByToken("token2")).thenReturn(user(2L));
+        when(userService.findByToken("token3")).thenReturn(user(3L));
+        when(userService.findByToken("unknown")).thenThrow(new UserNotFoundException("unknown"));
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+
+    private boolean handshake(String query) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ws/lobbies/123456/strokes");
+        request.setQueryString(query);
+        response = new MockHttpServletResponse();
+        return interceptor.beforeHandshake(new ServletServerHttpRequest(request),
+                new ServletServerHttpResponse(response), null, attributes);
+    }
+
+    @Test
+    public void beforeHandshake_memberToken_storesTheirId() {
+        assertTrue(handshake("token=token2"));
+
+        assertEquals(123456L, attributes.get(LobbyHandshakeInterceptor.LOBBY_ID));
+        assertEquals(2L, attributes.get(LobbyHandshakeInterceptor.PLAYER_ID));
+    }
+
+    @Test
+    public void beforeHandshake_playerIdWithoutToken_isRejected() {
+        assertFalse(handshake("playerId=2"));
+
+        assertEquals(400, response.getStatus());
+        assertTrue(attributes.isEmpty());
+    }
+
+    @Test
+    public void beforeHandshake_unknownToken_isUnauthorized() {
+        assertFalse(handshake("token=unknown"));
+
+        assertEquals(401, response.getStatus());
+    }
+
+    @Test
+    public void beforeHandshake_nonMember_isForbidden() {
+        assertFalse(handshake("token=token3"));
+
+        assertEquals(403, response.getStatus());
+        assertTrue(attributes.isEmpty());
+    }
+}
@@ -0,0 +1,46 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PainterCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicLong painter = new AtomicLong(10L);
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final PainterCache cache = new PainterCache(lobbyId -> {
+        lookups.incrementAndGet();
+        return painter.get();
+    }, 250L, now::get);
+
+    @Test
+    public void isPainter_looksUpOncePerInterval() {
+        assertTrue(cache.isPainter(1L, 10L));
+        assertFalse(cache.isPainter(1L, 20L));
+        assertEquals(1, lookups.get());
+
+        painter.set(20L); // next turn
+        now.set(100L);
+        assertTrue(cache.isPainter(1L, 10L));
+
+        now.set(250L);
+        assertFalse(cache.isPainter(1L, 10L));
+        assertTrue(cache.isPainter(1L, 20L));
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void isPainter_deletedLobby_nobodyPaints() {
+        PainterCache deleted = new PainterCache(lobbyId -> {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }, 250L, now::get);
+
+        assertFalse(deleted.isPainter(1L, 10L));
+    }
+}
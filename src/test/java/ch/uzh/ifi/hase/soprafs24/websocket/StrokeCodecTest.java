@@ -0,0 +1,105 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StrokeCodecTest {
+
+    @Test
+    public void roundTrip_paletteColourWithPressure() {
+        Stroke stroke = new Stroke(42L, 0xEF130B, 4.5f, false,
+                new int[]{100, 103, 107, 104}, new int[]{200, 198, 199, 210},
+                new float[]{0f, 0.5f, 1f, 0.25f});
+
+        byte[] encoded = StrokeCodec.encode(stroke);
+        Stroke decoded = StrokeCodec.decode(ByteBuffer.wrap(encoded));
+
+        assertEquals(42L, decoded.getStrokeId());
+        assertEquals(0xEF130B, decoded.getColor());
+        assertEquals(4.5f, decoded.getWidth());
+        assertFalse(decoded.isLast());
+        assertEquals(4, decoded.getPointCount());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(stroke.getX(i), decoded.getX(i));
+            assertEquals(stroke.getY(i), decoded.getY(i));
+            assertEquals(stroke.getPressure(i), decoded.getPressure(i), 1f / 255);
+        }
+    }
+
+    @Test
+    public void roundTrip_customColourNegativeCoordinatesWithoutPressure() {
+        Stroke stroke = new Stroke(Long.MAX_VALUE, 0x123456, 1f, true,
+                new int[]{-5, 70000, Integer.MIN_VALUE}, new int[]{0, -1, Integer.MAX_VALUE}, null);
+
+        Stroke decoded = StrokeCodec.decode(ByteBuffer.wrap(StrokeCodec.encode(stroke)));
+
+        assertEquals(Long.MAX_VALUE, decoded.getStrokeId());
+        assertEquals(0x123456, decoded.getColor());
+        assertTrue(decoded.isLast());
+        assertFalse(decoded.hasPressure());
+        assertEquals(-5, decoded.getX(0));
+        assertEquals(70000, decoded.getX(1));
+        assertEquals(Integer.MIN_VALUE, decoded.getX(2));
+        assertEquals(Integer.MAX_VALUE, decoded.getY(2));
+    }
+
+    @Test
+    public void roundTrip_clear() {
+        byte[] encoded = StrokeCodec.encode(Stroke.clear());
+
+        assertTrue(StrokeCodec.isClear(encoded));
+        assertTrue(StrokeCodec.decode(ByteBuffer.wrap(encoded)).isClear());
+        assertFalse(StrokeCodec.isClear(StrokeCodec.encode(new Stroke(1L, 0, 1f, true, new int[0], new int[0], null))));
+    }
+
+    @Test
+    public void encode_quantizesWidth_toHalfPixels() {
+        Stroke stroke = new Stroke(1L, 0, 2.3f, false, new int[]{0}, new int[]{0}, null);
+
+        assertEquals(2.5f, StrokeCodec.decode(ByteBuffer.wrap(StrokeCodec.encode(stroke))).getWidth());
+    }
+
+    @Test
+    public void encode_smallDeltas_takeTwoBytesPerPoint() {
+        int points = 100;
+        int[] xs = new int[points];
+        int[] ys = new int[points];
+        for (int i = 1; i < points; i++) {
+            xs[i] = xs[i - 1] + 3;
+            ys[i] = ys[i - 1] - 2;
+        }
+        Stroke stroke = new Stroke(1L, 0x000000, 3f, false, xs, ys, null);
+
+        // header: version, flags, id, palette index, width, count (1 byte each)
+        assertEquals(6 + 2 * points, StrokeCodec.encode(stroke).length);
+    }
+
+    @Test
+    public void decode_truncatedFrame_throwsIllegalArgument() {
+        Stroke stroke = new Stroke(9L, 0x00CC00, 2f, false, new int[]{1, 2, 3}, new int[]{4, 5, 6}, null);
+        byte[] encoded = StrokeCodec.encode(stroke);
+
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 1);
+        assertThrows(IllegalArgumentException.class, () -> StrokeCodec.decode(ByteBuffer.wrap(truncated)));
+    }
+
+    @Test
+    public void decode_unknownVersionOrPaletteIndex_throwsIllegalArgument() {
+        assertThrows(IllegalArgumentException.class,
+                () -> StrokeCodec.decode(ByteBuffer.wrap(new byte[]{9, 0, 1, 0, 2, 0})));
+        assertThrows(IllegalArgumentException.class,
+                () -> StrokeCodec.decode(ByteBuffer.wrap(new byte[]{StrokeCodec.VERSION, 0, 1, 99, 2, 0})));
+    }
+
+    @Test
+    public void decode_hugePointCount_rejectedBeforeAllocating() {
+        // count varint 0xFFFFFFFF with no points following
+        byte[] frame = {StrokeCodec.VERSION, 0, 1, 0, 2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+
+        assertThrows(IllegalArgumentException.class, () -> StrokeCodec.decode(ByteBuffer.wrap(frame)));
+    }
+}
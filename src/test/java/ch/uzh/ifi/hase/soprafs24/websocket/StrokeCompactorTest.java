@@ -0,0 +1,73 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StrokeCompactorTest {
+
+    private final StrokeCompactor compactor = new StrokeCompactor(40, 20, 3, 1, Runnable::run);
+
+    @Test
+    public void compactIfNeeded_shortTail_doesNothing() {
+        StrokeLog strokeLog = new StrokeLog();
+        strokeLog.append(1L, frame(1L, false, 0, 10));
+        strokeLog.append(1L, frame(1L, false, 10, 20));
+
+        compactor.compactIfNeeded(strokeLog);
+
+        assertNull(strokeLog.catchUp().snapshot);
+        assertEquals(2, strokeLog.getTailSize());
+    }
+
+    @Test
+    public void compactIfNeeded_drawsAllButTheTail_intoSnapshot() throws IOException {
+        StrokeLog strokeLog = new StrokeLog();
+        // one stroke over three frames; the second frame continues the first one's line
+        strokeLog.append(1L, frame(7L, false, 2, 10));
+        strokeLog.append(1L, frame(7L, false, 20, 30));
+        strokeLog.append(1L, frame(7L, true, 35, 38));
+
+        compactor.compactIfNeeded(strokeLog);
+
+        StrokeLog.CatchUp catchUp = strokeLog.catchUp();
+        assertEquals(1, catchUp.tail.size());
+        assertEquals(StrokeCompactor.SNAPSHOT_TYPE, catchUp.snapshot[0]);
+        BufferedImage canvas = ImageIO.read(new ByteArrayInputStream(
+                Arrays.copyOfRange(catchUp.snapshot, 5, catchUp.snapshot.length)));
+        assertEquals(40, canvas.getWidth());
+        assertEquals(20, canvas.getHeight());
+        assertEquals(0x000000, canvas.getRGB(5, 10) & 0xFFFFFF);
+        assertEquals(0x000000, canvas.getRGB(15, 10) & 0xFFFFFF); // gap between the frames
+        assertEquals(0xFFFFFF, canvas.getRGB(5, 2) & 0xFFFFFF);
+        assertEquals(0xFFFFFF, canvas.getRGB(37, 10) & 0xFFFFFF); // still in the tail
+    }
+
+    @Test
+    public void finishCompaction_afterClear_dropsResult() {
+        StrokeLog strokeLog = new StrokeLog();
+        for (int i = 0; i < 3; i++) {
+            strokeLog.append(1L, frame(i, true, 0, 5));
+        }
+        StrokeLog.Compaction compaction = strokeLog.startCompaction(3, 1);
+        strokeLog.append(1L, StrokeCodec.encode(Stroke.clear()));
+        strokeLog.append(1L, frame(9L, true, 0, 5));
+
+        strokeLog.finishCompaction(compaction, new byte[]{StrokeCompactor.SNAPSHOT_TYPE});
+
+        assertNull(strokeLog.catchUp().snapshot);
+        assertEquals(1, strokeLog.getTailSize());
+    }
+
+    // horizontal line at y = 10 from fromX to toX
+    private static byte[] frame(long strokeId, boolean last, int fromX, int toX) {
+        return StrokeCodec.encode(new Stroke(strokeId, 0x000000, 3f, last,
+                new int[]{fromX, toX}, new int[]{10, 10}, null));
+    }
+}
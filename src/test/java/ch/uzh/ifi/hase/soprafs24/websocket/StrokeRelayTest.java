@@ -0,0 +1,188 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class StrokeRelayTest {
+
+    private StrokeRelay relay;
+    private WebSocketSession painter;
+    private WebSocketSession guesser;
+
+    @BeforeEach
+    public void setup() {
+        // sends run on the calling thread, tick() is driven by the test
+        // player 10 paints in every lobby
+        relay = new StrokeRelay(25, 16, 1000, 4096, new StrokeCompactor(100, 100, 4, 1, Runnable::run),
+                new PainterCache(lobbyId -> 10L, 1000L, () -> 0L), Runnable::run);
+        painter = session("painter");
+        guesser = session("guesser");
+        relay.join(1L, 10L, painter);
+        relay.join(1L, 20L, guesser);
+    }
+
+    @Test
+    public void tick_batchesFramesOfOneSender_intoOneMessageForOthers() throws IOException {
+        assertTrue(relay.submit(1L, painter, ByteBuffer.wrap(new byte[]{1, 2, 3})));
+        assertTrue(relay.submit(1L, painter, ByteBuffer.wrap(new byte[]{4})));
+
+        relay.tick();
+
+        ArgumentCaptor<WebSocketMessage<?>> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(guesser, times(1)).sendMessage(sent.capture());
+        verify(painter, never()).sendMessage(any());
+
+        ByteBuffer batch = ((BinaryMessage) sent.getValue()).getPayload();
+        assertEquals(StrokeRelay.BATCH_TYPE, batch.get());
+        assertEquals(10L, batch.getLong());
+        assertEquals(2, batch.getShort());
+        assertEquals(3, batch.getShort());
+        byte[] first = new byte[3];
+        batch.get(first);
+        assertArrayEquals(new byte[]{1, 2, 3}, first);
+        assertEquals(1, batch.getShort());
+        assertEquals(4, batch.get());
+        assertFalse(batch.hasRemaining());
+    }
+
+    @Test
+    public void tick_nothingSubmitted_sendsNothing() throws IOException {
+        relay.tick();
+
+        verify(painter, never()).sendMessage(any());
+        verify(guesser, never()).sendMessage(any());
+    }
+
+    @Test
+    public void tick_framesAreOnlySentOnce() throws IOException {
+        relay.submit(1L, painter, ByteBuffer.wrap(new byte[]{1}));
+        relay.tick();
+        relay.tick();
+
+        verify(guesser, times(1)).sendMessage(any());
+    }
+
+    @Test
+    public void submit_oversizedOrEmptyFrame_rejected() {
+        assertFalse(relay.submit(1L, painter, ByteBuffer.allocate(17)));
+        assertFalse(relay.submit(1L, painter, ByteBuffer.allocate(0)));
+        assertTrue(relay.submit(1L, painter, ByteBuffer.allocate(16)));
+    }
+
+    @Test
+    public void submit_unknownLobbyOrSession_rejected() {
+        assertFalse(relay.submit(2L, painter, ByteBuffer.wrap(new byte[]{1})));
+        assertFalse(relay.submit(1L, session("stranger"), ByteBuffer.wrap(new byte[]{1})));
+    }
+
+    @Test
+    public void tick_failingConnection_isDroppedAndClosed() throws IOException {
+        doThrow(new IOException("broken pipe")).when(guesser).sendMessage(any());
+        relay.submit(1L, painter, ByteBuffer.wrap(new byte[]{1}));
+
+        relay.tick();
+
+        assertEquals(1, relay.getConnectionCount(1L));
+        verify(guesser).close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    @Test
+    public void join_duringDrawing_receivesLoggedFramesFirst() throws IOException {
+        relay.submit(1L, painter, ByteBuffer.wrap(new byte[]{1}));
+        relay.submit(1L, painter, ByteBuffer.wrap(new byte[]{2}));
+        relay.tick();
+
+        WebSocketSession lateJoiner = session("late");
+        relay.join(1L, 30L, lateJoiner);
+        relay.submit(1L, painter, ByteBuffer.wrap(new byte[]{3}));
+        relay.tick();
+
+        ArgumentCaptor<WebSocketMessage<?>> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(lateJoiner, times(2)).sendMessage(sent.capture());
+        ByteBuffer catchUp = ((BinaryMessage) sent.getAllValues().get(0)).getPayload();
+        catchUp.position(1 + Long.BYTES);
+        assertEquals(2, catchUp.getShort());
+        ByteBuffer live = ((BinaryMessage) sent.getAllValues().get(1)).getPayload();
+        live.position(1 + Long.BYTES);
+        assertEquals(1, live.getShort());
+    }
+
+    @Test
+    public void join_afterCompaction_receivesSnapshotAndShortTail() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            Stroke piece = new Stroke(5L, 0x000000, 2f, i == 9, new int[]{i * 10, i * 10 + 5}, new int[]{50, 50}, null);
+            relay.submit(1L, painter, ByteBuffer.wrap(StrokeCodec.encode(piece)));
+            relay.tick();
+        }
+
+        WebSocketSession lateJoiner = session("late");
+        relay.join(1L, 30L, lateJoiner);
+
+        ArgumentCaptor<WebSocketMessage<?>> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(lateJoiner, atLeastOnce()).sendMessage(sent.capture());
+        ByteBuffer snapshot = ((BinaryMessage) sent.getAllValues().get(0)).getPayload();
+        assertEquals(StrokeCompactor.SNAPSHOT_TYPE, snapshot.get());
+        // compaction keeps the tail below compact-after (4) frames
+        int tailFrames = 0;
+        for (WebSocketMessage<?> message : sent.getAllValues().subList(1, sent.getAllValues().size())) {
+            ByteBuffer batch = ((BinaryMessage) message).getPayload();
+            assertEquals(StrokeRelay.BATCH_TYPE, batch.get(0));
+            tailFrames += batch.getShort(1 + Long.BYTES);
+        }
+        assertTrue(tailFrames < 4, "tail of " + tailFrames + " frames");
+    }
+
+    @Test
+    public void join_afterClear_receivesNothing() throws IOException {
+        relay.submit(1L, painter, ByteBuffer.wrap(new byte[]{1}));
+        relay.submit(1L, painter, ByteBuffer.wrap(StrokeCodec.encode(Stroke.clear())));
+        relay.tick();
+
+        WebSocketSession lateJoiner = session("late");
+        relay.join(1L, 30L, lateJoiner);
+
+        verify(lateJoiner, never()).sendMessage(any());
+    }
+
+    @Test
+    public void submit_fromMemberWhoIsNotPainter_isDroppedAndNeverRelayed() throws IOException {
+        assertFalse(relay.submit(1L, guesser, ByteBuffer.wrap(new byte[]{1})));
+
+        relay.tick();
+        WebSocketSession lateJoiner = session("late");
+        relay.join(1L, 30L, lateJoiner);
+
+        verify(painter, never()).sendMessage(any());
+        verify(lateJoiner, never()).sendMessage(any());
+    }
+
+    @Test
+    public void leave_lastConnection_removesRoom() {
+        relay.leave(1L, painter);
+        assertEquals(1, relay.getConnectionCount(1L));
+
+        relay.leave(1L, guesser);
+        assertEquals(0, relay.getConnectionCount(1L));
+        assertFalse(relay.submit(1L, guesser, ByteBuffer.wrap(new byte[]{1})));
+    }
+
+    private static WebSocketSession session(String id) {
+        WebSocketSession session = Mockito.mock(WebSocketSession.class);
+        Mockito.when(session.getId()).thenReturn(id);
+        Mockito.when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+}